@@ -0,0 +1,575 @@
+package app.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.SetParams;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Bloom filter stored as a Redis bitmap, for "have we seen this id?" checks over tens of millions of ids
+ * at about 10 bits per id for a 1% false-positive rate.
+ * Bits are set and read with BITFIELD, one command per batch of ids, so a batch costs one round trip.
+ * The sizing is stored next to the bitmap, so every node hashes ids the same way.
+ * An optional local copy of the bitmap, refreshed periodically, answers checks without a round trip.
+ * Bits are set in the local copy with atomic updates, and additions not yet confirmed by Redis
+ * are applied again to every refreshed copy, so this node never misses its own ids.
+ */
+public class BloomFilter implements Closeable
+{
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Largest Redis string, in bits.
+     */
+    private static final long MAX_BITS = 1L << 32;
+
+    private static final byte[] PARAMS_SUFFIX = ":params".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] GET = "GET".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] SET = "SET".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] BIT = "u1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] ONE = "1".getBytes(StandardCharsets.US_ASCII);
+
+    private final RedisBackend redis;
+
+    private final byte[] key;
+
+    private final long bits;
+
+    private final int hashes;
+
+    private final OperationMetrics addMetrics;
+
+    private final OperationMetrics containsMetrics;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Local copy of the bitmap in big-endian 32-bit words, so bit numbering matches Redis.
+     */
+    private volatile AtomicIntegerArray localCopy;
+
+    /**
+     * Guards swapping the local copy and tracking the additions it must keep.
+     */
+    private final Object localLock = new Object();
+
+    private final Object refreshLock = new Object();
+
+    /**
+     * Positions of additions whose BITFIELD commands have not completed yet.
+     */
+    private final Set<List<long[]>> pendingAdditions = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Additions to apply to the copy being loaded, or null when no refresh is running.
+     */
+    private List<List<long[]>> refreshAdditions;
+
+    private ScheduledExecutorService refresher;
+
+    private BloomFilter(RedisBackend redis, byte[] key, long bits, int hashes, CacheMetrics metrics)
+    {
+        this.redis = redis;
+        this.key = key;
+        this.bits = bits;
+        this.hashes = hashes;
+        this.addMetrics = metrics.operation("bloom_add");
+        this.containsMetrics = metrics.operation("bloom_might_contain");
+    }
+
+    /**
+     * Opens a Bloom filter, sizing it for the expected number of ids and false-positive rate
+     * unless a filter already exists under the key, in which case its sizing is kept.
+     *
+     * @param redis the Redis backend
+     * @param key the prefixed bitmap key
+     * @param expectedInsertions number of ids the filter is sized for
+     * @param falsePositiveRate false-positive rate at the expected number of ids
+     * @param metrics metrics to record operations in
+     * @return the filter
+     */
+    static BloomFilter open(RedisBackend redis, byte[] key, long expectedInsertions, double falsePositiveRate,
+                            CacheMetrics metrics)
+    {
+        if (expectedInsertions <= 0)
+        {
+            throw new IllegalArgumentException("Expected insertions must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+        {
+            throw new IllegalArgumentException("False-positive rate must be between 0 and 1");
+        }
+
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        if (bits > MAX_BITS)
+        {
+            throw new IllegalArgumentException("Bloom filter would exceed the 512 MB Redis string limit");
+        }
+        int hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+
+        byte[] paramsKey = paramsKey(key);
+        String params = bits + ":" + hashes;
+
+        try (Jedis jedis = redis.resource())
+        {
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.set(paramsKey, params.getBytes(StandardCharsets.US_ASCII), SetParams.setParams().nx());
+            Response<byte[]> stored = pipeline.get(paramsKey);
+            pipeline.sync();
+
+            String existing = new String(stored.get(), StandardCharsets.US_ASCII);
+            if (!existing.equals(params))
+            {
+                System.err.println("[BloomFilter] :: [open] - Keeping the existing sizing " + existing
+                    + " instead of " + params + " for " + new String(key, StandardCharsets.UTF_8));
+                int separator = existing.indexOf(':');
+                bits = Long.parseLong(existing.substring(0, separator));
+                hashes = Integer.parseInt(existing.substring(separator + 1));
+            }
+        }
+
+        return new BloomFilter(redis, key, bits, hashes, metrics);
+    }
+
+    /**
+     * Sets how many ids are sent per BITFIELD command.
+     *
+     * @param batchSize ids per command
+     * @return this instance for method chaining
+     */
+    public BloomFilter batchSize(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Adds an id.
+     *
+     * @param id the id
+     * @return true if the id was definitely not in the filter before
+     */
+    public boolean add(String id)
+    {
+        return addAll(Arrays.asList(id)) == 1;
+    }
+
+    /**
+     * Adds ids in pipelined batches.
+     *
+     * @param ids the ids
+     * @return number of ids that were definitely not in the filter before
+     */
+    public int addAll(Collection<String> ids)
+    {
+        List<long[]> positions = new ArrayList<>(ids.size());
+        for (String id : ids)
+        {
+            positions.add(positions(id));
+        }
+
+        synchronized (localLock)
+        {
+            // Later local checks must see this node's own additions before the next refresh,
+            // and a refresh that reads the bitmap before these bits reach Redis must add them back.
+            AtomicIntegerArray copy = localCopy;
+            if (copy != null)
+            {
+                setBits(copy, positions);
+            }
+            pendingAdditions.add(positions);
+            if (refreshAdditions != null)
+            {
+                refreshAdditions.add(positions);
+            }
+        }
+
+        List<Response<List<Long>>> responses = new ArrayList<>();
+        long started = System.nanoTime();
+        try (Jedis jedis = redis.resource())
+        {
+            long sent = addMetrics.record(OperationMetrics.POOL_WAIT, started);
+            Pipeline pipeline = jedis.pipelined();
+            for (int from = 0; from < positions.size(); from += batchSize)
+            {
+                List<long[]> batch = positions.subList(from, Math.min(from + batchSize, positions.size()));
+                responses.add(pipeline.bitfield(key, arguments(batch, true)));
+            }
+            pipeline.sync();
+            addMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+        }
+        finally
+        {
+            synchronized (localLock)
+            {
+                pendingAdditions.remove(positions);
+            }
+        }
+
+        int added = 0;
+        for (Response<List<Long>> response : responses)
+        {
+            List<Long> previous = response.get();
+            for (int i = 0; i < previous.size(); i += hashes)
+            {
+                for (int j = i; j < i + hashes; j++)
+                {
+                    if (previous.get(j) == 0)
+                    {
+                        added++;
+                        break;
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Checks an id.
+     *
+     * @param id the id
+     * @return false if the id was definitely never added, true if it probably was
+     */
+    public boolean mightContain(String id)
+    {
+        return mightContainAll(Arrays.asList(id))[0];
+    }
+
+    /**
+     * Checks ids, against the local copy when enabled and otherwise in pipelined batches.
+     *
+     * @param ids the ids
+     * @return for each id in order, false if it was definitely never added, true if it probably was
+     */
+    public boolean[] mightContainAll(List<String> ids)
+    {
+        boolean[] results = new boolean[ids.size()];
+        List<long[]> positions = new ArrayList<>(ids.size());
+        for (String id : ids)
+        {
+            positions.add(positions(id));
+        }
+
+        AtomicIntegerArray copy = localCopy;
+        if (copy != null)
+        {
+            for (int i = 0; i < results.length; i++)
+            {
+                results[i] = allSet(copy, positions.get(i));
+                count(results[i]);
+            }
+            return results;
+        }
+
+        List<Response<List<Long>>> responses = new ArrayList<>();
+        long started = System.nanoTime();
+        try (Jedis jedis = redis.resource())
+        {
+            long sent = containsMetrics.record(OperationMetrics.POOL_WAIT, started);
+            Pipeline pipeline = jedis.pipelined();
+            for (int from = 0; from < positions.size(); from += batchSize)
+            {
+                List<long[]> batch = positions.subList(from, Math.min(from + batchSize, positions.size()));
+                responses.add(pipeline.bitfield(key, arguments(batch, false)));
+            }
+            pipeline.sync();
+            containsMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+        }
+
+        int index = 0;
+        for (Response<List<Long>> response : responses)
+        {
+            List<Long> values = response.get();
+            for (int i = 0; i < values.size(); i += hashes)
+            {
+                boolean set = true;
+                for (int j = i; j < i + hashes && set; j++)
+                {
+                    set = values.get(j) == 1;
+                }
+                results[index++] = set;
+                count(set);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Keeps a local copy of the bitmap, refreshed at a fixed interval, and answers checks from it.
+     * Ids added by other nodes since the last refresh are reported as absent until the next refresh.
+     *
+     * @param refreshMillis refresh interval in milliseconds
+     * @return this instance for method chaining
+     */
+    public synchronized BloomFilter enableLocalCopy(long refreshMillis)
+    {
+        if (refreshMillis <= 0)
+        {
+            throw new IllegalArgumentException("Refresh interval must be positive");
+        }
+
+        disableLocalCopy();
+        refresh();
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bloom-filter-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try
+            {
+                refresh();
+            }
+            catch (RuntimeException e)
+            {
+                // Keep the previous copy and retry at the next interval.
+                System.err.println("[BloomFilter] :: [enableLocalCopy] - " + e.getMessage());
+            }
+        }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Stops refreshing the local copy and goes back to checking ids in Redis.
+     *
+     * @return this instance for method chaining
+     */
+    public synchronized BloomFilter disableLocalCopy()
+    {
+        if (refresher != null)
+        {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        localCopy = null;
+        return this;
+    }
+
+    /**
+     * Reloads the local copy of the bitmap from Redis.
+     * Additions still in flight when the bitmap is read are applied to the new copy before it is used.
+     */
+    public void refresh()
+    {
+        synchronized (refreshLock)
+        {
+            synchronized (localLock)
+            {
+                refreshAdditions = new ArrayList<>(pendingAdditions);
+            }
+
+            try
+            {
+                byte[] bitmap;
+                try (Jedis jedis = redis.resource())
+                {
+                    bitmap = jedis.get(key);
+                }
+                AtomicIntegerArray copy = toWords(bitmap);
+
+                synchronized (localLock)
+                {
+                    for (List<long[]> positions : refreshAdditions)
+                    {
+                        setBits(copy, positions);
+                    }
+                    localCopy = copy;
+                }
+            }
+            finally
+            {
+                synchronized (localLock)
+                {
+                    refreshAdditions = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the bitmap and its sizing.
+     */
+    public void delete()
+    {
+        byte[] paramsKey = paramsKey(key);
+        try (Jedis jedis = redis.resource())
+        {
+            jedis.del(key, paramsKey);
+        }
+
+        synchronized (localLock)
+        {
+            if (localCopy != null)
+            {
+                localCopy = new AtomicIntegerArray(bitmapWords());
+            }
+        }
+    }
+
+    /**
+     * Gets the size of the bitmap.
+     *
+     * @return number of bits
+     */
+    public long bits()
+    {
+        return bits;
+    }
+
+    /**
+     * Gets the number of bits set per id.
+     *
+     * @return number of hash functions
+     */
+    public int hashes()
+    {
+        return hashes;
+    }
+
+    /**
+     * Stops refreshing the local copy.
+     */
+    @Override
+    public void close()
+    {
+        disableLocalCopy();
+    }
+
+    /**
+     * Derives the bit positions of an id from the two halves of its 128-bit hash (Kirsch-Mitzenmacher).
+     */
+    private long[] positions(String id)
+    {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        long[] hash = KeyCodec.murmur3(bytes, 0, bytes.length);
+        long[] positions = new long[hashes];
+        for (int i = 0; i < hashes; i++)
+        {
+            positions[i] = Math.floorMod(hash[0] + i * hash[1], bits);
+        }
+        return positions;
+    }
+
+    private static byte[] paramsKey(byte[] key)
+    {
+        byte[] paramsKey = Arrays.copyOf(key, key.length + PARAMS_SUFFIX.length);
+        System.arraycopy(PARAMS_SUFFIX, 0, paramsKey, key.length, PARAMS_SUFFIX.length);
+        return paramsKey;
+    }
+
+    private int bitmapWords()
+    {
+        return (int) ((bits + 31) >>> 5);
+    }
+
+    /**
+     * Packs a Redis bitmap into big-endian words. Redis only grows the string up to the highest set bit,
+     * so it is padded to the full size for local additions to fit.
+     */
+    private AtomicIntegerArray toWords(byte[] bitmap)
+    {
+        int[] words = new int[bitmapWords()];
+        if (bitmap != null)
+        {
+            ByteBuffer.wrap(Arrays.copyOf(bitmap, words.length * 4)).asIntBuffer().get(words);
+        }
+        return new AtomicIntegerArray(words);
+    }
+
+    private static byte[][] arguments(List<long[]> batch, boolean set)
+    {
+        int count = 0;
+        for (long[] idPositions : batch)
+        {
+            count += idPositions.length;
+        }
+
+        byte[] operation = set ? SET : GET;
+        byte[][] arguments = new byte[count * (set ? 4 : 3)][];
+        int index = 0;
+        for (long[] idPositions : batch)
+        {
+            for (long position : idPositions)
+            {
+                arguments[index++] = operation;
+                arguments[index++] = BIT;
+                arguments[index++] = Long.toString(position).getBytes(StandardCharsets.US_ASCII);
+                if (set)
+                {
+                    arguments[index++] = ONE;
+                }
+            }
+        }
+        return arguments;
+    }
+
+    /**
+     * Redis numbers bitmap bits from the most significant bit of the first byte.
+     */
+    private static boolean allSet(AtomicIntegerArray bitmap, long[] positions)
+    {
+        for (long position : positions)
+        {
+            if ((bitmap.get((int) (position >>> 5)) & (0x80000000 >>> (position & 31))) == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void setBits(AtomicIntegerArray bitmap, List<long[]> positions)
+    {
+        for (long[] idPositions : positions)
+        {
+            for (long position : idPositions)
+            {
+                int index = (int) (position >>> 5);
+                int mask = 0x80000000 >>> (position & 31);
+                int word;
+                do
+                {
+                    word = bitmap.get(index);
+                }
+                while ((word & mask) == 0 && !bitmap.compareAndSet(index, word, word | mask));
+            }
+        }
+    }
+
+    private void count(boolean mightContain)
+    {
+        if (mightContain)
+        {
+            containsMetrics.hit();
+        }
+        else
+        {
+            containsMetrics.miss();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package app.cache;
+
+import app.interfaces.CacheMetricsMXBean;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency histograms and hit/miss counters of every RedisService operation.
+ * Values are cumulative since startup and exposed over JMX and in the Prometheus text format,
+ * optionally served over HTTP for scrapers.
+ */
+public class CacheMetrics implements CacheMetricsMXBean
+{
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+
+    /**
+     * Constructs a new CacheMetrics.
+     */
+    CacheMetrics()
+    {
+    }
+
+    /**
+     * Gets the metrics of an operation, creating them on first use.
+     *
+     * @param name operation name
+     * @return operation metrics
+     */
+    OperationMetrics operation(String name)
+    {
+        return operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    @Override
+    public List<LatencySnapshot> getLatencies()
+    {
+        List<LatencySnapshot> snapshots = new ArrayList<>();
+        for (OperationMetrics operation : sortedOperations())
+        {
+            for (int phase = 0; phase < OperationMetrics.PHASES.length; phase++)
+            {
+                LatencyHistogram histogram = operation.recorded(phase);
+                if (histogram == null)
+                {
+                    continue;
+                }
+
+                long count = histogram.count();
+                snapshots.add(new LatencySnapshot(
+                    operation.name,
+                    OperationMetrics.PHASES[phase],
+                    count,
+                    count == 0 ? 0 : histogram.sumNanos() / 1000.0 / count,
+                    histogram.valueAtQuantile(0.5) / 1000.0,
+                    histogram.valueAtQuantile(0.99) / 1000.0,
+                    histogram.valueAtQuantile(0.999) / 1000.0,
+                    histogram.maxNanos() / 1000.0));
+            }
+        }
+        return snapshots;
+    }
+
+    @Override
+    public Map<String, Long> getHits()
+    {
+        Map<String, Long> hits = new LinkedHashMap<>();
+        for (OperationMetrics operation : sortedOperations())
+        {
+            hits.put(operation.name, operation.hits.sum());
+        }
+        return hits;
+    }
+
+    @Override
+    public Map<String, Long> getMisses()
+    {
+        Map<String, Long> misses = new LinkedHashMap<>();
+        for (OperationMetrics operation : sortedOperations())
+        {
+            misses.put(operation.name, operation.misses.sum());
+        }
+        return misses;
+    }
+
+    @Override
+    public String scrape()
+    {
+        StringBuilder text = new StringBuilder();
+        List<OperationMetrics> sorted = sortedOperations();
+
+        text.append("# HELP redis_service_latency_seconds Latency of RedisService operations by phase.\n");
+        text.append("# TYPE redis_service_latency_seconds summary\n");
+        for (OperationMetrics operation : sorted)
+        {
+            for (int phase = 0; phase < OperationMetrics.PHASES.length; phase++)
+            {
+                LatencyHistogram histogram = operation.recorded(phase);
+                if (histogram == null)
+                {
+                    continue;
+                }
+
+                String labels = "operation=\"" + operation.name + "\",phase=\"" + OperationMetrics.PHASES[phase] + "\"";
+                for (double quantile : QUANTILES)
+                {
+                    text.append("redis_service_latency_seconds{").append(labels)
+                        .append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(histogram.valueAtQuantile(quantile))).append('\n');
+                }
+                text.append("redis_service_latency_seconds_sum{").append(labels).append("} ")
+                    .append(seconds(histogram.sumNanos())).append('\n');
+                text.append("redis_service_latency_seconds_count{").append(labels).append("} ")
+                    .append(histogram.count()).append('\n');
+            }
+        }
+
+        counter(text, sorted, "redis_service_hits_total", "Reads that found a value.", true);
+        counter(text, sorted, "redis_service_misses_total", "Reads that found nothing.", false);
+        return text.toString();
+    }
+
+    /**
+     * Serves {@link #scrape()} over HTTP at /metrics.
+     *
+     * @param address address to listen on
+     * @throws IOException if the address cannot be bound
+     */
+    synchronized void startEndpoint(InetSocketAddress address) throws IOException
+    {
+        stopEndpoint();
+
+        HttpServer httpServer = HttpServer.create(address, 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody())
+            {
+                output.write(body);
+            }
+        });
+        httpServer.start();
+        server = httpServer;
+    }
+
+    /**
+     * Stops serving metrics over HTTP.
+     */
+    synchronized void stopEndpoint()
+    {
+        if (server != null)
+        {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private List<OperationMetrics> sortedOperations()
+    {
+        List<OperationMetrics> sorted = new ArrayList<>(operations.values());
+        sorted.sort((a, b) -> a.name.compareTo(b.name));
+        return sorted;
+    }
+
+    private static void counter(StringBuilder text, List<OperationMetrics> operations, String name, String help, boolean hits)
+    {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        for (OperationMetrics operation : operations)
+        {
+            long value = hits ? operation.hits.sum() : operation.misses.sum();
+            if (operation.hits.sum() + operation.misses.sum() > 0)
+            {
+                text.append(name).append("{operation=\"").append(operation.name).append("\"} ").append(value).append('\n');
+            }
+        }
+    }
+
+    private static String seconds(long nanos)
+    {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,283 @@
+package app.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Exports the hottest remembered keys to a snapshot file and reloads them after a deploy or failover.
+ * Keys already present in Redis are skipped with pipelined EXISTS checks; missing keys are recomputed
+ * through a loader with bounded concurrency and a rate limit, then written back in pipelined batches.
+ */
+public class CacheWarmer
+{
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    public static final int DEFAULT_CONCURRENCY = 2;
+
+    public static final int DEFAULT_KEYS_PER_SECOND = 1000;
+
+    private static final String SNAPSHOT_HEADER = "# RedisService warm-up snapshot: <expiration seconds>\\t<key>[\\t<tag>...]";
+
+    private final RedisService service;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    private int keysPerSecond = DEFAULT_KEYS_PER_SECOND;
+
+    private long nextPermitNanos = 0;
+
+    /**
+     * Constructs a new CacheWarmer.
+     *
+     * @param service the service whose keys are warmed up
+     */
+    CacheWarmer(RedisService service)
+    {
+        this.service = service;
+    }
+
+    /**
+     * Sets how many keys are checked and written per pipelined batch.
+     *
+     * @param batchSize keys per batch
+     * @return this instance for method chaining
+     */
+    public CacheWarmer batchSize(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets how many loader calls may run at the same time.
+     *
+     * @param concurrency number of loader threads
+     * @return this instance for method chaining
+     */
+    public CacheWarmer concurrency(int concurrency)
+    {
+        if (concurrency <= 0)
+        {
+            throw new IllegalArgumentException("Concurrency must be positive");
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of keys loaded per second.
+     *
+     * @param keysPerSecond rate limit, zero or less for no limit
+     * @return this instance for method chaining
+     */
+    public CacheWarmer rateLimit(int keysPerSecond)
+    {
+        this.keysPerSecond = keysPerSecond;
+        return this;
+    }
+
+    /**
+     * Writes the most accessed remembered keys to a snapshot file.
+     * The file is replaced atomically, so a crash never leaves a truncated snapshot behind.
+     * Entries whose key or tags contain a tab or a line break are left out, since they cannot be read back.
+     *
+     * @param snapshot the snapshot file
+     * @param limit maximum number of keys to export
+     * @return number of keys exported
+     * @throws IOException if the file cannot be written
+     */
+    public int exportHotKeys(Path snapshot, int limit) throws IOException
+    {
+        List<WarmUpEntry> hotKeys = service.hotKeysForWarmUp(limit);
+        int exported = 0;
+
+        Path directory = snapshot.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, snapshot.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))
+        {
+            writer.write(SNAPSHOT_HEADER);
+            writer.newLine();
+            for (WarmUpEntry entry : hotKeys)
+            {
+                if (!entry.isExportable())
+                {
+                    continue;
+                }
+                writer.write(entry.toLine());
+                writer.newLine();
+                exported++;
+            }
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return exported;
+    }
+
+    /**
+     * Reloads the keys of a snapshot file that are missing from Redis.
+     *
+     * @param snapshot the snapshot file
+     * @param loader computes the value of a key, as the remember supplier would
+     * @return warm-up report
+     * @throws IOException if the snapshot cannot be read
+     */
+    public WarmUpReport warmUp(Path snapshot, Function<String, ?> loader) throws IOException
+    {
+        long started = System.currentTimeMillis();
+        long[] counts = new long[3];
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "redis-cache-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8))
+        {
+            List<WarmUpEntry> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                WarmUpEntry entry = WarmUpEntry.fromLine(line);
+                if (entry == null || entry.expiration <= 0)
+                {
+                    continue;
+                }
+
+                batch.add(entry);
+                if (batch.size() == batchSize)
+                {
+                    warmBatch(batch, loader, executor, counts);
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty())
+            {
+                warmBatch(batch, loader, executor, counts);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return new WarmUpReport(counts[0], counts[1], counts[2], System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Reloads a snapshot in the background, so startup is not blocked.
+     *
+     * @param snapshot the snapshot file
+     * @param loader computes the value of a key, as the remember supplier would
+     * @return future completed with the warm-up report
+     */
+    public CompletableFuture<WarmUpReport> warmUpAsync(Path snapshot, Function<String, ?> loader)
+    {
+        CompletableFuture<WarmUpReport> report = new CompletableFuture<>();
+
+        Thread thread = new Thread(() -> {
+            try
+            {
+                report.complete(warmUp(snapshot, loader));
+            }
+            catch (IOException | RuntimeException e)
+            {
+                report.completeExceptionally(e);
+            }
+        }, "redis-cache-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+
+        return report;
+    }
+
+    private void warmBatch(List<WarmUpEntry> batch, Function<String, ?> loader, ExecutorService executor, long[] counts)
+    {
+        List<WarmUpEntry> missing = service.missingRememberedKeys(batch);
+        counts[1] += batch.size() - missing.size();
+
+        List<Future<Object>> futures = new ArrayList<>(missing.size());
+        for (WarmUpEntry entry : missing)
+        {
+            futures.add(executor.submit(() -> {
+                acquirePermit();
+                return loader.apply(entry.key);
+            }));
+        }
+
+        List<WarmUpEntry> entries = new ArrayList<>(missing.size());
+        List<Object> values = new ArrayList<>(missing.size());
+        for (int i = 0; i < futures.size(); i++)
+        {
+            try
+            {
+                Object value = futures.get(i).get();
+                if (value == null)
+                {
+                    counts[2]++;
+                    continue;
+                }
+                entries.add(missing.get(i));
+                values.add(value);
+            }
+            catch (ExecutionException e)
+            {
+                counts[2]++;
+                System.err.println("[CacheWarmer] :: [warmBatch] - " + missing.get(i).key + " - " + e.getCause());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Warm-up interrupted", e);
+            }
+        }
+
+        service.storeRemembered(entries, values);
+        counts[0] += entries.size();
+    }
+
+    private void acquirePermit() throws InterruptedException
+    {
+        int rate = keysPerSecond;
+        if (rate <= 0)
+        {
+            return;
+        }
+
+        long permitNanos;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            permitNanos = Math.max(now, nextPermitNanos);
+            nextPermitNanos = permitNanos + TimeUnit.SECONDS.toNanos(1) / rate;
+        }
+
+        long waitNanos = permitNanos - System.nanoTime();
+        if (waitNanos > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package app.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Manifest stored in place of a value that was split into chunks.
+ * Records the write generation, so readers never mix chunks of two writes,
+ * along with the chunk count and the total compressed length.
+ */
+final class ChunkManifest
+{
+
+    static final String CHUNKS_SUFFIX = "#chunks";
+
+    private static final byte[] SUFFIX_BYTES = CHUNKS_SUFFIX.getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] MAGIC = {0x00, 'C', 'H', 'K'};
+
+    private static final int LENGTH = MAGIC.length + 8 + 4 + 8;
+
+    final long generation;
+
+    final int chunkCount;
+
+    final long totalLength;
+
+    /**
+     * Constructs a new ChunkManifest.
+     *
+     * @param generation write generation
+     * @param chunkCount number of chunks
+     * @param totalLength total compressed length in bytes
+     */
+    ChunkManifest(long generation, int chunkCount, long totalLength)
+    {
+        this.generation = generation;
+        this.chunkCount = chunkCount;
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * Checks if a stored value is a chunk manifest rather than a compressed value.
+     * Compressed values always start with the GZIP magic number, never with a zero byte.
+     *
+     * @param value the stored value
+     * @return true if the value is a manifest
+     */
+    static boolean isManifest(byte[] value)
+    {
+        if (value == null || value.length != LENGTH)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < MAGIC.length; i++)
+        {
+            if (value[i] != MAGIC[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a manifest.
+     *
+     * @param value the stored value, checked with {@link #isManifest(byte[])}
+     * @return decoded manifest
+     */
+    static ChunkManifest decode(byte[] value)
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(value, MAGIC.length, LENGTH - MAGIC.length);
+        return new ChunkManifest(buffer.getLong(), buffer.getInt(), buffer.getLong());
+    }
+
+    /**
+     * Gets the hash key holding the chunks of a value.
+     *
+     * @param key the encoded value key
+     * @return chunks hash key
+     */
+    static byte[] chunksKey(byte[] key)
+    {
+        byte[] chunksKey = Arrays.copyOf(key, key.length + SUFFIX_BYTES.length);
+        System.arraycopy(SUFFIX_BYTES, 0, chunksKey, key.length, SUFFIX_BYTES.length);
+        return chunksKey;
+    }
+
+    /**
+     * Gets the hash field of a chunk.
+     *
+     * @param generation write generation
+     * @param index chunk index
+     * @return field name as bytes
+     */
+    static byte[] field(long generation, int index)
+    {
+        return (Long.toHexString(generation) + ":" + index).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Encodes the manifest.
+     *
+     * @return manifest bytes
+     */
+    byte[] encode()
+    {
+        return ByteBuffer.allocate(LENGTH)
+            .put(MAGIC)
+            .putLong(generation)
+            .putInt(chunkCount)
+            .putLong(totalLength)
+            .array();
+    }
+}
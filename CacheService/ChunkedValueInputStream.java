@@ -0,0 +1,109 @@
+package app.cache;
+
+import redis.clients.jedis.Jedis;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream reading a chunked value back from Redis one chunk at a time.
+ * Lets the decoder consume a multi-megabyte value without materialising it on the heap.
+ */
+class ChunkedValueInputStream extends InputStream
+{
+
+    /**
+     * Signals that a chunk disappeared, usually because the value was overwritten or expired mid-read.
+     */
+    static class ChunkMissingException extends IOException
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs a new ChunkMissingException.
+         *
+         * @param index index of the missing chunk
+         */
+        ChunkMissingException(int index)
+        {
+            super("Chunk " + index + " is missing");
+        }
+    }
+
+    private final Jedis jedis;
+
+    private final byte[] chunksKey;
+
+    private final ChunkManifest manifest;
+
+    private byte[] chunk = new byte[0];
+
+    private int position = 0;
+
+    private int nextIndex = 0;
+
+    /**
+     * Constructs a new ChunkedValueInputStream.
+     *
+     * @param jedis the connection used to read chunks
+     * @param key the encoded value key
+     * @param manifest the manifest stored under the key
+     */
+    ChunkedValueInputStream(Jedis jedis, byte[] key, ChunkManifest manifest)
+    {
+        this.jedis = jedis;
+        this.chunksKey = ChunkManifest.chunksKey(key);
+        this.manifest = manifest;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!ensureAvailable())
+        {
+            return -1;
+        }
+        return chunk[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+
+        if (!ensureAvailable())
+        {
+            return -1;
+        }
+
+        int count = Math.min(length, chunk.length - position);
+        System.arraycopy(chunk, position, data, offset, count);
+        position += count;
+        return count;
+    }
+
+    private boolean ensureAvailable() throws IOException
+    {
+        while (position == chunk.length)
+        {
+            if (nextIndex == manifest.chunkCount)
+            {
+                return false;
+            }
+
+            chunk = jedis.hget(chunksKey, ChunkManifest.field(manifest.generation, nextIndex));
+            if (chunk == null)
+            {
+                throw new ChunkMissingException(nextIndex);
+            }
+
+            position = 0;
+            nextIndex++;
+        }
+        return true;
+    }
+}
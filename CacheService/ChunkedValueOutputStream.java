@@ -0,0 +1,181 @@
+package app.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.params.SetParams;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Output stream collecting an encoded value for storage under a key.
+ * Values up to the chunk size are kept in memory and stored with a single SET.
+ * Larger values are streamed to Redis chunk by chunk through a pipeline,
+ * so only one chunk is ever held on the heap and no single command blocks Redis for long.
+ */
+class ChunkedValueOutputStream extends OutputStream
+{
+
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    private static final int CHUNKS_PER_SYNC = 8;
+
+    /**
+     * TTL of the chunks hash while the value is being written, so chunks of a write that never
+     * commits do not stay in Redis forever. The commit replaces it with the value's own TTL.
+     */
+    private static final long PROVISIONAL_TTL_SECONDS = 3600;
+
+    private final Jedis jedis;
+
+    private final byte[] key;
+
+    private final byte[] chunksKey;
+
+    private final int chunkSize;
+
+    private final long generation = ThreadLocalRandom.current().nextLong();
+
+    private byte[] buffer;
+
+    private int position = 0;
+
+    private int chunkCount = 0;
+
+    private long totalLength = 0;
+
+    private Pipeline pipeline;
+
+    /**
+     * Constructs a new ChunkedValueOutputStream.
+     *
+     * @param jedis the connection used to write chunks
+     * @param key the encoded value key
+     * @param chunkSize chunk size in bytes
+     */
+    ChunkedValueOutputStream(Jedis jedis, byte[] key, int chunkSize)
+    {
+        this.jedis = jedis;
+        this.key = key;
+        this.chunksKey = ChunkManifest.chunksKey(key);
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, chunkSize)];
+    }
+
+    @Override
+    public void write(int b)
+    {
+        ensureCapacity();
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length)
+    {
+        while (length > 0)
+        {
+            ensureCapacity();
+            int count = Math.min(length, buffer.length - position);
+            System.arraycopy(data, offset, buffer, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Queues the final writes for the value and returns the pipeline holding them.
+     * Small values are written with a single SET that also drops chunks left by a previous write.
+     * Chunked values get their last chunk and a manifest, written after every chunk is in place.
+     * The caller may queue further commands and must sync the pipeline.
+     *
+     * @param expiration expiration time in seconds, zero or less for no expiration
+     * @return pipeline with the pending writes
+     */
+    Pipeline commit(int expiration)
+    {
+        SetParams params = expiration > 0 ? SetParams.setParams().ex((long) expiration) : SetParams.setParams();
+
+        if (pipeline == null)
+        {
+            Pipeline small = jedis.pipelined();
+            small.set(key, Arrays.copyOf(buffer, position), params);
+            small.unlink(chunksKey);
+            return small;
+        }
+
+        if (position > 0)
+        {
+            flushChunk();
+        }
+
+        pipeline.set(key, new ChunkManifest(generation, chunkCount, totalLength).encode(), params);
+        if (expiration > 0)
+        {
+            pipeline.expire(chunksKey, (long) expiration);
+        }
+        else
+        {
+            pipeline.persist(chunksKey);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Drains a partially written chunked value after a failure,
+     * leaving the connection safe to return to the pool.
+     */
+    void abort()
+    {
+        if (pipeline == null)
+        {
+            return;
+        }
+
+        pipeline.unlink(chunksKey);
+        pipeline.sync();
+    }
+
+    private void ensureCapacity()
+    {
+        if (position < buffer.length)
+        {
+            return;
+        }
+
+        if (buffer.length < chunkSize)
+        {
+            buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, chunkSize));
+            return;
+        }
+
+        flushChunk();
+    }
+
+    private void flushChunk()
+    {
+        if (pipeline == null)
+        {
+            pipeline = jedis.pipelined();
+            pipeline.unlink(chunksKey);
+        }
+
+        // The pipeline encodes the command into the connection buffer right away, so the chunk buffer can be reused.
+        byte[] chunk = position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        pipeline.hset(chunksKey, ChunkManifest.field(generation, chunkCount), chunk);
+        if (chunkCount == 0)
+        {
+            pipeline.expire(chunksKey, PROVISIONAL_TTL_SECONDS);
+        }
+
+        chunkCount++;
+        totalLength += position;
+        position = 0;
+
+        if (chunkCount % CHUNKS_PER_SYNC == 0)
+        {
+            pipeline.sync();
+        }
+    }
+}
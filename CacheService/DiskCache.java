@@ -0,0 +1,735 @@
+package app.cache;
+
+import app.interfaces.InvalidationListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent second-level cache tier between the heap and Redis.
+ * Values are appended to memory-mapped segment files and located through an open-addressing
+ * index kept in off-heap memory. When the size budget is exceeded, the oldest segment is dropped.
+ * On open, segments are scanned and replayed up to the first torn or corrupt record,
+ * and every recovered entry must be revalidated against Redis before it is served.
+ * Each record carries a version, a digest of the bytes Redis stored for the value,
+ * so a revalidation detects any rewrite, whatever its TTL.
+ */
+final class DiskCache implements InvalidationListener, Closeable
+{
+
+    private static final int RECORD_MAGIC = 0x4C325232;
+
+    private static final int HEADER_LENGTH = 32;
+
+    private static final int TOMBSTONE = -1;
+
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final long MAX_SEGMENT_SIZE = 256L * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private static final int SLOT_LENGTH = 32;
+
+    private static final int INITIAL_SLOTS = 1024;
+
+    private static final int SLOT_VERIFIED = 1;
+
+    private static final int SLOT_UNVERIFIED = 2;
+
+    private static final int SLOT_DELETED = 3;
+
+    /**
+     * A value read from the disk tier.
+     */
+    static final class Entry
+    {
+
+        final byte[] value;
+
+        final long expireAt;
+
+        final long version;
+
+        final boolean verified;
+
+        private final int segment;
+
+        private final int offset;
+
+        private Entry(byte[] value, long expireAt, long version, boolean verified, int segment, int offset)
+        {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.version = version;
+            this.verified = verified;
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    private static final class Segment
+    {
+
+        final int id;
+
+        final Path path;
+
+        final FileChannel channel;
+
+        final MappedByteBuffer buffer;
+
+        int position;
+
+        Segment(int id, Path path, long size) throws IOException
+        {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Segments written under a different size budget keep their own size.
+            if (channel.size() == 0)
+            {
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    private final Path directory;
+
+    private final long segmentSize;
+
+    private final int maxSegments;
+
+    private final int minValueBytes;
+
+    private final FileChannel lockChannel;
+
+    private final FileLock lock;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    private ByteBuffer index = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_LENGTH);
+
+    private int slotCount = INITIAL_SLOTS;
+
+    private int usedSlots = 0;
+
+    private volatile long invalidationCount = 0;
+
+    private DiskCache(Path directory, long maxBytes, int minValueBytes) throws IOException
+    {
+        this.directory = directory;
+        this.segmentSize = Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxBytes / 8));
+        this.maxSegments = (int) Math.max(2, maxBytes / segmentSize);
+        this.minValueBytes = minValueBytes;
+
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try
+        {
+            acquired = lockChannel.tryLock();
+        }
+        catch (OverlappingFileLockException e)
+        {
+            acquired = null;
+        }
+        if (acquired == null)
+        {
+            lockChannel.close();
+            throw new IOException("Disk cache directory is in use: " + directory);
+        }
+        this.lock = acquired;
+    }
+
+    /**
+     * Opens a disk cache, recovering the entries left by a previous run.
+     *
+     * @param directory directory holding the segment files
+     * @param maxBytes size budget in bytes
+     * @param minValueBytes smallest serialized value worth keeping on disk
+     * @return opened disk cache
+     * @throws IOException if the directory cannot be used
+     */
+    static DiskCache open(Path directory, long maxBytes, int minValueBytes) throws IOException
+    {
+        DiskCache cache = new DiskCache(directory, maxBytes, minValueBytes);
+        try
+        {
+            cache.recover();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            cache.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    /**
+     * Gets the smallest serialized value kept on disk.
+     *
+     * @return size in bytes
+     */
+    int getMinValueBytes()
+    {
+        return minValueBytes;
+    }
+
+    /**
+     * Gets the current invalidation stamp. A value read from Redis is only stored
+     * if no invalidation happened since the stamp was taken.
+     *
+     * @return invalidation stamp
+     */
+    long stamp()
+    {
+        return invalidationCount;
+    }
+
+    /**
+     * Gets a value.
+     *
+     * @param key the encoded key
+     * @return entry, or null if absent or expired
+     */
+    synchronized Entry get(byte[] key)
+    {
+        int slot = find(key, hash(key));
+        if (slot < 0)
+        {
+            return null;
+        }
+
+        int base = slot * SLOT_LENGTH;
+        long expireAt = index.getLong(base + 8);
+        if (expireAt <= System.currentTimeMillis())
+        {
+            index.putInt(base + 24, SLOT_DELETED);
+            return null;
+        }
+
+        int segmentId = index.getInt(base + 16);
+        int offset = index.getInt(base + 20);
+        ByteBuffer record = segments.get(segmentId).buffer.duplicate();
+        long version = record.getLong(offset + 16);
+        int keyLength = record.getInt(offset + 24);
+        int valueLength = record.getInt(offset + 28);
+
+        byte[] value = new byte[valueLength];
+        record.position(offset + HEADER_LENGTH + keyLength);
+        record.get(value);
+
+        return new Entry(value, expireAt, version, index.getInt(base + 24) == SLOT_VERIFIED, segmentId, offset);
+    }
+
+    /**
+     * Stores a value read from Redis.
+     *
+     * @param key the encoded key
+     * @param value the serialized value
+     * @param version version of the bytes stored in Redis, see {@link #version(byte[])}
+     * @param ttlMillis remaining time to live reported by Redis, -1 for none
+     * @param stamp the invalidation stamp taken before the value was read
+     */
+    synchronized void put(byte[] key, byte[] value, long version, long ttlMillis, long stamp)
+    {
+        if (value.length < minValueBytes || ttlMillis == -2 || stamp != invalidationCount)
+        {
+            return;
+        }
+
+        long expireAt = ttlMillis < 0 ? NO_EXPIRY : System.currentTimeMillis() + ttlMillis;
+        try
+        {
+            Segment segment = append(key, value, expireAt, version);
+            if (segment != null)
+            {
+                index(key, hash(key), expireAt, segment.id, segment.position - recordLength(key.length, value.length), SLOT_VERIFIED);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("[DiskCache] :: [put] - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks a recovered entry against the version of the value currently in Redis.
+     * Any rewrite changes the version, so a mismatch means the entry is stale. A current entry
+     * takes the expiration Redis reports, which an EXPIRE or PERSIST may have changed.
+     *
+     * @param key the encoded key
+     * @param entry the entry returned by {@link #get(byte[])}
+     * @param version version of the value in Redis, see {@link #version(String)}
+     * @param ttlMillis remaining time to live reported by Redis, -1 for none, -2 if missing
+     * @return true if the entry may be served
+     */
+    synchronized boolean verify(byte[] key, Entry entry, long version, long ttlMillis)
+    {
+        int slot = find(key, hash(key));
+        if (slot < 0)
+        {
+            return false;
+        }
+
+        int base = slot * SLOT_LENGTH;
+        if (index.getInt(base + 16) != entry.segment || index.getInt(base + 20) != entry.offset)
+        {
+            return false;
+        }
+
+        boolean current = ttlMillis != -2 && version == entry.version;
+
+        if (current)
+        {
+            index.putLong(base + 8, ttlMillis < 0 ? NO_EXPIRY : System.currentTimeMillis() + ttlMillis);
+            index.putInt(base + 24, SLOT_VERIFIED);
+        }
+        else
+        {
+            remove(key);
+        }
+        return current;
+    }
+
+    /**
+     * Removes a value. A tombstone is appended so the removal survives a restart.
+     *
+     * @param key the encoded key
+     */
+    synchronized void remove(byte[] key)
+    {
+        invalidationCount++;
+
+        int slot = find(key, hash(key));
+        if (slot < 0)
+        {
+            return;
+        }
+
+        index.putInt(slot * SLOT_LENGTH + 24, SLOT_DELETED);
+        try
+        {
+            append(key, null, NO_EXPIRY, 0);
+        }
+        catch (IOException e)
+        {
+            System.err.println("[DiskCache] :: [remove] - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the version of a value from the bytes Redis stores for it: the first 64 bits of their SHA-1.
+     * For a chunked value these are the manifest, whose write generation changes on every write.
+     *
+     * @param stored the bytes stored in Redis
+     * @return version
+     */
+    static long version(byte[] stored)
+    {
+        try
+        {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-1").digest(stored)).getLong();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("Failed to hash value", e);
+        }
+    }
+
+    /**
+     * Gets the version of a value from the hexadecimal SHA-1 Redis computed over its stored bytes.
+     *
+     * @param sha1Hex SHA-1 of the stored bytes in hexadecimal
+     * @return version, equal to {@link #version(byte[])} of the same bytes
+     */
+    static long version(String sha1Hex)
+    {
+        return Long.parseUnsignedLong(sha1Hex.substring(0, 16), 16);
+    }
+
+    @Override
+    public void invalidated(String key)
+    {
+        remove(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Invalidation events may have been missed, so every entry must be revalidated before it is served again.
+     */
+    @Override
+    public synchronized void invalidatedAll()
+    {
+        invalidationCount++;
+
+        for (int slot = 0; slot < slotCount; slot++)
+        {
+            int base = slot * SLOT_LENGTH;
+            if (index.getInt(base + 24) == SLOT_VERIFIED)
+            {
+                index.putInt(base + 24, SLOT_UNVERIFIED);
+            }
+        }
+    }
+
+    /**
+     * Flushes the segments to disk and releases the directory.
+     */
+    @Override
+    public synchronized void close()
+    {
+        for (Segment segment : segments.values())
+        {
+            try
+            {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+            catch (IOException e)
+            {
+                System.err.println("[DiskCache] :: [close] - " + e.getMessage());
+            }
+        }
+        segments.clear();
+
+        try
+        {
+            lock.release();
+            lockChannel.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("[DiskCache] :: [close] - " + e.getMessage());
+        }
+    }
+
+    private void recover() throws IOException
+    {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX))
+        {
+            for (Path path : stream)
+            {
+                String name = path.getFileName().toString();
+                try
+                {
+                    files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16), path);
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("[DiskCache] :: [recover] - Ignoring " + name);
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, Path> file : files.entrySet())
+        {
+            Segment segment = new Segment(file.getKey(), file.getValue(), segmentSize);
+            segments.put(segment.id, segment);
+            replay(segment, now);
+        }
+
+        while (segments.size() > maxSegments)
+        {
+            evictOldest();
+        }
+    }
+
+    private void replay(Segment segment, long now)
+    {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int limit = buffer.capacity();
+        int position = 0;
+        CRC32 crc = new CRC32();
+
+        while (position + HEADER_LENGTH <= limit && buffer.getInt(position) == RECORD_MAGIC)
+        {
+            long expireAt = buffer.getLong(position + 8);
+            int keyLength = buffer.getInt(position + 24);
+            int valueLength = buffer.getInt(position + 28);
+            if (keyLength <= 0 || valueLength < TOMBSTONE
+                || (long) position + recordLength(keyLength, Math.max(0, valueLength)) > limit)
+            {
+                break;
+            }
+
+            int length = recordLength(keyLength, Math.max(0, valueLength));
+            ByteBuffer body = buffer.duplicate();
+            body.position(position + 8);
+            body.limit(position + length);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(position + 4))
+            {
+                break;
+            }
+
+            byte[] key = new byte[keyLength];
+            ByteBuffer keyBytes = buffer.duplicate();
+            keyBytes.position(position + HEADER_LENGTH);
+            keyBytes.get(key);
+
+            if (valueLength == TOMBSTONE)
+            {
+                int slot = find(key, hash(key));
+                if (slot >= 0)
+                {
+                    index.putInt(slot * SLOT_LENGTH + 24, SLOT_DELETED);
+                }
+            }
+            else if (expireAt > now)
+            {
+                index(key, hash(key), expireAt, segment.id, position, SLOT_UNVERIFIED);
+            }
+            else
+            {
+                int slot = find(key, hash(key));
+                if (slot >= 0)
+                {
+                    index.putInt(slot * SLOT_LENGTH + 24, SLOT_DELETED);
+                }
+            }
+
+            position += length;
+        }
+
+        // Clear a torn record, so the next append is not followed by its leftovers.
+        int tornEnd = position;
+        if (position + HEADER_LENGTH <= limit)
+        {
+            long claimed = (long) buffer.getInt(position + 24) + Math.max(0, buffer.getInt(position + 28)) + HEADER_LENGTH;
+            tornEnd = (int) Math.min(limit, position + Math.max(HEADER_LENGTH, claimed));
+        }
+        for (int i = position; i < tornEnd; i++)
+        {
+            buffer.put(i, (byte) 0);
+        }
+
+        segment.position = position;
+    }
+
+    private Segment append(byte[] key, byte[] value, long expireAt, long version) throws IOException
+    {
+        int valueLength = value == null ? 0 : value.length;
+        int length = recordLength(key.length, valueLength);
+        if (length > segmentSize)
+        {
+            return null;
+        }
+
+        Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (segment == null || segment.position + length > segment.buffer.capacity())
+        {
+            segment = roll();
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(0).putInt(0).putLong(expireAt).putLong(version).putInt(key.length).putInt(value == null ? TOMBSTONE : valueLength);
+        record.put(key);
+        if (value != null)
+        {
+            record.put(value);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, length - 8);
+
+        // The magic number goes in last, so a record is only recognized once it is complete.
+        ByteBuffer target = segment.buffer.duplicate();
+        target.position(segment.position + 8);
+        target.put(record.array(), 8, length - 8);
+        target.putInt(segment.position + 4, (int) crc.getValue());
+        target.putInt(segment.position, RECORD_MAGIC);
+
+        segment.position += length;
+        return segment;
+    }
+
+    private Segment roll() throws IOException
+    {
+        int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        if (!segments.isEmpty())
+        {
+            segments.lastEntry().getValue().buffer.force();
+        }
+
+        while (segments.size() >= maxSegments)
+        {
+            evictOldest();
+        }
+
+        Segment segment = new Segment(id, directory.resolve(String.format("%s%08x%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX)), segmentSize);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void evictOldest() throws IOException
+    {
+        Segment oldest = segments.pollFirstEntry().getValue();
+        for (int slot = 0; slot < slotCount; slot++)
+        {
+            int base = slot * SLOT_LENGTH;
+            int state = index.getInt(base + 24);
+            if ((state == SLOT_VERIFIED || state == SLOT_UNVERIFIED) && index.getInt(base + 16) == oldest.id)
+            {
+                index.putInt(base + 24, SLOT_DELETED);
+            }
+        }
+
+        oldest.channel.close();
+        Files.deleteIfExists(oldest.path);
+    }
+
+    private int find(byte[] key, long hash)
+    {
+        int mask = slotCount - 1;
+        for (int slot = (int) hash & mask, probes = 0; probes < slotCount; slot = (slot + 1) & mask, probes++)
+        {
+            int base = slot * SLOT_LENGTH;
+            long slotHash = index.getLong(base);
+            if (slotHash == 0)
+            {
+                return -1;
+            }
+
+            int state = index.getInt(base + 24);
+            if (slotHash == hash && (state == SLOT_VERIFIED || state == SLOT_UNVERIFIED)
+                && keyMatches(key, index.getInt(base + 16), index.getInt(base + 20)))
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void index(byte[] key, long hash, long expireAt, int segment, int offset, int state)
+    {
+        int slot = find(key, hash);
+        if (slot < 0)
+        {
+            if ((usedSlots + 1) * 4L > slotCount * 3L)
+            {
+                resize();
+            }
+
+            int mask = slotCount - 1;
+            slot = (int) hash & mask;
+            while (true)
+            {
+                int slotState = index.getInt(slot * SLOT_LENGTH + 24);
+                if (slotState != SLOT_VERIFIED && slotState != SLOT_UNVERIFIED)
+                {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (index.getLong(slot * SLOT_LENGTH) == 0)
+            {
+                usedSlots++;
+            }
+        }
+
+        int base = slot * SLOT_LENGTH;
+        index.putLong(base, hash);
+        index.putLong(base + 8, expireAt);
+        index.putInt(base + 16, segment);
+        index.putInt(base + 20, offset);
+        index.putInt(base + 24, state);
+    }
+
+    private void resize()
+    {
+        ByteBuffer previous = index;
+        int previousCount = slotCount;
+
+        int live = 0;
+        for (int slot = 0; slot < previousCount; slot++)
+        {
+            int state = previous.getInt(slot * SLOT_LENGTH + 24);
+            if (state == SLOT_VERIFIED || state == SLOT_UNVERIFIED)
+            {
+                live++;
+            }
+        }
+
+        slotCount = live * 2 >= previousCount ? previousCount * 2 : previousCount;
+        index = ByteBuffer.allocateDirect(slotCount * SLOT_LENGTH);
+        usedSlots = 0;
+
+        int mask = slotCount - 1;
+        for (int slot = 0; slot < previousCount; slot++)
+        {
+            int base = slot * SLOT_LENGTH;
+            int state = previous.getInt(base + 24);
+            if (state != SLOT_VERIFIED && state != SLOT_UNVERIFIED)
+            {
+                continue;
+            }
+
+            long hash = previous.getLong(base);
+            int target = (int) hash & mask;
+            while (index.getLong(target * SLOT_LENGTH) != 0)
+            {
+                target = (target + 1) & mask;
+            }
+
+            int targetBase = target * SLOT_LENGTH;
+            index.putLong(targetBase, hash);
+            index.putLong(targetBase + 8, previous.getLong(base + 8));
+            index.putInt(targetBase + 16, previous.getInt(base + 16));
+            index.putInt(targetBase + 20, previous.getInt(base + 20));
+            index.putInt(targetBase + 24, state);
+            usedSlots++;
+        }
+    }
+
+    private boolean keyMatches(byte[] key, int segmentId, int offset)
+    {
+        Segment segment = segments.get(segmentId);
+        if (segment == null || segment.buffer.getInt(offset + 24) != key.length)
+        {
+            return false;
+        }
+
+        byte[] stored = new byte[key.length];
+        ByteBuffer record = segment.buffer.duplicate();
+        record.position(offset + HEADER_LENGTH);
+        record.get(stored);
+        return Arrays.equals(key, stored);
+    }
+
+    private static long hash(byte[] key)
+    {
+        long hash = KeyCodec.murmur3(key, 0, key.length)[0];
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static int recordLength(int keyLength, int valueLength)
+    {
+        return HEADER_LENGTH + keyLength + valueLength;
+    }
+}
@@ -0,0 +1,318 @@
+package app.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.commands.ProtocolCommand;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-field expiration of hash fields.
+ * Redis 7.4 and later expire fields natively through HEXPIRE, and hide expired fields from every read.
+ * Older servers get an expiry envelope instead: the field value is prefixed with a marker and its
+ * expiration time in epoch milliseconds, checked on read against the reader's clock.
+ * Expired enveloped fields are deleted when a read comes across them, so node clocks should be kept in sync.
+ */
+final class HashFieldExpiry
+{
+
+    static final int FIELD_BATCH_SIZE = 1000;
+
+    private static final int SUPPORT_UNKNOWN = 0;
+
+    private static final int SUPPORT_NATIVE = 1;
+
+    private static final int SUPPORT_ENVELOPE = 2;
+
+    private static final byte[] MARKER = {(byte) 0xFE, 'X'};
+
+    private static final int DIGITS = 16;
+
+    private static final int HEADER_LENGTH = MARKER.length + DIGITS;
+
+    private static final ProtocolCommand COMMAND = () -> "COMMAND".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * KEYS[1] hash; ARGV seconds, then field and value pairs. Writes the fields and expires them together.
+     */
+    private static final LuaScript NATIVE_SET = new LuaScript(
+        "local count = (#ARGV - 1) / 2 "
+        + "local fields = {} "
+        + "for i = 1, count do fields[i] = ARGV[i * 2] end "
+        + "redis.call('HSET', KEYS[1], unpack(ARGV, 2)) "
+        + "return redis.call('HEXPIRE', KEYS[1], ARGV[1], 'FIELDS', count, unpack(fields))"
+    );
+
+    /**
+     * KEYS[1] hash; ARGV seconds, then fields. Returns the HEXPIRE reply, 1 for each field expired.
+     */
+    private static final LuaScript NATIVE_EXPIRE = new LuaScript(
+        "return redis.call('HEXPIRE', KEYS[1], ARGV[1], 'FIELDS', #ARGV - 1, unpack(ARGV, 2))"
+    );
+
+    /**
+     * KEYS[1] hash; ARGV marker, new expiration, now, then fields.
+     * Rewrites the envelope of each live field without sending its value back. Returns the fields updated.
+     */
+    private static final LuaScript ENVELOPE_EXPIRE = new LuaScript(
+        "local count = 0 "
+        + "for i = 4, #ARGV do "
+        + "local value = redis.call('HGET', KEYS[1], ARGV[i]) "
+        + "if value then "
+        + "local body = value "
+        + "if string.sub(value, 1, 2) == ARGV[1] then "
+        + "if string.sub(value, 3, 18) <= ARGV[3] then body = nil else body = string.sub(value, 19) end "
+        + "end "
+        + "if body then redis.call('HSET', KEYS[1], ARGV[i], ARGV[1] .. ARGV[2] .. body) count = count + 1 end "
+        + "end "
+        + "end "
+        + "return count"
+    );
+
+    /**
+     * KEYS[1] hash; ARGV marker, now, field. Returns 1 if the field exists and has not expired.
+     */
+    private static final LuaScript ENVELOPE_EXISTS = new LuaScript(
+        "local value = redis.call('HGET', KEYS[1], ARGV[3]) "
+        + "if not value then return 0 end "
+        + "if string.sub(value, 1, 2) == ARGV[1] and string.sub(value, 3, 18) <= ARGV[2] then return 0 end "
+        + "return 1"
+    );
+
+    /**
+     * KEYS[1] hash; ARGV marker, now, then fields. Deletes the fields that are still expired,
+     * leaving those rewritten since they were read. Returns the fields deleted.
+     */
+    private static final LuaScript ENVELOPE_DROP = new LuaScript(
+        "local dropped = 0 "
+        + "for i = 3, #ARGV do "
+        + "local value = redis.call('HGET', KEYS[1], ARGV[i]) "
+        + "if value and string.sub(value, 1, 2) == ARGV[1] and string.sub(value, 3, 18) <= ARGV[2] then "
+        + "redis.call('HDEL', KEYS[1], ARGV[i]) dropped = dropped + 1 "
+        + "end "
+        + "end "
+        + "return dropped"
+    );
+
+    private volatile int support = SUPPORT_UNKNOWN;
+
+    /**
+     * Checks if the server expires hash fields natively, asking it once.
+     *
+     * @param jedis connection to ask on
+     * @return true if HEXPIRE is available
+     */
+    boolean isNative(Jedis jedis)
+    {
+        int current = support;
+        if (current == SUPPORT_UNKNOWN)
+        {
+            Object reply = jedis.sendCommand(COMMAND, bytes("INFO"), bytes("HEXPIRE"));
+            boolean known = reply instanceof List && !((List<?>) reply).isEmpty() && ((List<?>) reply).get(0) != null;
+            current = known ? SUPPORT_NATIVE : SUPPORT_ENVELOPE;
+            support = current;
+        }
+        return current == SUPPORT_NATIVE;
+    }
+
+    /**
+     * Writes hash fields that expire after the given time, independently of the hash and of each other.
+     *
+     * @param jedis connection to write on
+     * @param key the prefixed hash key
+     * @param fields encoded field names and values
+     * @param seconds time to live of each field
+     */
+    void write(Jedis jedis, byte[] key, Map<byte[], byte[]> fields, int seconds)
+    {
+        if (!isNative(jedis))
+        {
+            byte[] header = header(System.currentTimeMillis() + seconds * 1000L);
+            for (Map.Entry<byte[], byte[]> field : fields.entrySet())
+            {
+                field.setValue(concat(header, field.getValue()));
+            }
+            jedis.hset(key, fields);
+            return;
+        }
+
+        List<byte[]> arguments = new ArrayList<>();
+        for (Map.Entry<byte[], byte[]> field : fields.entrySet())
+        {
+            if (arguments.isEmpty())
+            {
+                arguments.add(bytes(Integer.toString(seconds)));
+            }
+            arguments.add(field.getKey());
+            arguments.add(field.getValue());
+            if (arguments.size() > FIELD_BATCH_SIZE * 2)
+            {
+                NATIVE_SET.eval(jedis, 1, withKey(key, arguments));
+                arguments.clear();
+            }
+        }
+        if (!arguments.isEmpty())
+        {
+            NATIVE_SET.eval(jedis, 1, withKey(key, arguments));
+        }
+    }
+
+    /**
+     * Sets a new time to live on existing fields, without sending their values again.
+     *
+     * @param jedis connection to write on
+     * @param key the prefixed hash key
+     * @param seconds new time to live, counted from now
+     * @param fields encoded field names
+     * @return number of fields found and updated
+     */
+    long expire(Jedis jedis, byte[] key, int seconds, byte[][] fields)
+    {
+        boolean nativeExpiry = isNative(jedis);
+        long updated = 0;
+        for (int from = 0; from < fields.length; from += FIELD_BATCH_SIZE)
+        {
+            byte[][] batch = Arrays.copyOfRange(fields, from, Math.min(from + FIELD_BATCH_SIZE, fields.length));
+            List<byte[]> arguments = new ArrayList<>();
+            arguments.add(key);
+            if (nativeExpiry)
+            {
+                arguments.add(bytes(Integer.toString(seconds)));
+                arguments.addAll(Arrays.asList(batch));
+                for (Object result : (List<?>) NATIVE_EXPIRE.eval(jedis, 1, arguments.toArray(new byte[0][])))
+                {
+                    if (Long.valueOf(1).equals(result))
+                    {
+                        updated++;
+                    }
+                }
+            }
+            else
+            {
+                long now = System.currentTimeMillis();
+                arguments.add(MARKER);
+                arguments.add(digits(now + seconds * 1000L));
+                arguments.add(digits(now));
+                arguments.addAll(Arrays.asList(batch));
+                updated += (Long) ENVELOPE_EXPIRE.eval(jedis, 1, arguments.toArray(new byte[0][]));
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Checks if a field exists and has not expired.
+     * Native servers answer with HEXISTS; older servers read the field and its envelope in one script call.
+     *
+     * @param jedis connection to read on
+     * @param key the prefixed hash key
+     * @param field encoded field name
+     * @return true if the field is live
+     */
+    boolean exists(Jedis jedis, byte[] key, byte[] field)
+    {
+        if (isNative(jedis))
+        {
+            return jedis.hexists(key, field);
+        }
+        return (Long) ENVELOPE_EXISTS.eval(jedis, 1, key, MARKER, digits(System.currentTimeMillis()), field) == 1;
+    }
+
+    /**
+     * Deletes enveloped fields a read found expired, unless they were rewritten in the meantime.
+     *
+     * @param jedis connection to write on
+     * @param key the prefixed hash key
+     * @param fields encoded field names
+     */
+    void drop(Jedis jedis, byte[] key, List<byte[]> fields)
+    {
+        List<byte[]> arguments = new ArrayList<>(fields.size() + 3);
+        arguments.add(key);
+        arguments.add(MARKER);
+        arguments.add(digits(System.currentTimeMillis()));
+        arguments.addAll(fields);
+        ENVELOPE_DROP.eval(jedis, 1, arguments.toArray(new byte[0][]));
+    }
+
+    /**
+     * Checks if a stored field value carries an expiry envelope that has passed.
+     *
+     * @param stored the stored value
+     * @param now current epoch milliseconds
+     * @return true if the field has expired
+     */
+    static boolean isExpired(byte[] stored, long now)
+    {
+        if (!isEnveloped(stored))
+        {
+            return false;
+        }
+
+        long expireAt = 0;
+        for (int i = MARKER.length; i < HEADER_LENGTH; i++)
+        {
+            expireAt = expireAt * 10 + (stored[i] - '0');
+        }
+        return expireAt <= now;
+    }
+
+    /**
+     * Strips the expiry envelope from a stored field value, if it has one.
+     *
+     * @param stored the stored value
+     * @return the encoded value
+     */
+    static byte[] unwrap(byte[] stored)
+    {
+        return isEnveloped(stored) ? Arrays.copyOfRange(stored, HEADER_LENGTH, stored.length) : stored;
+    }
+
+    private static boolean isEnveloped(byte[] stored)
+    {
+        return stored.length >= HEADER_LENGTH && stored[0] == MARKER[0] && stored[1] == MARKER[1];
+    }
+
+    private static byte[] header(long expireAt)
+    {
+        return concat(MARKER, digits(expireAt));
+    }
+
+    private static byte[] digits(long millis)
+    {
+        byte[] digits = new byte[DIGITS];
+        long remaining = millis;
+        for (int i = DIGITS - 1; i >= 0; i--)
+        {
+            digits[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return digits;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second)
+    {
+        byte[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+
+    private static byte[][] withKey(byte[] key, List<byte[]> arguments)
+    {
+        byte[][] joined = new byte[arguments.size() + 1][];
+        joined[0] = key;
+        for (int i = 0; i < arguments.size(); i++)
+        {
+            joined[i + 1] = arguments.get(i);
+        }
+        return joined;
+    }
+
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,85 @@
+package app.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ranks remembered keys to select the keys worth warming up.
+ * Accesses are counted in a Count-Min sketch; the expiration and tags are only kept for keys among the heavy hitters.
+ */
+class HitStatistics
+{
+
+    static final int MAX_TRACKED_KEYS = 10000;
+
+    private static final int SKETCH_WIDTH = 1 << 14;
+
+    private final HotKeySketch sketch = new HotKeySketch(SKETCH_WIDTH, MAX_TRACKED_KEYS, false);
+
+    private final Map<String, WarmUpEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Records an access to a remembered key.
+     *
+     * @param key the key as passed to remember
+     * @param expiration expiration time in seconds
+     * @param tags the tags as passed to remember
+     */
+    void record(String key, int expiration, String[] tags)
+    {
+        if (!sketch.record(key.getBytes(StandardCharsets.UTF_8), HotKeySketch.WRITE))
+        {
+            return;
+        }
+
+        WarmUpEntry entry = entries.get(key);
+        if (entry == null || !entry.matches(expiration, tags))
+        {
+            entries.put(key, new WarmUpEntry(key, expiration, tags));
+        }
+        if (entries.size() > 2 * MAX_TRACKED_KEYS)
+        {
+            prune();
+        }
+    }
+
+    /**
+     * Gets the most accessed keys.
+     *
+     * @param limit maximum number of keys
+     * @return entries ordered from the most to the least accessed
+     */
+    List<WarmUpEntry> top(int limit)
+    {
+        List<WarmUpEntry> top = new ArrayList<>(Math.min(limit, MAX_TRACKED_KEYS));
+        for (HotKey hotKey : sketch.top(limit))
+        {
+            WarmUpEntry entry = entries.get(hotKey.getKey());
+            if (entry != null)
+            {
+                top.add(entry);
+            }
+        }
+        return top;
+    }
+
+    private synchronized void prune()
+    {
+        if (entries.size() <= 2 * MAX_TRACKED_KEYS)
+        {
+            return;
+        }
+
+        Set<String> tracked = new HashSet<>();
+        for (HotKey hotKey : sketch.top(MAX_TRACKED_KEYS))
+        {
+            tracked.add(hotKey.getKey());
+        }
+        entries.keySet().retainAll(tracked);
+    }
+}
@@ -0,0 +1,96 @@
+package app.cache;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Estimated traffic of a frequently accessed key.
+ * Counts come from a Count-Min sketch, so they may be overestimated but never underestimated.
+ */
+public class HotKey
+{
+
+    private final String key;
+
+    private final long accesses;
+
+    private final long hits;
+
+    private final long misses;
+
+    /**
+     * Constructs a new HotKey.
+     *
+     * @param key the fully prefixed Redis key
+     * @param accesses estimated reads and writes
+     * @param hits estimated reads that found a value
+     * @param misses estimated reads that found nothing
+     */
+    @ConstructorProperties({"key", "accesses", "hits", "misses"})
+    public HotKey(String key, long accesses, long hits, long misses)
+    {
+        this.key = key;
+        this.accesses = accesses;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * Gets the key.
+     *
+     * @return the fully prefixed Redis key
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * Gets the estimated number of reads and writes.
+     *
+     * @return accesses
+     */
+    public long getAccesses()
+    {
+        return accesses;
+    }
+
+    /**
+     * Gets the estimated number of reads that found a value.
+     *
+     * @return hits
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Gets the estimated number of reads that found nothing.
+     *
+     * @return misses
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Gets the share of reads that found a value.
+     *
+     * @return hit ratio between 0 and 1, or 0 if the key was never read
+     */
+    public double getHitRatio()
+    {
+        long reads = hits + misses;
+        return reads == 0 ? 0 : Math.min(1.0, (double) hits / reads);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "HotKey{key=" + key
+            + ", accesses=" + accesses
+            + ", hits=" + hits
+            + ", misses=" + misses + "}";
+    }
+}
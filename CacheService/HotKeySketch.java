@@ -0,0 +1,329 @@
+package app.cache;
+
+import app.interfaces.HotKeysMXBean;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Count-Min sketch of key accesses with a list of heavy hitters.
+ * Writes, hits and misses are counted in separate rows of counters, so recording an access
+ * costs one hash of the key and one atomic increment per row; accesses are estimated as their sum.
+ * The heavy-hitter list is only touched by keys counted above its current threshold.
+ * Counts are halved once enough accesses were recorded, so the ranking follows recent traffic.
+ */
+final class HotKeySketch implements HotKeysMXBean
+{
+
+    static final int WRITE = 0;
+
+    static final int HIT = 1;
+
+    static final int MISS = 2;
+
+    private static final int DEPTH = 4;
+
+    /**
+     * Total accesses are tallied once every 64 increments of a counter, to keep a shared atomic off the hot path.
+     */
+    private static final int TALLY_MASK = 63;
+
+    /**
+     * Once the heavy-hitter list is full, about one access in 8 is checked against it,
+     * so hot keys do not pay for a lookup on every access.
+     */
+    private static final int OFFER_MASK = 7;
+
+    private static final class Candidate
+    {
+
+        final byte[] key;
+
+        volatile long estimate;
+
+        Candidate(byte[] key, long estimate)
+        {
+            this.key = key;
+            this.estimate = estimate;
+        }
+    }
+
+    private final int width;
+
+    private final int mask;
+
+    private final int capacity;
+
+    private final long resetInterval;
+
+    private final AtomicLongArray[] counters;
+
+    private final Map<ByteBuffer, Candidate> candidates = new ConcurrentHashMap<>();
+
+    private final AtomicLong additions = new AtomicLong();
+
+    private final AtomicBoolean aging = new AtomicBoolean();
+
+    private volatile long threshold = 0;
+
+    /**
+     * Constructs a new HotKeySketch.
+     *
+     * @param width counters per row, rounded up to a power of two
+     * @param capacity number of heavy hitters to track
+     * @param trackOutcomes whether hits and misses are counted besides accesses
+     */
+    HotKeySketch(int width, int capacity, boolean trackOutcomes)
+    {
+        this.width = Integer.highestOneBit(Math.max(16, width - 1)) << 1;
+        this.mask = this.width - 1;
+        this.capacity = capacity;
+        this.resetInterval = 10L * this.width;
+        this.counters = new AtomicLongArray[trackOutcomes ? 3 : 1];
+        for (int i = 0; i < counters.length; i++)
+        {
+            counters[i] = new AtomicLongArray(DEPTH * this.width);
+        }
+    }
+
+    /**
+     * Records an access to a key.
+     *
+     * @param key the key bytes, not retained unless the key becomes a heavy hitter
+     * @param outcome {@link #WRITE}, {@link #HIT} or {@link #MISS}
+     * @return true if the key was admitted to or refreshed in the heavy hitters
+     */
+    boolean record(byte[] key, int outcome)
+    {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        AtomicLongArray recorded = counters[counters.length == 1 ? 0 : outcome];
+
+        long sampled = 0;
+        for (int row = 0; row < DEPTH; row++)
+        {
+            long count = recorded.incrementAndGet(row * width + ((h1 + row * h2) & mask));
+            if (row == 0)
+            {
+                sampled = count;
+            }
+        }
+
+        if ((sampled & TALLY_MASK) == 0 && additions.addAndGet(TALLY_MASK + 1) >= resetInterval)
+        {
+            age();
+        }
+
+        long currentThreshold = threshold;
+        if (currentThreshold > 0 && (sampled & OFFER_MASK) != 0)
+        {
+            return false;
+        }
+
+        long estimate = estimate(hash);
+        if (estimate <= currentThreshold)
+        {
+            return false;
+        }
+        return offer(key, estimate);
+    }
+
+    /**
+     * Estimates how often a key was accessed.
+     *
+     * @param key the key bytes
+     * @return estimated accesses
+     */
+    long estimate(byte[] key)
+    {
+        return estimate(hash(key));
+    }
+
+    /**
+     * Gets the most accessed keys.
+     *
+     * @param limit maximum number of keys
+     * @return hot keys ordered from the most to the least accessed
+     */
+    List<HotKey> top(int limit)
+    {
+        List<HotKey> ranked = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates.values())
+        {
+            long hash = hash(candidate.key);
+            ranked.add(new HotKey(
+                new String(candidate.key, StandardCharsets.UTF_8),
+                estimate(hash),
+                counters.length == 1 ? 0 : estimate(counters[HIT], hash),
+                counters.length == 1 ? 0 : estimate(counters[MISS], hash)));
+        }
+
+        ranked.sort(Comparator.comparingLong(HotKey::getAccesses).reversed());
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    @Override
+    public List<HotKey> getHotKeys()
+    {
+        return top(capacity);
+    }
+
+    @Override
+    public long getRecordedAccesses()
+    {
+        return additions.get();
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        for (AtomicLongArray outcome : counters)
+        {
+            clear(outcome);
+        }
+        candidates.clear();
+        threshold = 0;
+        additions.set(0);
+    }
+
+    private boolean offer(byte[] key, long estimate)
+    {
+        Candidate candidate = candidates.get(ByteBuffer.wrap(key));
+        if (candidate != null)
+        {
+            candidate.estimate = estimate;
+            return true;
+        }
+
+        byte[] copy = key.clone();
+        candidates.putIfAbsent(ByteBuffer.wrap(copy), new Candidate(copy, estimate));
+
+        // Trimming in batches keeps the sort off the path of most admissions.
+        if (candidates.size() > capacity + Math.max(1, capacity / 8))
+        {
+            trim();
+        }
+        return true;
+    }
+
+    private synchronized void trim()
+    {
+        if (candidates.size() <= capacity)
+        {
+            return;
+        }
+
+        List<Candidate> ranked = new ArrayList<>(candidates.values());
+        for (Candidate candidate : ranked)
+        {
+            candidate.estimate = estimate(candidate.key);
+        }
+        ranked.sort((a, b) -> Long.compare(b.estimate, a.estimate));
+
+        for (int i = capacity; i < ranked.size(); i++)
+        {
+            candidates.remove(ByteBuffer.wrap(ranked.get(i).key));
+        }
+        threshold = ranked.get(capacity - 1).estimate;
+    }
+
+    private void age()
+    {
+        if (!aging.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        try
+        {
+            if (additions.get() < resetInterval)
+            {
+                return;
+            }
+
+            // Increments racing with the halving may be lost, which only makes the counts slightly lower.
+            for (AtomicLongArray outcome : counters)
+            {
+                halve(outcome);
+            }
+            for (Candidate candidate : candidates.values())
+            {
+                candidate.estimate >>= 1;
+            }
+            threshold >>= 1;
+            additions.set(additions.get() >> 1);
+        }
+        finally
+        {
+            aging.set(false);
+        }
+    }
+
+    private long estimate(long hash)
+    {
+        long estimate = 0;
+        for (AtomicLongArray outcome : counters)
+        {
+            estimate += estimate(outcome, hash);
+        }
+        return estimate;
+    }
+
+    private long estimate(AtomicLongArray counters, long hash)
+    {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++)
+        {
+            estimate = Math.min(estimate, counters.get(row * width + ((h1 + row * h2) & mask)));
+        }
+        return estimate;
+    }
+
+    private static void halve(AtomicLongArray counters)
+    {
+        for (int i = 0; i < counters.length(); i++)
+        {
+            counters.lazySet(i, counters.get(i) >> 1);
+        }
+    }
+
+    private static void clear(AtomicLongArray counters)
+    {
+        for (int i = 0; i < counters.length(); i++)
+        {
+            counters.set(i, 0);
+        }
+    }
+
+    /**
+     * FNV-1a followed by the MurmurHash3 finalizer, which is cheaper than a full hash
+     * on short keys and mixes well enough to derive the row indexes.
+     */
+    private static long hash(byte[] key)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key)
+        {
+            hash = (hash ^ b) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
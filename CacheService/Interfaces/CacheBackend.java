@@ -0,0 +1,25 @@
+package app.interfaces;
+
+import java.io.Closeable;
+
+/**
+ * Storage behind RedisService.
+ * RedisService builds and prefixes keys, serializes and compresses values, and records metrics;
+ * a backend only stores bytes under byte keys, with TTLs and hashes.
+ */
+public interface CacheBackend extends Closeable
+{
+
+    /**
+     * Borrows a connection for one or more commands. Callers must close it when done.
+     *
+     * @return a connection
+     */
+    CacheConnection connection();
+
+    /**
+     * Releases the resources of the backend.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,119 @@
+package app.interfaces;
+
+import java.util.Map;
+
+/**
+ * Commands of a {@link CacheBackend}, with the semantics of the Redis command of the same name.
+ * Writing a key replaces its value and type; reads treat expired keys as missing.
+ */
+public interface CacheConnection extends AutoCloseable
+{
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key the key
+     * @return the value, or null if the key does not exist
+     */
+    byte[] get(byte[] key);
+
+    /**
+     * Sets the value of a key, replacing any previous value and TTL.
+     *
+     * @param key the key
+     * @param value the value
+     * @param expiration expiration time in seconds, zero or less for no expiration
+     */
+    void set(byte[] key, byte[] value, int expiration);
+
+    /**
+     * Deletes keys.
+     *
+     * @param keys the keys
+     * @return number of keys that existed
+     */
+    long delete(byte[]... keys);
+
+    /**
+     * Checks if a key exists.
+     *
+     * @param key the key
+     * @return true if the key exists
+     */
+    boolean exists(byte[] key);
+
+    /**
+     * Checks which of several keys exist, in one round trip where the backend allows it.
+     *
+     * @param keys the keys
+     * @return whether each key exists, in the same order as the keys
+     */
+    boolean[] existsEach(byte[]... keys);
+
+    /**
+     * Sets the TTL of a key.
+     *
+     * @param key the key
+     * @param seconds TTL in seconds; zero or less deletes the key
+     * @return true if the key exists
+     */
+    boolean expire(byte[] key, int seconds);
+
+    /**
+     * Gets the remaining TTL of a key.
+     *
+     * @param key the key
+     * @return TTL in milliseconds, -1 if the key has no TTL, or -2 if it does not exist
+     */
+    long pttl(byte[] key);
+
+    /**
+     * Adds to the value of a key holding a numeric string, starting from zero when the key does not exist.
+     * The TTL of the key is kept.
+     *
+     * @param key the key
+     * @param delta the amount to add, may be negative
+     * @return the value after the increment
+     */
+    long incrBy(byte[] key, long delta);
+
+    /**
+     * Gets a field of a hash.
+     *
+     * @param key the hash key
+     * @param field the field
+     * @return the field value, or null if the hash or the field does not exist
+     */
+    byte[] hget(byte[] key, byte[] field);
+
+    /**
+     * Gets all fields of a hash.
+     *
+     * @param key the hash key
+     * @return fields and values, empty if the hash does not exist
+     */
+    Map<byte[], byte[]> hgetAll(byte[] key);
+
+    /**
+     * Sets fields of a hash, creating the hash if needed. The TTL of the hash is kept.
+     *
+     * @param key the hash key
+     * @param fields fields and values
+     */
+    void hset(byte[] key, Map<byte[], byte[]> fields);
+
+    /**
+     * Checks if a field exists in a hash.
+     *
+     * @param key the hash key
+     * @param field the field
+     * @return true if the field exists
+     */
+    boolean hexists(byte[] key, byte[] field);
+
+    /**
+     * Returns the connection to its backend.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,41 @@
+package app.interfaces;
+
+import app.cache.LatencySnapshot;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of RedisService latencies and hit/miss counts.
+ */
+public interface CacheMetricsMXBean
+{
+
+    /**
+     * Gets the latency distribution of every recorded operation phase.
+     *
+     * @return latency snapshots by operation and phase
+     */
+    List<LatencySnapshot> getLatencies();
+
+    /**
+     * Gets the number of reads that found a value.
+     *
+     * @return hits by operation
+     */
+    Map<String, Long> getHits();
+
+    /**
+     * Gets the number of reads that found nothing.
+     *
+     * @return misses by operation
+     */
+    Map<String, Long> getMisses();
+
+    /**
+     * Gets the metrics in the Prometheus text exposition format.
+     *
+     * @return metrics text
+     */
+    String scrape();
+}
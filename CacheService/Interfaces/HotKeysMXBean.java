@@ -0,0 +1,32 @@
+package app.interfaces;
+
+import app.cache.HotKey;
+
+import java.util.List;
+
+/**
+ * JMX view of the keys that dominate cache traffic.
+ */
+public interface HotKeysMXBean
+{
+
+    /**
+     * Gets the most accessed keys.
+     *
+     * @return hot keys ordered from the most to the least accessed
+     */
+    List<HotKey> getHotKeys();
+
+    /**
+     * Gets the number of accesses counted since the last reset.
+     * Counts are halved periodically, so older traffic weighs less.
+     *
+     * @return counted accesses
+     */
+    long getRecordedAccesses();
+
+    /**
+     * Forgets every counted access.
+     */
+    void reset();
+}
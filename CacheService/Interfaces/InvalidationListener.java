@@ -0,0 +1,26 @@
+package app.interfaces;
+
+/**
+ * Listener notified when cached keys are invalidated.
+ * Near caches register one to drop their local copies of a key.
+ */
+@FunctionalInterface
+public interface InvalidationListener
+{
+
+    /**
+     * Called when a key has been written, deleted or invalidated through a tag.
+     *
+     * @param key the fully prefixed Redis key
+     */
+    void invalidated(String key);
+
+    /**
+     * Called when invalidation events may have been missed,
+     * for example after the broadcast subscription reconnects.
+     * Listeners should drop every local copy.
+     */
+    default void invalidatedAll()
+    {
+    }
+}
@@ -1,5 +1,6 @@
 package app.interfaces;
 
+import app.cache.RedisService;
 import app.exceptions.RedisServiceException;
 
 /**
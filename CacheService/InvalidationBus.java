@@ -0,0 +1,270 @@
+package app.cache;
+
+import app.interfaces.InvalidationListener;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Dispatches cache invalidation events to registered listeners.
+ * When broadcasting is enabled, events are also published on a Redis pub/sub channel
+ * and events published by other nodes are relayed to the local listeners.
+ */
+public class InvalidationBus
+{
+
+    private static final byte SEPARATOR = '\n';
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final byte[] channel;
+
+    private volatile boolean broadcasting = false;
+
+    private volatile BinaryJedisPubSub subscriber;
+
+    private Thread subscriberThread;
+
+    /**
+     * Constructs a new InvalidationBus.
+     *
+     * @param channel the pub/sub channel used for broadcasts
+     */
+    InvalidationBus(String channel)
+    {
+        this.channel = channel.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Registers a listener.
+     *
+     * @param listener the listener to register
+     */
+    void addListener(InvalidationListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener to remove
+     */
+    void removeListener(InvalidationListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the broadcast channel.
+     *
+     * @return channel name as bytes
+     */
+    byte[] getChannel()
+    {
+        return channel;
+    }
+
+    /**
+     * Checks if anyone consumes events, locally or through broadcasts.
+     *
+     * @return true if events need to be produced
+     */
+    boolean isActive()
+    {
+        return broadcasting || !listeners.isEmpty();
+    }
+
+    /**
+     * Checks if events are broadcast to other nodes.
+     *
+     * @return true if broadcasting is enabled
+     */
+    boolean isBroadcasting()
+    {
+        return broadcasting;
+    }
+
+    /**
+     * Notifies local listeners that keys were invalidated.
+     *
+     * @param keys the prefixed keys
+     */
+    void emit(Collection<String> keys)
+    {
+        if (listeners.isEmpty())
+        {
+            return;
+        }
+
+        for (String key : keys)
+        {
+            for (InvalidationListener listener : listeners)
+            {
+                listener.invalidated(key);
+            }
+        }
+    }
+
+    /**
+     * Builds the broadcast payload for a set of keys.
+     * The payload is the sender node id followed by one key per line.
+     *
+     * @param keys the prefixed keys
+     * @return encoded message
+     */
+    byte[] message(Collection<String> keys)
+    {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        byte[] sender = nodeId.getBytes(StandardCharsets.UTF_8);
+        message.write(sender, 0, sender.length);
+
+        for (String key : keys)
+        {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            message.write(SEPARATOR);
+            message.write(keyBytes, 0, keyBytes.length);
+        }
+
+        return message.toByteArray();
+    }
+
+    /**
+     * Starts relaying broadcasts from other nodes on a dedicated connection.
+     *
+     * @param host Redis server host
+     * @param port Redis server port
+     */
+    synchronized void startBroadcast(String host, int port)
+    {
+        if (broadcasting)
+        {
+            return;
+        }
+
+        broadcasting = true;
+        subscriberThread = new Thread(() -> listen(host, port), "redis-invalidation-subscriber");
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+    }
+
+    /**
+     * Stops publishing and relaying broadcasts.
+     */
+    synchronized void stopBroadcast()
+    {
+        if (!broadcasting)
+        {
+            return;
+        }
+
+        broadcasting = false;
+
+        BinaryJedisPubSub current = subscriber;
+        if (current != null && current.isSubscribed())
+        {
+            current.unsubscribe();
+        }
+
+        subscriberThread.interrupt();
+        subscriberThread = null;
+    }
+
+    private void listen(String host, int port)
+    {
+        while (broadcasting)
+        {
+            try (Jedis jedis = new Jedis(host, port))
+            {
+                BinaryJedisPubSub pubSub = new BinaryJedisPubSub()
+                {
+                    @Override
+                    public void onSubscribe(byte[] subscribedChannel, int subscribedChannels)
+                    {
+                        if (!broadcasting)
+                        {
+                            unsubscribe();
+                            return;
+                        }
+
+                        // Anything published while we were not subscribed is lost.
+                        for (InvalidationListener listener : listeners)
+                        {
+                            listener.invalidatedAll();
+                        }
+                    }
+
+                    @Override
+                    public void onMessage(byte[] messageChannel, byte[] message)
+                    {
+                        receive(message);
+                    }
+                };
+
+                subscriber = pubSub;
+                jedis.subscribe(pubSub, channel);
+            }
+            catch (JedisException e)
+            {
+                System.err.println("[InvalidationBus] :: [listen] - " + e.getMessage());
+            }
+
+            if (!broadcasting)
+            {
+                return;
+            }
+
+            try
+            {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+        }
+    }
+
+    private void receive(byte[] message)
+    {
+        int start = 0;
+        String sender = null;
+
+        for (int i = 0; i <= message.length; i++)
+        {
+            if (i < message.length && message[i] != SEPARATOR)
+            {
+                continue;
+            }
+
+            String token = new String(message, start, i - start, StandardCharsets.UTF_8);
+            start = i + 1;
+
+            if (sender == null)
+            {
+                sender = token;
+                if (sender.equals(nodeId))
+                {
+                    return;
+                }
+                continue;
+            }
+
+            for (InvalidationListener listener : listeners)
+            {
+                listener.invalidated(token);
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package app.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Encodes cache keys into the byte form sent to Redis.
+ * Lowercasing and environment prefixing happen in a single pass into a reusable per-thread buffer.
+ * When compaction is enabled, keys above a length limit keep their readable namespace
+ * and have the rest replaced by a 128-bit MurmurHash3 of the whole key.
+ */
+class KeyCodec
+{
+
+    static final byte NAMESPACE_DELIMITER = ':';
+
+    static final byte HASH_MARKER = '#';
+
+    static final int MAX_NAMESPACE_LENGTH = 48;
+
+    private static final int MAX_SAMPLED_KEYS = 10000;
+
+    private static final int INITIAL_SCRATCH_SIZE = 256;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[INITIAL_SCRATCH_SIZE]);
+
+    private final String prefix;
+
+    private final byte[] prefixBytes;
+
+    private volatile int maxKeyLength = 0;
+
+    private volatile double sampleRate = 0;
+
+    private final Map<String, String> sampledKeys = Collections.synchronizedMap(
+        new LinkedHashMap<String, String>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+            {
+                return size() > MAX_SAMPLED_KEYS;
+            }
+        }
+    );
+
+    /**
+     * Constructs a new KeyCodec.
+     *
+     * @param prefix the lowercase environment prefix
+     */
+    KeyCodec(String prefix)
+    {
+        this.prefix = prefix;
+        this.prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the environment prefix.
+     *
+     * @return prefix
+     */
+    String getPrefix()
+    {
+        return prefix;
+    }
+
+    /**
+     * Enables compaction of keys whose encoded form exceeds the given length.
+     *
+     * @param maxKeyLength maximum encoded key length in bytes, zero or less to disable
+     */
+    void setMaxKeyLength(int maxKeyLength)
+    {
+        this.maxKeyLength = maxKeyLength;
+    }
+
+    /**
+     * Sets the fraction of compacted keys whose original form is remembered for debugging.
+     *
+     * @param sampleRate rate between 0 (disabled) and 1 (every key)
+     */
+    void setSampleRate(double sampleRate)
+    {
+        this.sampleRate = sampleRate;
+        if (sampleRate <= 0)
+        {
+            sampledKeys.clear();
+        }
+    }
+
+    /**
+     * Maps a compacted key back to its original form, if it was sampled.
+     *
+     * @param compactedKey the key as stored in Redis
+     * @return Optional containing the original prefixed key
+     */
+    Optional<String> resolve(String compactedKey)
+    {
+        return Optional.ofNullable(sampledKeys.get(compactedKey));
+    }
+
+    /**
+     * Encodes a key: lowercase, prefix and compact if needed.
+     *
+     * @param key the base key
+     * @return encoded key
+     */
+    byte[] encode(String key)
+    {
+        int length = prefixBytes.length + key.length();
+        byte[] buffer = scratch(length);
+        System.arraycopy(prefixBytes, 0, buffer, 0, prefixBytes.length);
+
+        int position = prefixBytes.length;
+        for (int i = 0; i < key.length(); i++)
+        {
+            char c = key.charAt(i);
+            if (c >= 0x80)
+            {
+                return encodeSlow(key);
+            }
+            buffer[position++] = (byte) (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+        }
+
+        return finish(buffer, length);
+    }
+
+    private byte[] encodeSlow(String key)
+    {
+        byte[] encoded = (prefix + key.toLowerCase()).getBytes(StandardCharsets.UTF_8);
+        byte[] buffer = scratch(encoded.length);
+        System.arraycopy(encoded, 0, buffer, 0, encoded.length);
+        return finish(buffer, encoded.length);
+    }
+
+    private byte[] finish(byte[] buffer, int length)
+    {
+        int limit = maxKeyLength;
+        if (limit <= 0 || length <= limit)
+        {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        // Keep the prefix and the namespace up to its first delimiter readable.
+        int namespaceEnd = prefixBytes.length;
+        int namespaceLimit = Math.min(length, prefixBytes.length + MAX_NAMESPACE_LENGTH);
+        for (int i = prefixBytes.length; i < namespaceLimit; i++)
+        {
+            if (buffer[i] == NAMESPACE_DELIMITER)
+            {
+                namespaceEnd = i + 1;
+                break;
+            }
+        }
+
+        long[] hash = murmur3(buffer, prefixBytes.length, length - prefixBytes.length);
+
+        byte[] compacted = new byte[namespaceEnd + 1 + 32];
+        System.arraycopy(buffer, 0, compacted, 0, namespaceEnd);
+        compacted[namespaceEnd] = HASH_MARKER;
+        writeHex(hash[0], compacted, namespaceEnd + 1);
+        writeHex(hash[1], compacted, namespaceEnd + 17);
+
+        double rate = sampleRate;
+        if (rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate))
+        {
+            sampledKeys.put(
+                new String(compacted, StandardCharsets.UTF_8),
+                new String(buffer, 0, length, StandardCharsets.UTF_8)
+            );
+        }
+
+        return compacted;
+    }
+
+    private static byte[] scratch(int length)
+    {
+        byte[] buffer = scratch.get();
+        if (buffer.length < length)
+        {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+            scratch.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static void writeHex(long value, byte[] target, int offset)
+    {
+        for (int i = 15; i >= 0; i--)
+        {
+            target[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * MurmurHash3 x64 128-bit variant with a zero seed.
+     *
+     * @param data source bytes
+     * @param offset start offset
+     * @param length number of bytes to hash
+     * @return the two 64-bit halves of the hash
+     */
+    @SuppressWarnings("fallthrough")
+    static long[] murmur3(byte[] data, int offset, int length)
+    {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+
+        long h1 = 0;
+        long h2 = 0;
+
+        int blocks = length / 16;
+        for (int i = 0; i < blocks; i++)
+        {
+            int index = offset + i * 16;
+            long k1 = getLittleEndianLong(data, index);
+            long k2 = getLittleEndianLong(data, index + 8);
+
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = offset + blocks * 16;
+        long k1 = 0;
+        long k2 = 0;
+
+        switch (length & 15)
+        {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xFF) << 48;
+            case 14: k2 ^= (long) (data[tail + 13] & 0xFF) << 40;
+            case 13: k2 ^= (long) (data[tail + 12] & 0xFF) << 32;
+            case 12: k2 ^= (long) (data[tail + 11] & 0xFF) << 24;
+            case 11: k2 ^= (long) (data[tail + 10] & 0xFF) << 16;
+            case 10: k2 ^= (long) (data[tail + 9] & 0xFF) << 8;
+            case 9:
+                k2 ^= data[tail + 8] & 0xFF;
+                k2 *= c2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= c1;
+                h2 ^= k2;
+            case 8: k1 ^= (long) (data[tail + 7] & 0xFF) << 56;
+            case 7: k1 ^= (long) (data[tail + 6] & 0xFF) << 48;
+            case 6: k1 ^= (long) (data[tail + 5] & 0xFF) << 40;
+            case 5: k1 ^= (long) (data[tail + 4] & 0xFF) << 32;
+            case 4: k1 ^= (long) (data[tail + 3] & 0xFF) << 24;
+            case 3: k1 ^= (long) (data[tail + 2] & 0xFF) << 16;
+            case 2: k1 ^= (long) (data[tail + 1] & 0xFF) << 8;
+            case 1:
+                k1 ^= data[tail] & 0xFF;
+                k1 *= c1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= c2;
+                h1 ^= k1;
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        return new long[] {h1, h2};
+    }
+
+    private static long getLittleEndianLong(byte[] data, int index)
+    {
+        return (data[index] & 0xFFL)
+            | (data[index + 1] & 0xFFL) << 8
+            | (data[index + 2] & 0xFFL) << 16
+            | (data[index + 3] & 0xFFL) << 24
+            | (data[index + 4] & 0xFFL) << 32
+            | (data[index + 5] & 0xFFL) << 40
+            | (data[index + 6] & 0xFFL) << 48
+            | (data[index + 7] & 0xFFL) << 56;
+    }
+
+    private static long fmix(long k)
+    {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,137 @@
+package app.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear latency histogram in nanoseconds, in the style of HdrHistogram.
+ * Each power of two is split into 32 linear buckets, so recorded values keep about 3% precision
+ * from one nanosecond up to about 68 seconds, in a fixed array of 1024 counters.
+ */
+final class LatencyHistogram
+{
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+
+    private static final long MAX_VALUE = (1L << 36) - 1;
+
+    private static final int BUCKET_COUNT = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos duration in nanoseconds, clamped to the supported range
+     */
+    void record(long nanos)
+    {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+        {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return count
+     */
+    long count()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of recorded values.
+     *
+     * @return sum in nanoseconds
+     */
+    long sumNanos()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return maximum in nanoseconds
+     */
+    long maxNanos()
+    {
+        return max.get();
+    }
+
+    /**
+     * Gets the value below which a fraction of the recorded values fall.
+     *
+     * @param quantile fraction between 0 and 1
+     * @return upper bound of the bucket holding the quantile, in nanoseconds
+     */
+    long valueAtQuantile(double quantile)
+    {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= rank)
+            {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Values below 64 get a bucket each; above, each power of two is split into 32 buckets.
+     */
+    private static int index(long value)
+    {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value | (SUB_BUCKET_COUNT - 1));
+        int shift = magnitude - SUB_BUCKET_HALF_BITS;
+        return (shift << SUB_BUCKET_HALF_BITS) + (int) (value >>> shift);
+    }
+
+    private static long upperBound(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+
+        int shift = (index >> SUB_BUCKET_HALF_BITS) - 1;
+        long lowerBound = (long) (index - (shift << SUB_BUCKET_HALF_BITS)) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,145 @@
+package app.cache;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Latency distribution of one phase of a RedisService operation since startup.
+ */
+public class LatencySnapshot
+{
+
+    private final String operation;
+
+    private final String phase;
+
+    private final long count;
+
+    private final double meanMicros;
+
+    private final double p50Micros;
+
+    private final double p99Micros;
+
+    private final double p999Micros;
+
+    private final double maxMicros;
+
+    /**
+     * Constructs a new LatencySnapshot.
+     *
+     * @param operation operation name
+     * @param phase phase name
+     * @param count number of recorded values
+     * @param meanMicros mean latency in microseconds
+     * @param p50Micros median latency in microseconds
+     * @param p99Micros 99th percentile latency in microseconds
+     * @param p999Micros 99.9th percentile latency in microseconds
+     * @param maxMicros maximum latency in microseconds
+     */
+    @ConstructorProperties({"operation", "phase", "count", "meanMicros", "p50Micros", "p99Micros", "p999Micros", "maxMicros"})
+    public LatencySnapshot(String operation, String phase, long count, double meanMicros,
+                           double p50Micros, double p99Micros, double p999Micros, double maxMicros)
+    {
+        this.operation = operation;
+        this.phase = phase;
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * Gets the operation name.
+     *
+     * @return operation, such as get or remember
+     */
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    /**
+     * Gets the phase name.
+     *
+     * @return phase, such as pool_wait or round_trip
+     */
+    public String getPhase()
+    {
+        return phase;
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return count
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return mean in microseconds
+     */
+    public double getMeanMicros()
+    {
+        return meanMicros;
+    }
+
+    /**
+     * Gets the median latency.
+     *
+     * @return median in microseconds
+     */
+    public double getP50Micros()
+    {
+        return p50Micros;
+    }
+
+    /**
+     * Gets the 99th percentile latency.
+     *
+     * @return 99th percentile in microseconds
+     */
+    public double getP99Micros()
+    {
+        return p99Micros;
+    }
+
+    /**
+     * Gets the 99.9th percentile latency.
+     *
+     * @return 99.9th percentile in microseconds
+     */
+    public double getP999Micros()
+    {
+        return p999Micros;
+    }
+
+    /**
+     * Gets the maximum latency.
+     *
+     * @return maximum in microseconds
+     */
+    public double getMaxMicros()
+    {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LatencySnapshot{operation=" + operation
+            + ", phase=" + phase
+            + ", count=" + count
+            + ", meanMicros=" + meanMicros
+            + ", p50Micros=" + p50Micros
+            + ", p99Micros=" + p99Micros
+            + ", p999Micros=" + p999Micros
+            + ", maxMicros=" + maxMicros + "}";
+    }
+}
@@ -0,0 +1,244 @@
+package app.cache;
+
+import redis.clients.jedis.Jedis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lease on a named lock in Redis, for work that must run on exactly one node at a time.
+ * The lock key expires after the lease time unless renewed, so a holder that dies frees it on its own.
+ * While open, the lease is renewed in the background every third of the lease time, one round trip each.
+ * Every acquisition gets a fencing token larger than any before it for the same lock,
+ * which downstream writes can carry to reject a holder that lost the lease without noticing.
+ */
+public class Lease implements AutoCloseable
+{
+
+    /**
+     * Shortest lease time, so renewals have time to reach Redis before the key expires.
+     */
+    public static final long MIN_LEASE_MILLIS = 300;
+
+    /**
+     * Renewal threads shared by every lease, so a renewal stuck on a slow connection does not delay the others.
+     */
+    private static final int RENEWAL_THREADS = 4;
+
+    /**
+     * KEYS[1] lock, KEYS[2] fencing counter; ARGV owner id, lease time in milliseconds.
+     * Returns the fencing token, or 0 if the lock is held.
+     */
+    private static final LuaScript ACQUIRE = new LuaScript(
+        "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end "
+        + "local token = redis.call('INCR', KEYS[2]) "
+        + "redis.call('SET', KEYS[1], ARGV[1] .. ':' .. token, 'PX', ARGV[2]) "
+        + "return token"
+    );
+
+    /**
+     * KEYS[1] lock; ARGV holder value, lease time in milliseconds. Returns 1 if still held.
+     */
+    private static final LuaScript RENEW = new LuaScript(
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end "
+        + "return 0"
+    );
+
+    /**
+     * KEYS[1] lock; ARGV holder value. Deletes the lock only if this holder still owns it.
+     */
+    private static final LuaScript RELEASE = new LuaScript(
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end "
+        + "return 0"
+    );
+
+    private static final AtomicInteger RENEWER_THREADS = new AtomicInteger();
+
+    private static final ScheduledExecutorService RENEWER = Executors.newScheduledThreadPool(RENEWAL_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "lease-renewal-" + RENEWER_THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RedisBackend redis;
+
+    private final String name;
+
+    private final byte[] key;
+
+    private final byte[] holder;
+
+    private final byte[] leaseMillis;
+
+    private final long leaseNanos;
+
+    private final long token;
+
+    private final OperationMetrics metrics;
+
+    /**
+     * Held for the length of a renewal, so closing waits for one in flight before releasing the lock.
+     */
+    private final Object renewalLock = new Object();
+
+    private volatile ScheduledFuture<?> renewal;
+
+    private volatile boolean held = true;
+
+    private volatile long validUntil;
+
+    private Lease(RedisBackend redis, String name, byte[] key, byte[] holder, long leaseMillis, long token,
+                  long validUntil, OperationMetrics metrics)
+    {
+        this.redis = redis;
+        this.name = name;
+        this.key = key;
+        this.holder = holder;
+        this.leaseMillis = Long.toString(leaseMillis).getBytes(StandardCharsets.US_ASCII);
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        this.token = token;
+        this.validUntil = validUntil;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Takes the lock if no one holds it.
+     *
+     * @param redis the Redis backend
+     * @param name the lock name, for logging
+     * @param key the prefixed lock key
+     * @param fenceKey the prefixed key of the fencing counter
+     * @param leaseMillis how long the lock outlives its last renewal
+     * @param metrics metrics to record operations in
+     * @return the lease, or null if another holder has the lock
+     */
+    static Lease tryAcquire(RedisBackend redis, String name, byte[] key, byte[] fenceKey, long leaseMillis,
+                            CacheMetrics metrics)
+    {
+        if (leaseMillis < MIN_LEASE_MILLIS)
+        {
+            throw new IllegalArgumentException("Lease time must be at least " + MIN_LEASE_MILLIS + " ms");
+        }
+
+        OperationMetrics operationMetrics = metrics.operation("lease");
+        String owner = UUID.randomUUID().toString();
+        long started = System.nanoTime();
+        long token;
+        try (Jedis jedis = redis.resource())
+        {
+            long sent = operationMetrics.record(OperationMetrics.POOL_WAIT, started);
+            byte[] duration = Long.toString(leaseMillis).getBytes(StandardCharsets.US_ASCII);
+            token = (Long) ACQUIRE.eval(jedis, 2, key, fenceKey, owner.getBytes(StandardCharsets.US_ASCII), duration);
+            operationMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+        }
+
+        if (token == 0)
+        {
+            operationMetrics.miss();
+            return null;
+        }
+
+        operationMetrics.hit();
+        byte[] holder = (owner + ":" + token).getBytes(StandardCharsets.US_ASCII);
+        long validUntil = started + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        Lease lease = new Lease(redis, name, key, holder, leaseMillis, token, validUntil, operationMetrics);
+        long interval = leaseMillis / 3;
+        lease.renewal = RENEWER.scheduleWithFixedDelay(lease::renew, interval, interval, TimeUnit.MILLISECONDS);
+        return lease;
+    }
+
+    /**
+     * Gets the fencing token of this acquisition, larger than the token of any earlier holder of the lock.
+     *
+     * @return fencing token
+     */
+    public long token()
+    {
+        return token;
+    }
+
+    /**
+     * Checks if this node still holds the lock.
+     * Turns false once a renewal finds another holder, or when renewals have failed for the whole lease time.
+     * Long jobs should check it between steps and stop when it turns false.
+     *
+     * @return true if the lease is held
+     */
+    public boolean isHeld()
+    {
+        return held && System.nanoTime() - validUntil < 0;
+    }
+
+    /**
+     * Stops renewing and deletes the lock if this node still holds it.
+     * Waits for a renewal in flight first, so it cannot reach Redis after the release.
+     */
+    @Override
+    public void close()
+    {
+        renewal.cancel(false);
+        synchronized (renewalLock)
+        {
+            if (!held)
+            {
+                return;
+            }
+            held = false;
+        }
+
+        try (Jedis jedis = redis.resource())
+        {
+            RELEASE.eval(jedis, 1, key, holder);
+        }
+        catch (Exception e)
+        {
+            System.err.println("[Lease] :: [close] - Failed to release " + name + ", it expires on its own: " + e.getMessage());
+        }
+    }
+
+    private void renew()
+    {
+        synchronized (renewalLock)
+        {
+            if (!held)
+            {
+                return;
+            }
+
+            long started = System.nanoTime();
+            try (Jedis jedis = redis.resource())
+            {
+                long sent = metrics.record(OperationMetrics.POOL_WAIT, started);
+                long renewed = (Long) RENEW.eval(jedis, 1, key, holder, leaseMillis);
+                metrics.record(OperationMetrics.ROUND_TRIP, sent);
+                if (renewed == 1)
+                {
+                    validUntil = started + leaseNanos;
+                    return;
+                }
+
+                System.err.println("[Lease] :: [renew] - Lost " + name + " to another holder");
+                lose();
+            }
+            catch (Exception e)
+            {
+                System.err.println("[Lease] :: [renew] - Failed to renew " + name + ": " + e.getMessage());
+                if (!isHeld())
+                {
+                    lose();
+                }
+            }
+        }
+    }
+
+    private void lose()
+    {
+        held = false;
+        renewal.cancel(false);
+    }
+}
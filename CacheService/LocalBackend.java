@@ -0,0 +1,304 @@
+package app.cache;
+
+import app.interfaces.CacheBackend;
+import app.interfaces.CacheConnection;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process cache backend for single-JVM jobs and benchmarks.
+ * Keys, TTLs and hashes behave as they do in Redis, without the network round trip.
+ * Expired keys are dropped when read and by a background sweep once per second.
+ * Values are stored by reference: arrays handed over or read back must not be modified.
+ */
+public class LocalBackend implements CacheBackend
+{
+
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    private static final String WRONG_TYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    private final ConcurrentMap<ByteBuffer, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Connection connection = new Connection();
+
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Constructs a new LocalBackend.
+     */
+    public LocalBackend()
+    {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-cache-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the shared connection. Commands are thread-safe, so no pooling is needed.
+     *
+     * @return the connection
+     */
+    @Override
+    public CacheConnection connection()
+    {
+        return connection;
+    }
+
+    /**
+     * Stops the expiry sweep and drops every key.
+     */
+    @Override
+    public void close()
+    {
+        sweeper.shutdownNow();
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of keys, including expired keys not swept yet.
+     *
+     * @return number of keys
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    private void sweep()
+    {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+    }
+
+    private Entry live(ByteBuffer key)
+    {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis()))
+        {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private static long expireAt(int seconds)
+    {
+        return seconds > 0 ? System.currentTimeMillis() + seconds * 1000L : 0;
+    }
+
+    private static long parseLong(byte[] digits)
+    {
+        try
+        {
+            return Long.parseLong(new String(digits, StandardCharsets.US_ASCII));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalStateException("ERR value is not an integer or out of range");
+        }
+    }
+
+    /**
+     * A string value or a hash, with its expiration time. Replaced rather than modified,
+     * except for the fields of a hash.
+     */
+    private static final class Entry
+    {
+
+        final byte[] value;
+
+        final ConcurrentMap<ByteBuffer, byte[]> fields;
+
+        final long expireAt;
+
+        Entry(byte[] value, ConcurrentMap<ByteBuffer, byte[]> fields, long expireAt)
+        {
+            this.value = value;
+            this.fields = fields;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now)
+        {
+            return expireAt != 0 && expireAt <= now;
+        }
+
+        byte[] string()
+        {
+            if (fields != null)
+            {
+                throw new IllegalStateException(WRONG_TYPE);
+            }
+            return value;
+        }
+
+        ConcurrentMap<ByteBuffer, byte[]> hash()
+        {
+            if (fields == null)
+            {
+                throw new IllegalStateException(WRONG_TYPE);
+            }
+            return fields;
+        }
+    }
+
+    private final class Connection implements CacheConnection
+    {
+
+        @Override
+        public byte[] get(byte[] key)
+        {
+            Entry entry = live(ByteBuffer.wrap(key));
+            return entry == null ? null : entry.string();
+        }
+
+        @Override
+        public void set(byte[] key, byte[] value, int expiration)
+        {
+            entries.put(ByteBuffer.wrap(key), new Entry(value, null, expireAt(expiration)));
+        }
+
+        @Override
+        public long delete(byte[]... keys)
+        {
+            long deleted = 0;
+            for (byte[] key : keys)
+            {
+                ByteBuffer wrapped = ByteBuffer.wrap(key);
+                if (live(wrapped) != null && entries.remove(wrapped) != null)
+                {
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+
+        @Override
+        public boolean exists(byte[] key)
+        {
+            return live(ByteBuffer.wrap(key)) != null;
+        }
+
+        @Override
+        public boolean[] existsEach(byte[]... keys)
+        {
+            boolean[] exists = new boolean[keys.length];
+            for (int i = 0; i < keys.length; i++)
+            {
+                exists[i] = exists(keys[i]);
+            }
+            return exists;
+        }
+
+        @Override
+        public boolean expire(byte[] key, int seconds)
+        {
+            ByteBuffer wrapped = ByteBuffer.wrap(key);
+            if (live(wrapped) == null)
+            {
+                return false;
+            }
+
+            if (seconds <= 0)
+            {
+                entries.remove(wrapped);
+                return true;
+            }
+
+            long expireAt = expireAt(seconds);
+            return entries.computeIfPresent(wrapped, (k, entry) -> new Entry(entry.value, entry.fields, expireAt)) != null;
+        }
+
+        @Override
+        public long pttl(byte[] key)
+        {
+            Entry entry = live(ByteBuffer.wrap(key));
+            if (entry == null)
+            {
+                return -2;
+            }
+            return entry.expireAt == 0 ? -1 : Math.max(0, entry.expireAt - System.currentTimeMillis());
+        }
+
+        @Override
+        public long incrBy(byte[] key, long delta)
+        {
+            ByteBuffer wrapped = ByteBuffer.wrap(key);
+            long[] result = new long[1];
+            entries.compute(wrapped, (k, entry) -> {
+                boolean missing = entry == null || entry.isExpired(System.currentTimeMillis());
+                long current = missing ? 0 : parseLong(entry.string());
+                result[0] = Math.addExact(current, delta);
+                byte[] digits = Long.toString(result[0]).getBytes(StandardCharsets.US_ASCII);
+                return new Entry(digits, null, missing ? 0 : entry.expireAt);
+            });
+            return result[0];
+        }
+
+        @Override
+        public byte[] hget(byte[] key, byte[] field)
+        {
+            Entry entry = live(ByteBuffer.wrap(key));
+            return entry == null ? null : entry.hash().get(ByteBuffer.wrap(field));
+        }
+
+        @Override
+        public Map<byte[], byte[]> hgetAll(byte[] key)
+        {
+            Entry entry = live(ByteBuffer.wrap(key));
+            if (entry == null)
+            {
+                return new HashMap<>();
+            }
+
+            Map<byte[], byte[]> fields = new HashMap<>();
+            for (Map.Entry<ByteBuffer, byte[]> field : entry.hash().entrySet())
+            {
+                fields.put(field.getKey().array(), field.getValue());
+            }
+            return fields;
+        }
+
+        @Override
+        public void hset(byte[] key, Map<byte[], byte[]> fields)
+        {
+            entries.compute(ByteBuffer.wrap(key), (k, entry) -> {
+                Entry hash = entry == null || entry.isExpired(System.currentTimeMillis())
+                    ? new Entry(null, new ConcurrentHashMap<>(), 0)
+                    : entry;
+                for (Map.Entry<byte[], byte[]> field : fields.entrySet())
+                {
+                    hash.hash().put(ByteBuffer.wrap(field.getKey()), field.getValue());
+                }
+                return hash;
+            });
+        }
+
+        @Override
+        public boolean hexists(byte[] key, byte[] field)
+        {
+            Entry entry = live(ByteBuffer.wrap(key));
+            return entry != null && entry.hash().containsKey(ByteBuffer.wrap(field));
+        }
+
+        /**
+         * Does nothing, the connection is shared.
+         */
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package app.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A Lua script sent by its SHA1 digest, so the body only crosses the network
+ * the first time and after a script cache flush.
+ */
+final class LuaScript
+{
+
+    private final byte[] body;
+
+    private final byte[] sha;
+
+    /**
+     * Constructs a new LuaScript.
+     *
+     * @param body the script source
+     */
+    LuaScript(String body)
+    {
+        this.body = body.getBytes(StandardCharsets.UTF_8);
+        this.sha = sha1(this.body);
+    }
+
+    /**
+     * Runs the script with EVALSHA, falling back to EVAL when Redis does not have it cached.
+     *
+     * @param jedis connection to run the script on
+     * @param keyCount number of leading arguments that are keys
+     * @param arguments keys followed by arguments
+     * @return the script reply
+     */
+    Object eval(Jedis jedis, int keyCount, byte[]... arguments)
+    {
+        try
+        {
+            return jedis.evalsha(sha, keyCount, arguments);
+        }
+        catch (JedisNoScriptException e)
+        {
+            return jedis.eval(body, keyCount, arguments);
+        }
+    }
+
+    /**
+     * Queues the script on a pipeline with EVALSHA.
+     * Pass the reply to {@link #evalIfMissing} after the pipeline is synced, so a script missing
+     * from Redis' cache is run once more with EVAL.
+     *
+     * @param pipeline pipeline to queue the script on
+     * @param keyCount number of leading arguments that are keys
+     * @param arguments keys followed by arguments
+     * @return the pending reply
+     */
+    Response<Object> eval(Pipeline pipeline, int keyCount, byte[]... arguments)
+    {
+        return pipeline.evalsha(sha, keyCount, arguments);
+    }
+
+    /**
+     * Runs the script again with EVAL if its pipelined EVALSHA failed because Redis did not have it cached.
+     *
+     * @param reply the reply of {@link #eval(Pipeline, int, byte[]...)}
+     * @param jedis connection to run the script on, after the pipeline was synced
+     * @param keyCount number of leading arguments that are keys
+     * @param arguments the same keys and arguments
+     * @return the script reply
+     */
+    Object evalIfMissing(Response<Object> reply, Jedis jedis, int keyCount, byte[]... arguments)
+    {
+        try
+        {
+            return reply.get();
+        }
+        catch (JedisNoScriptException e)
+        {
+            return jedis.eval(body, keyCount, arguments);
+        }
+    }
+
+    private static byte[] sha1(byte[] script)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("Failed to hash Lua script", e);
+        }
+    }
+}
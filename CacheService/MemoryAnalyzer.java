@@ -0,0 +1,312 @@
+package app.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates how much Redis memory each key namespace of the service uses.
+ * Keys under the service prefix are walked with SCAN, a random share of them is measured with
+ * MEMORY USAGE, OBJECT ENCODING and PTTL in pipelined batches, and the totals are scaled back up.
+ * For compressed string values, only the gzip header and trailer are read to get the compression ratio.
+ * Scanning is rate limited and takes a pooled connection one page at a time, so it is safe to run
+ * against a production server.
+ */
+public class MemoryAnalyzer
+{
+
+    public static final double DEFAULT_SAMPLE_RATE = 0.1;
+
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    public static final int DEFAULT_KEYS_PER_SECOND = 2000;
+
+    static final String NO_NAMESPACE = "(none)";
+
+    private static final byte NAMESPACE_DELIMITER = ':';
+
+    private static final byte[] USAGE = "USAGE".getBytes(StandardCharsets.US_ASCII);
+
+    private static final String STRING_TYPE = "string";
+
+    private static final byte[] CHUNKS_SUFFIX = ChunkManifest.CHUNKS_SUFFIX.getBytes(StandardCharsets.US_ASCII);
+
+    private final RedisBackend redis;
+
+    private final String prefix;
+
+    private final int prefixLength;
+
+    private double sampleRate = DEFAULT_SAMPLE_RATE;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private int keysPerSecond = DEFAULT_KEYS_PER_SECOND;
+
+    /**
+     * Constructs a new MemoryAnalyzer.
+     *
+     * @param redis the Redis backend
+     * @param prefix the service prefix of every key
+     */
+    MemoryAnalyzer(RedisBackend redis, String prefix)
+    {
+        this.redis = redis;
+        this.prefix = prefix;
+        this.prefixLength = prefix.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Sets the share of the scanned keys that is measured.
+     *
+     * @param sampleRate rate between 0 exclusive and 1 inclusive
+     * @return this instance for method chaining
+     */
+    public MemoryAnalyzer sampleRate(double sampleRate)
+    {
+        if (sampleRate <= 0 || sampleRate > 1)
+        {
+            throw new IllegalArgumentException("Sample rate must be greater than 0 and at most 1");
+        }
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * Sets the SCAN COUNT hint, which also sizes the pipelined batches the sampled keys are measured in.
+     *
+     * @param batchSize keys per batch
+     * @return this instance for method chaining
+     */
+    public MemoryAnalyzer batchSize(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of keys scanned per second.
+     *
+     * @param keysPerSecond rate limit, zero or less for no limit
+     * @return this instance for method chaining
+     */
+    public MemoryAnalyzer rateLimit(int keysPerSecond)
+    {
+        this.keysPerSecond = keysPerSecond;
+        return this;
+    }
+
+    /**
+     * Scans every key of the service and measures a sample of them.
+     * Keys written or deleted during the scan may be counted or missed, as SCAN allows.
+     *
+     * @return memory report, largest namespace first
+     * @throws InterruptedException if interrupted while throttled
+     */
+    public MemoryReport analyze() throws InterruptedException
+    {
+        long started = System.currentTimeMillis();
+        Map<String, NamespaceUsage> namespaces = new HashMap<>();
+        ScanParams params = new ScanParams()
+            .match((prefix + "*").getBytes(StandardCharsets.UTF_8))
+            .count(batchSize);
+        byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+        long scanned = 0;
+        long sampled = 0;
+        long nextPageNanos = System.nanoTime();
+
+        do
+        {
+            List<byte[]> sample = new ArrayList<>();
+            int pageSize;
+            try (Jedis jedis = redis.resource())
+            {
+                ScanResult<byte[]> page = jedis.scan(cursor, params);
+                cursor = page.getCursorAsBytes();
+                pageSize = page.getResult().size();
+                scanned += pageSize;
+
+                for (byte[] key : page.getResult())
+                {
+                    if (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate)
+                    {
+                        sample.add(key);
+                    }
+                }
+                if (!sample.isEmpty())
+                {
+                    sampled += measure(jedis, sample, namespaces);
+                }
+            }
+            catch (RuntimeException e)
+            {
+                throw new RuntimeException("Failed to analyze memory usage", e);
+            }
+
+            if (keysPerSecond > 0)
+            {
+                nextPageNanos += TimeUnit.SECONDS.toNanos(1) * pageSize / keysPerSecond;
+                long waitNanos = nextPageNanos - System.nanoTime();
+                if (waitNanos > 0)
+                {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+        }
+        while (!isStart(cursor));
+
+        List<NamespaceUsage> usages = new ArrayList<>(namespaces.values());
+        usages.sort((a, b) -> Long.compare(b.getEstimatedBytes(), a.getEstimatedBytes()));
+        return new MemoryReport(prefix, sampleRate, scanned, sampled, System.currentTimeMillis() - started, usages);
+    }
+
+    /**
+     * Measures a batch of keys in two pipelined round trips: size, type, encoding and time to live first,
+     * then the length and gzip framing of the string values. Keys gone in the meantime are skipped.
+     *
+     * @return number of keys measured
+     */
+    private long measure(Jedis jedis, List<byte[]> keys, Map<String, NamespaceUsage> namespaces)
+    {
+        int count = keys.size();
+        List<Response<Object>> usages = new ArrayList<>(count);
+        List<Response<String>> types = new ArrayList<>(count);
+        List<Response<byte[]>> encodings = new ArrayList<>(count);
+        List<Response<Long>> ttls = new ArrayList<>(count);
+
+        Pipeline pipeline = jedis.pipelined();
+        for (byte[] key : keys)
+        {
+            usages.add(pipeline.sendCommand(Protocol.Command.MEMORY, USAGE, key));
+            types.add(pipeline.type(key));
+            encodings.add(pipeline.objectEncoding(key));
+            ttls.add(pipeline.pttl(key));
+        }
+        pipeline.sync();
+
+        List<byte[]> strings = new ArrayList<>();
+        List<NamespaceUsage> stringUsages = new ArrayList<>();
+        long measured = 0;
+        for (int i = 0; i < count; i++)
+        {
+            Object bytes = usages.get(i).get();
+            byte[] encoding = encodings.get(i).get();
+            if (!(bytes instanceof Long) || encoding == null)
+            {
+                continue;
+            }
+
+            String key = new String(keys.get(i), prefixLength, keys.get(i).length - prefixLength, StandardCharsets.UTF_8);
+            NamespaceUsage usage = namespaces.computeIfAbsent(namespace(keys.get(i)), name -> new NamespaceUsage(name, sampleRate));
+            usage.add(key, (Long) bytes, new String(encoding, StandardCharsets.US_ASCII), ttls.get(i).get());
+            measured++;
+
+            if (STRING_TYPE.equals(types.get(i).get()))
+            {
+                strings.add(keys.get(i));
+                stringUsages.add(usage);
+            }
+        }
+
+        if (!strings.isEmpty())
+        {
+            measureCompression(jedis, strings, stringUsages);
+        }
+        return measured;
+    }
+
+    /**
+     * Reads the first two and the last four bytes of each string value. Gzip streams start with 1f 8b
+     * and end with the uncompressed length modulo 2^32, little-endian, so the ratio needs no decompression.
+     */
+    private static void measureCompression(Jedis jedis, List<byte[]> keys, List<NamespaceUsage> usages)
+    {
+        List<Response<Long>> lengths = new ArrayList<>(keys.size());
+        List<Response<byte[]>> heads = new ArrayList<>(keys.size());
+        List<Response<byte[]>> tails = new ArrayList<>(keys.size());
+
+        Pipeline pipeline = jedis.pipelined();
+        for (byte[] key : keys)
+        {
+            lengths.add(pipeline.strlen(key));
+            heads.add(pipeline.getrange(key, 0, 1));
+            tails.add(pipeline.getrange(key, -4, -1));
+        }
+        pipeline.sync();
+
+        for (int i = 0; i < keys.size(); i++)
+        {
+            byte[] head = heads.get(i).get();
+            byte[] tail = tails.get(i).get();
+            if (head.length < 2 || head[0] != (byte) 0x1f || head[1] != (byte) 0x8b || tail.length < 4)
+            {
+                continue;
+            }
+
+            long uncompressed = (tail[0] & 0xFFL)
+                | (tail[1] & 0xFFL) << 8
+                | (tail[2] & 0xFFL) << 16
+                | (tail[3] & 0xFFL) << 24;
+            usages.get(i).addCompressed(lengths.get(i).get(), uncompressed);
+        }
+    }
+
+    /**
+     * Gets the namespace of a prefixed key: the part after the prefix up to the first ':'.
+     * Chunk hashes count towards the namespace of the value they belong to.
+     */
+    private String namespace(byte[] key)
+    {
+        int start = prefixLength;
+        int end = key.length;
+        if (endsWith(key, CHUNKS_SUFFIX))
+        {
+            end -= CHUNKS_SUFFIX.length;
+        }
+        for (int i = start; i < end; i++)
+        {
+            if (key[i] == NAMESPACE_DELIMITER)
+            {
+                return i == start ? NO_NAMESPACE : new String(key, start, i - start, StandardCharsets.UTF_8);
+            }
+        }
+        return NO_NAMESPACE;
+    }
+
+    private static boolean endsWith(byte[] key, byte[] suffix)
+    {
+        if (key.length < suffix.length)
+        {
+            return false;
+        }
+        int offset = key.length - suffix.length;
+        for (int i = 0; i < suffix.length; i++)
+        {
+            if (key[offset + i] != suffix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isStart(byte[] cursor)
+    {
+        return cursor.length == 1 && cursor[0] == '0';
+    }
+}
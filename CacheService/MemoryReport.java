@@ -0,0 +1,161 @@
+package app.cache;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Outcome of a memory analysis: usage by namespace, largest first.
+ */
+public class MemoryReport
+{
+
+    private static final String COLUMNS = "namespace\test_keys\test_bytes\tavg_bytes\tmax_bytes\t"
+        + String.join("\t", NamespaceUsage.TTL_LABELS)
+        + "\tgzip_ratio\tencodings\tlargest_key";
+
+    private final String prefix;
+
+    private final double sampleRate;
+
+    private final long scannedKeys;
+
+    private final long sampledKeys;
+
+    private final long elapsedMillis;
+
+    private final List<NamespaceUsage> namespaces;
+
+    /**
+     * Constructs a new MemoryReport.
+     *
+     * @param prefix the service prefix the keys were scanned under
+     * @param sampleRate share of the scanned keys that were measured
+     * @param scannedKeys number of keys scanned
+     * @param sampledKeys number of keys measured
+     * @param elapsedMillis duration of the analysis in milliseconds
+     * @param namespaces usage by namespace, largest first
+     */
+    public MemoryReport(String prefix, double sampleRate, long scannedKeys, long sampledKeys, long elapsedMillis,
+                        List<NamespaceUsage> namespaces)
+    {
+        this.prefix = prefix;
+        this.sampleRate = sampleRate;
+        this.scannedKeys = scannedKeys;
+        this.sampledKeys = sampledKeys;
+        this.elapsedMillis = elapsedMillis;
+        this.namespaces = Collections.unmodifiableList(namespaces);
+    }
+
+    /**
+     * Gets the number of keys scanned.
+     *
+     * @return scanned keys
+     */
+    public long getScannedKeys()
+    {
+        return scannedKeys;
+    }
+
+    /**
+     * Gets the number of keys measured.
+     *
+     * @return sampled keys
+     */
+    public long getSampledKeys()
+    {
+        return sampledKeys;
+    }
+
+    /**
+     * Gets the duration of the analysis.
+     *
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    /**
+     * Gets the usage by namespace, largest first.
+     *
+     * @return namespaces
+     */
+    public List<NamespaceUsage> getNamespaces()
+    {
+        return namespaces;
+    }
+
+    /**
+     * Writes the report as a tab-separated file, one namespace per line.
+     * The file is replaced atomically, so a crash never leaves a truncated report behind.
+     *
+     * @param file the report file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path file) throws IOException
+    {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))
+        {
+            writer.write("# RedisService memory report: prefix '" + prefix + "', sample rate " + sampleRate
+                + ", " + scannedKeys + " keys scanned, " + sampledKeys + " measured in " + elapsedMillis + " ms");
+            writer.newLine();
+            writer.write(COLUMNS);
+            writer.newLine();
+            for (NamespaceUsage usage : namespaces)
+            {
+                writer.write(line(usage));
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String line(NamespaceUsage usage)
+    {
+        StringBuilder line = new StringBuilder();
+        line.append(usage.getNamespace())
+            .append('\t').append(usage.getEstimatedKeys())
+            .append('\t').append(usage.getEstimatedBytes())
+            .append('\t').append(usage.getSampledKeys() == 0 ? 0 : usage.getEstimatedBytes() / usage.getEstimatedKeys())
+            .append('\t').append(usage.getMaxBytes());
+        for (int bucket = 0; bucket < NamespaceUsage.TTL_LABELS.length; bucket++)
+        {
+            line.append('\t').append(usage.getTtlCount(bucket));
+        }
+        line.append('\t').append(String.format(Locale.ROOT, "%.3f", usage.getCompressionRatio()));
+
+        line.append('\t');
+        boolean first = true;
+        for (Map.Entry<String, Long> encoding : usage.getEncodings().entrySet())
+        {
+            if (!first)
+            {
+                line.append(',');
+            }
+            line.append(encoding.getKey()).append('=').append(encoding.getValue());
+            first = false;
+        }
+        line.append('\t').append(usage.getLargestKey());
+        return line.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MemoryReport{scannedKeys=" + scannedKeys
+            + ", sampledKeys=" + sampledKeys
+            + ", namespaces=" + namespaces.size()
+            + ", elapsedMillis=" + elapsedMillis + "}";
+    }
+}
@@ -0,0 +1,211 @@
+package app.cache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Memory used by the keys of one namespace, the part of a key before its first ':',
+ * as measured on a sample and scaled up to the whole keyspace.
+ */
+public class NamespaceUsage
+{
+
+    public static final int TTL_NONE = 0;
+
+    public static final int TTL_UNDER_MINUTE = 1;
+
+    public static final int TTL_UNDER_HOUR = 2;
+
+    public static final int TTL_UNDER_DAY = 3;
+
+    public static final int TTL_DAY_OR_MORE = 4;
+
+    static final String[] TTL_LABELS = {"no_ttl", "ttl_lt_1m", "ttl_lt_1h", "ttl_lt_1d", "ttl_ge_1d"};
+
+    private final String namespace;
+
+    private final double sampleRate;
+
+    private final Map<String, Long> encodings = new TreeMap<>();
+
+    private final long[] ttls = new long[TTL_LABELS.length];
+
+    private long sampledKeys;
+
+    private long sampledBytes;
+
+    private long maxBytes;
+
+    private String largestKey;
+
+    private long compressedBytes;
+
+    private long uncompressedBytes;
+
+    /**
+     * Constructs a new NamespaceUsage.
+     *
+     * @param namespace the namespace
+     * @param sampleRate share of the keys that were measured
+     */
+    NamespaceUsage(String namespace, double sampleRate)
+    {
+        this.namespace = namespace;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Adds a measured key.
+     *
+     * @param key the key without the service prefix
+     * @param bytes memory used by the key and its value
+     * @param encoding internal encoding of the value
+     * @param pttl remaining time to live in milliseconds, negative if none
+     */
+    void add(String key, long bytes, String encoding, long pttl)
+    {
+        sampledKeys++;
+        sampledBytes += bytes;
+        if (bytes > maxBytes)
+        {
+            maxBytes = bytes;
+            largestKey = key;
+        }
+        encodings.merge(encoding, 1L, Long::sum);
+        ttls[ttlBucket(pttl)]++;
+    }
+
+    /**
+     * Adds a gzip-compressed string value.
+     *
+     * @param compressed stored length
+     * @param uncompressed length before compression
+     */
+    void addCompressed(long compressed, long uncompressed)
+    {
+        compressedBytes += compressed;
+        uncompressedBytes += uncompressed;
+    }
+
+    /**
+     * Gets the namespace.
+     *
+     * @return namespace, or "(none)" for keys without one
+     */
+    public String getNamespace()
+    {
+        return namespace;
+    }
+
+    /**
+     * Gets the number of keys measured.
+     *
+     * @return sampled keys
+     */
+    public long getSampledKeys()
+    {
+        return sampledKeys;
+    }
+
+    /**
+     * Gets the estimated number of keys in the namespace.
+     *
+     * @return estimated keys
+     */
+    public long getEstimatedKeys()
+    {
+        return Math.round(sampledKeys / sampleRate);
+    }
+
+    /**
+     * Gets the estimated memory used by the namespace.
+     *
+     * @return estimated bytes
+     */
+    public long getEstimatedBytes()
+    {
+        return Math.round(sampledBytes / sampleRate);
+    }
+
+    /**
+     * Gets the memory used by the largest key measured.
+     *
+     * @return bytes of the largest key
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the largest key measured.
+     *
+     * @return key without the service prefix, or null if none was measured
+     */
+    public String getLargestKey()
+    {
+        return largestKey;
+    }
+
+    /**
+     * Gets how many measured keys use each internal encoding, such as embstr, raw, listpack or hashtable.
+     *
+     * @return keys by encoding
+     */
+    public Map<String, Long> getEncodings()
+    {
+        return Collections.unmodifiableMap(encodings);
+    }
+
+    /**
+     * Gets how many measured keys fall in a time-to-live bucket.
+     *
+     * @param bucket one of the TTL_ constants
+     * @return keys in the bucket
+     */
+    public long getTtlCount(int bucket)
+    {
+        return ttls[bucket];
+    }
+
+    /**
+     * Gets the stored size of gzip-compressed string values over their uncompressed size.
+     *
+     * @return compression ratio, or 0 if no compressed value was measured
+     */
+    public double getCompressionRatio()
+    {
+        return uncompressedBytes == 0 ? 0 : (double) compressedBytes / uncompressedBytes;
+    }
+
+    private static int ttlBucket(long pttl)
+    {
+        if (pttl < 0)
+        {
+            return TTL_NONE;
+        }
+        if (pttl < 60_000L)
+        {
+            return TTL_UNDER_MINUTE;
+        }
+        if (pttl < 3_600_000L)
+        {
+            return TTL_UNDER_HOUR;
+        }
+        if (pttl < 86_400_000L)
+        {
+            return TTL_UNDER_DAY;
+        }
+        return TTL_DAY_OR_MORE;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NamespaceUsage{namespace=" + namespace
+            + ", estimatedKeys=" + getEstimatedKeys()
+            + ", estimatedBytes=" + getEstimatedBytes()
+            + ", maxBytes=" + maxBytes + "}";
+    }
+}
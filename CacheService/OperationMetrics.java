@@ -0,0 +1,96 @@
+package app.cache;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms by phase and hit/miss counters of one RedisService operation.
+ * Histograms are allocated on first use, so phases an operation never goes through cost nothing.
+ */
+final class OperationMetrics
+{
+
+    static final int POOL_WAIT = 0;
+
+    static final int ROUND_TRIP = 1;
+
+    static final int DECOMPRESS = 2;
+
+    static final int DESERIALIZE = 3;
+
+    static final int COMPUTE = 4;
+
+    static final int TOTAL = 5;
+
+    static final String[] PHASES = {"pool_wait", "round_trip", "decompress", "deserialize", "compute", "total"};
+
+    final String name;
+
+    final LongAdder hits = new LongAdder();
+
+    final LongAdder misses = new LongAdder();
+
+    private final AtomicReferenceArray<LatencyHistogram> histograms = new AtomicReferenceArray<>(PHASES.length);
+
+    /**
+     * Constructs a new OperationMetrics.
+     *
+     * @param name operation name
+     */
+    OperationMetrics(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Records the duration of a phase that started at the given time.
+     *
+     * @param phase the phase
+     * @param startNanos {@link System#nanoTime()} at the start of the phase
+     * @return the current time, to be used as the start of the next phase
+     */
+    long record(int phase, long startNanos)
+    {
+        long now = System.nanoTime();
+        histogram(phase).record(now - startNanos);
+        return now;
+    }
+
+    /**
+     * Counts a read that found a value.
+     */
+    void hit()
+    {
+        hits.increment();
+    }
+
+    /**
+     * Counts a read that found nothing.
+     */
+    void miss()
+    {
+        misses.increment();
+    }
+
+    /**
+     * Gets the histogram of a phase if it was ever recorded.
+     *
+     * @param phase the phase
+     * @return histogram, or null
+     */
+    LatencyHistogram recorded(int phase)
+    {
+        return histograms.get(phase);
+    }
+
+    private LatencyHistogram histogram(int phase)
+    {
+        LatencyHistogram histogram = histograms.get(phase);
+        if (histogram == null)
+        {
+            histograms.compareAndSet(phase, null, new LatencyHistogram());
+            histogram = histograms.get(phase);
+        }
+        return histogram;
+    }
+}
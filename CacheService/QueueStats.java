@@ -0,0 +1,97 @@
+package app.cache;
+
+/**
+ * Backlog of a {@link WorkQueue} consumer group at one point in time.
+ */
+public class QueueStats
+{
+
+    private final long length;
+
+    private final long pending;
+
+    private final long undelivered;
+
+    private final long lagMillis;
+
+    private final long consumers;
+
+    /**
+     * Constructs a new QueueStats.
+     *
+     * @param length number of entries in the stream
+     * @param pending number of entries delivered but not acknowledged
+     * @param undelivered number of entries not yet delivered to the group
+     * @param lagMillis age of the oldest undelivered entry in milliseconds, 0 if none
+     * @param consumers number of consumers known to the group
+     */
+    public QueueStats(long length, long pending, long undelivered, long lagMillis, long consumers)
+    {
+        this.length = length;
+        this.pending = pending;
+        this.undelivered = undelivered;
+        this.lagMillis = lagMillis;
+        this.consumers = consumers;
+    }
+
+    /**
+     * Gets the number of entries in the stream, including acknowledged entries not trimmed yet.
+     *
+     * @return stream length
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Gets the number of entries delivered to a consumer but not acknowledged.
+     *
+     * @return pending entries
+     */
+    public long getPending()
+    {
+        return pending;
+    }
+
+    /**
+     * Gets the number of entries not yet delivered to the group,
+     * capped at {@link WorkQueue#LAG_SCAN_LIMIT} on Redis versions before 7.
+     *
+     * @return undelivered entries
+     */
+    public long getUndelivered()
+    {
+        return undelivered;
+    }
+
+    /**
+     * Gets how long the oldest undelivered entry has been waiting.
+     *
+     * @return lag in milliseconds, 0 if every entry was delivered
+     */
+    public long getLagMillis()
+    {
+        return lagMillis;
+    }
+
+    /**
+     * Gets the number of consumers known to the group.
+     *
+     * @return consumers
+     */
+    public long getConsumers()
+    {
+        return consumers;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QueueStats{length=" + length
+            + ", pending=" + pending
+            + ", undelivered=" + undelivered
+            + ", lagMillis=" + lagMillis
+            + ", consumers=" + consumers + "}";
+    }
+}
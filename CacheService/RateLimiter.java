@@ -0,0 +1,344 @@
+package app.cache;
+
+import redis.clients.jedis.Jedis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token bucket shared by every node through Redis, for quotas that apply to the whole fleet.
+ * The bucket is refilled and drawn from atomically in a Lua script on the Redis clock,
+ * so node clocks do not matter. Each node claims tokens in batches and hands them out locally,
+ * so most permits cost no round trip; unused claimed tokens are dropped after a second, which keeps
+ * the fleet within the rate plus at most one prefetch batch per node. Local tokens are taken without a lock,
+ * and at most one claim is in flight per limiter, so a round trip does not hold up threads that have tokens.
+ */
+public class RateLimiter
+{
+
+    public static final int DEFAULT_PREFETCH = 1;
+
+    private static final long LOCAL_TOKEN_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Longest single sleep while waiting for tokens, so the deadline is honoured when other nodes return tokens early.
+     */
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * KEYS[1] bucket hash; ARGV rate per second, capacity, tokens wanted, minimum tokens to grant.
+     * Returns the granted tokens (0 or at least the minimum) and, when nothing is granted,
+     * the microseconds until the minimum is available.
+     */
+    private static final LuaScript SCRIPT = new LuaScript(
+        "redis.replicate_commands() "
+        + "local rate = tonumber(ARGV[1]) "
+        + "local capacity = tonumber(ARGV[2]) "
+        + "local wanted = tonumber(ARGV[3]) "
+        + "local minimum = tonumber(ARGV[4]) "
+        + "local time = redis.call('TIME') "
+        + "local now = tonumber(time[1]) * 1000000 + tonumber(time[2]) "
+        + "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'updated') "
+        + "local tokens = tonumber(bucket[1]) "
+        + "local updated = tonumber(bucket[2]) "
+        + "if tokens == nil or updated == nil then tokens = capacity updated = now end "
+        + "if now > updated then tokens = math.min(capacity, tokens + (now - updated) * rate / 1000000) end "
+        + "local granted = math.min(wanted, math.floor(tokens)) "
+        + "local wait = 0 "
+        + "if granted < minimum then granted = 0 wait = math.ceil((minimum - tokens) * 1000000 / rate) end "
+        + "tokens = tokens - granted "
+        + "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'updated', tostring(now)) "
+        + "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity * 1000 / rate) + 1000) "
+        + "return {granted, wait}"
+    );
+
+    private final RedisBackend redis;
+
+    private final byte[] key;
+
+    private final byte[] rate;
+
+    private final byte[] capacityArgument;
+
+    private final long capacity;
+
+    private final OperationMetrics metrics;
+
+    private final AtomicReference<Batch> batch = new AtomicReference<>(Batch.EMPTY);
+
+    /**
+     * Claim in flight, completed when its batch is in place. Null while no claim is being made.
+     */
+    private final AtomicReference<CompletableFuture<Void>> claiming = new AtomicReference<>();
+
+    private volatile int prefetch = DEFAULT_PREFETCH;
+
+    /**
+     * Constructs a new RateLimiter.
+     *
+     * @param redis the Redis backend
+     * @param key the prefixed bucket key
+     * @param permitsPerSecond refill rate
+     * @param capacity largest number of tokens the bucket holds, the longest burst
+     * @param metrics metrics to record operations in
+     */
+    RateLimiter(RedisBackend redis, byte[] key, double permitsPerSecond, long capacity, CacheMetrics metrics)
+    {
+        if (permitsPerSecond <= 0)
+        {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.redis = redis;
+        this.key = key;
+        this.rate = Double.toString(permitsPerSecond).getBytes(StandardCharsets.US_ASCII);
+        this.capacity = capacity;
+        this.capacityArgument = Long.toString(capacity).getBytes(StandardCharsets.US_ASCII);
+        this.metrics = metrics.operation("rate_limit");
+    }
+
+    /**
+     * Sets how many tokens this node claims per round trip and hands out locally.
+     *
+     * @param tokens tokens per claim, at most the capacity
+     * @return this instance for method chaining
+     */
+    public RateLimiter prefetch(int tokens)
+    {
+        if (tokens <= 0 || tokens > capacity)
+        {
+            throw new IllegalArgumentException("Prefetch must be between 1 and the capacity");
+        }
+        this.prefetch = tokens;
+        return this;
+    }
+
+    /**
+     * Takes one permit if available, without waiting.
+     *
+     * @return true if the permit was granted
+     */
+    public boolean tryAcquire()
+    {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Takes permits if they are all available, without waiting.
+     *
+     * @param permits number of permits
+     * @return true if the permits were granted
+     */
+    public boolean tryAcquire(int permits)
+    {
+        return claim(permits) == 0;
+    }
+
+    /**
+     * Takes one permit, waiting for it up to a timeout.
+     *
+     * @param timeout longest time to wait
+     * @param unit unit of the timeout
+     * @return true if the permit was granted, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return acquire(1, timeout, unit);
+    }
+
+    /**
+     * Takes permits, waiting for them up to a timeout.
+     * Waits as long as the bucket says the permits need to refill, and gives up early
+     * when they cannot be available before the deadline.
+     *
+     * @param permits number of permits
+     * @param timeout longest time to wait
+     * @param unit unit of the timeout
+     * @return true if the permits were granted, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean acquire(int permits, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true)
+        {
+            long waitNanos = claim(permits);
+            if (waitNanos == 0)
+            {
+                return true;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || waitNanos > remaining)
+            {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, MAX_WAIT_NANOS));
+        }
+    }
+
+    /**
+     * Takes permits from the local tokens, claiming more from the bucket when they run short.
+     * Threads that run short while a claim is in flight wait for it and then try the new batch.
+     *
+     * @return 0 if the permits were granted, otherwise the nanoseconds until they may be available
+     */
+    private long claim(int permits)
+    {
+        if (permits <= 0 || permits > capacity)
+        {
+            throw new IllegalArgumentException("Permits must be between 1 and the capacity");
+        }
+
+        while (true)
+        {
+            if (batch.get().take(permits))
+            {
+                metrics.hit();
+                return 0;
+            }
+
+            CompletableFuture<Void> inFlight = claiming.get();
+            if (inFlight != null)
+            {
+                inFlight.join();
+                continue;
+            }
+
+            CompletableFuture<Void> claim = new CompletableFuture<>();
+            if (!claiming.compareAndSet(null, claim))
+            {
+                continue;
+            }
+            try
+            {
+                return claimFromBucket(permits);
+            }
+            finally
+            {
+                claiming.set(null);
+                claim.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Claims the missing permits and a prefetch batch in one round trip. Only called by the claim in flight.
+     *
+     * @return 0 if the permits were granted, otherwise the nanoseconds until they may be available
+     */
+    private long claimFromBucket(int permits)
+    {
+        Batch current = batch.get();
+        long held = current.drain();
+        long missing = permits - held;
+        long wanted = Math.max(missing, prefetch);
+        List<?> reply;
+        long started = System.nanoTime();
+        try (Jedis jedis = redis.resource())
+        {
+            long sent = metrics.record(OperationMetrics.POOL_WAIT, started);
+            byte[][] arguments = {
+                key,
+                rate,
+                capacityArgument,
+                Long.toString(wanted).getBytes(StandardCharsets.US_ASCII),
+                Long.toString(missing).getBytes(StandardCharsets.US_ASCII)
+            };
+            reply = (List<?>) SCRIPT.eval(jedis, 1, arguments);
+            metrics.record(OperationMetrics.ROUND_TRIP, sent);
+        }
+        catch (RuntimeException e)
+        {
+            current.putBack(held);
+            throw e;
+        }
+
+        long granted = (Long) reply.get(0);
+        if (granted == 0)
+        {
+            current.putBack(held);
+            metrics.miss();
+            return Math.max(1, TimeUnit.MICROSECONDS.toNanos((Long) reply.get(1)));
+        }
+
+        batch.set(new Batch(held + granted - permits, System.nanoTime()));
+        metrics.hit();
+        return 0;
+    }
+
+    /**
+     * Tokens claimed from the bucket in one round trip, handed out until they run out or expire.
+     */
+    private static final class Batch
+    {
+
+        private static final Batch EMPTY = new Batch(0, System.nanoTime());
+
+        private final AtomicLong tokens;
+
+        private final long claimedAt;
+
+        private Batch(long tokens, long claimedAt)
+        {
+            this.tokens = new AtomicLong(tokens);
+            this.claimedAt = claimedAt;
+        }
+
+        private boolean expired()
+        {
+            return System.nanoTime() - claimedAt > LOCAL_TOKEN_TTL_NANOS;
+        }
+
+        /**
+         * Takes permits if enough unexpired tokens are left.
+         */
+        private boolean take(int permits)
+        {
+            if (expired())
+            {
+                return false;
+            }
+            while (true)
+            {
+                long left = tokens.get();
+                if (left < permits)
+                {
+                    return false;
+                }
+                if (tokens.compareAndSet(left, left - permits))
+                {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Takes every unexpired token left, so the claim can count them towards its permits.
+         */
+        private long drain()
+        {
+            return expired() ? 0 : tokens.getAndSet(0);
+        }
+
+        /**
+         * Returns drained tokens the claim did not use.
+         */
+        private void putBack(long held)
+        {
+            if (held > 0)
+            {
+                tokens.addAndGet(held);
+            }
+        }
+    }
+}
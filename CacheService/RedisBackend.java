@@ -0,0 +1,235 @@
+package app.cache;
+
+import app.exceptions.RedisServiceException;
+import app.interfaces.CacheBackend;
+import app.interfaces.CacheConnection;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.SetParams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache backend on a Redis server, through a Jedis connection pool.
+ * REDIS_HOST and REDIS_PORT override the given address when set.
+ */
+public class RedisBackend implements CacheBackend
+{
+
+    private final JedisPool jedisPool;
+
+    private final String host;
+
+    private final int port;
+
+    /**
+     * Constructs a new RedisBackend.
+     *
+     * @param host Redis server host
+     * @param port Redis server port
+     * @throws RedisServiceException if the connection pool cannot be created
+     */
+    public RedisBackend(String host, int port) throws RedisServiceException
+    {
+        try
+        {
+            JedisPoolConfig poolConfig = new JedisPoolConfig();
+            poolConfig.setMaxTotal(10);
+            poolConfig.setMaxIdle(5);
+            poolConfig.setMinIdle(1);
+            poolConfig.setTestOnBorrow(true);
+            poolConfig.setTestOnReturn(true);
+
+            String redisHost = System.getenv("REDIS_HOST");
+            int redisPort = RedisService.PORT;
+            try
+            {
+                String portEnv = System.getenv("REDIS_PORT");
+                if (portEnv != null)
+                {
+                    redisPort = Integer.parseInt(portEnv);
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                redisPort = port;
+            }
+
+            if (redisHost == null || redisHost.isEmpty())
+            {
+                redisHost = host;
+            }
+
+            this.jedisPool = new JedisPool(poolConfig, redisHost, redisPort);
+            this.host = redisHost;
+            this.port = redisPort;
+        }
+        catch (Exception e)
+        {
+            throw RedisServiceException.connectionFailed(e.getMessage());
+        }
+    }
+
+    @Override
+    public CacheConnection connection()
+    {
+        return new Connection(jedisPool.getResource());
+    }
+
+    @Override
+    public void close()
+    {
+        if (!jedisPool.isClosed())
+        {
+            jedisPool.close();
+        }
+    }
+
+    /**
+     * Borrows a Jedis connection for the features only Redis provides,
+     * such as pipelines, scripts and pub/sub.
+     *
+     * @return a pooled Jedis connection, to be closed by the caller
+     */
+    Jedis resource()
+    {
+        return jedisPool.getResource();
+    }
+
+    /**
+     * Gets the Redis server host.
+     *
+     * @return host
+     */
+    String host()
+    {
+        return host;
+    }
+
+    /**
+     * Gets the Redis server port.
+     *
+     * @return port
+     */
+    int port()
+    {
+        return port;
+    }
+
+    /**
+     * A pooled Jedis connection.
+     */
+    static final class Connection implements CacheConnection
+    {
+
+        final Jedis jedis;
+
+        Connection(Jedis jedis)
+        {
+            this.jedis = jedis;
+        }
+
+        @Override
+        public byte[] get(byte[] key)
+        {
+            return jedis.get(key);
+        }
+
+        @Override
+        public void set(byte[] key, byte[] value, int expiration)
+        {
+            if (expiration > 0)
+            {
+                jedis.set(key, value, SetParams.setParams().ex((long) expiration));
+            }
+            else
+            {
+                jedis.set(key, value);
+            }
+        }
+
+        @Override
+        public long delete(byte[]... keys)
+        {
+            return jedis.del(keys);
+        }
+
+        @Override
+        public boolean exists(byte[] key)
+        {
+            return jedis.exists(key);
+        }
+
+        @Override
+        public boolean[] existsEach(byte[]... keys)
+        {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Boolean>> responses = new ArrayList<>(keys.length);
+            for (byte[] key : keys)
+            {
+                responses.add(pipeline.exists(key));
+            }
+            pipeline.sync();
+
+            boolean[] exists = new boolean[keys.length];
+            for (int i = 0; i < keys.length; i++)
+            {
+                exists[i] = responses.get(i).get();
+            }
+            return exists;
+        }
+
+        @Override
+        public boolean expire(byte[] key, int seconds)
+        {
+            return jedis.expire(key, (long) seconds) == 1;
+        }
+
+        @Override
+        public long pttl(byte[] key)
+        {
+            return jedis.pttl(key);
+        }
+
+        @Override
+        public long incrBy(byte[] key, long delta)
+        {
+            return jedis.incrBy(key, delta);
+        }
+
+        @Override
+        public byte[] hget(byte[] key, byte[] field)
+        {
+            return jedis.hget(key, field);
+        }
+
+        @Override
+        public Map<byte[], byte[]> hgetAll(byte[] key)
+        {
+            return jedis.hgetAll(key);
+        }
+
+        @Override
+        public void hset(byte[] key, Map<byte[], byte[]> fields)
+        {
+            jedis.hset(key, fields);
+        }
+
+        @Override
+        public boolean hexists(byte[] key, byte[] field)
+        {
+            return jedis.hexists(key, field);
+        }
+
+        @Override
+        public void close()
+        {
+            jedis.close();
+        }
+    }
+}
@@ -1,22 +1,49 @@
 package app.cache;
 
 import app.exceptions.RedisServiceException;
+import app.interfaces.CacheBackend;
+import app.interfaces.CacheConnection;
+import app.interfaces.InvalidationListener;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.SetParams;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.Stack;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Redis service implementation providing caching functionality.
@@ -30,15 +57,136 @@ public class RedisService
 
     public static final int PORT = 6379;
 
-    private JedisPool jedisPool;
+    public static final String TAG_PREFIX = "tag:";
+
+    public static final String INVALIDATION_CHANNEL = "cache-invalidations";
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    public static final int DEFAULT_DISK_CACHE_MIN_VALUE_BYTES = 64 * 1024;
+
+    public static final int DEFAULT_HOT_KEYS = 100;
+
+    private static final int TAG_BATCH_SIZE = 500;
+
+    private static final int DISTINCT_BATCH_SIZE = 1000;
+
+    private static final int CHUNK_READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final int HOT_KEY_SKETCH_WIDTH = 1 << 13;
+
+    private static final int DISK_ADMISSION_MIN_ACCESSES = 2;
+
+    /**
+     * Adds a key to a tag set, a sorted set scored by the time each member expires, in milliseconds.
+     * Members that have expired are dropped on every add, so a hot tag only holds live keys.
+     * The set expires with its longest-lived member that has a TTL; members without TTL never extend it.
+     */
+    private static final LuaScript TAG_SCRIPT = new LuaScript(
+        "if redis.replicate_commands then redis.replicate_commands() end "
+        + "local time = redis.call('TIME') "
+        + "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) "
+        + "local ttl = tonumber(ARGV[2]) "
+        + "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', string.format('%.0f', now)) "
+        + "if ttl > 0 then redis.call('ZADD', KEYS[1], string.format('%.0f', now + ttl * 1000), ARGV[1]) "
+        + "else redis.call('ZADD', KEYS[1], '+inf', ARGV[1]) end "
+        + "local latest = redis.call('ZREVRANGEBYSCORE', KEYS[1], '(+inf', '-inf', 'WITHSCORES', 'LIMIT', 0, 1) "
+        + "if latest[2] then redis.call('PEXPIREAT', KEYS[1], latest[2]) end "
+        + "return 1"
+    );
+
+    /**
+     * Gets the version of a string value, the SHA-1 of its stored bytes, and its remaining time to live.
+     * Replies with an empty list if the key holds no string.
+     */
+    private static final LuaScript DISK_VERSION_SCRIPT = new LuaScript(
+        "if redis.call('TYPE', KEYS[1]).ok ~= 'string' then return {} end "
+        + "return {redis.sha1hex(redis.call('GET', KEYS[1])), redis.call('PTTL', KEYS[1])}"
+    );
+
+    private final CacheBackend backend;
+
+    private final RedisBackend redis;
+
+    private InvalidationBus invalidations;
 
     private static volatile RedisService instance = null;
 
     private static final Object lock = new Object();
 
-    private Stack<String> keyBuffer = new Stack<>();
+    private Stack<byte[]> keyBuffer = new Stack<>();
+
+    private KeyCodec keyCodec = new KeyCodec("");
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private final HitStatistics hitStatistics = new HitStatistics();
+
+    private final HotKeySketch hotKeys = new HotKeySketch(HOT_KEY_SKETCH_WIDTH, DEFAULT_HOT_KEYS, true);
+
+    private ObjectName hotKeysName;
+
+    private ObjectName metricsName;
+
+    private final CacheMetrics metrics = new CacheMetrics();
+
+    private final OperationMetrics getMetrics = metrics.operation("get");
+
+    private final OperationMetrics getObjectMetrics = metrics.operation("get_object");
+
+    private final OperationMetrics setMetrics = metrics.operation("set");
+
+    private final OperationMetrics setObjectMetrics = metrics.operation("set_object");
+
+    private final OperationMetrics deleteMetrics = metrics.operation("delete");
+
+    private final OperationMetrics existsMetrics = metrics.operation("exists");
+
+    private final OperationMetrics expiresMetrics = metrics.operation("expires");
 
-    private String envPrefix = "";
+    private final OperationMetrics rememberMetrics = metrics.operation("remember");
+
+    private final OperationMetrics clearKeysMetrics = metrics.operation("clear_keys");
+
+    private final OperationMetrics invalidateTagMetrics = metrics.operation("invalidate_tag");
+
+    private final OperationMetrics getHashMetrics = metrics.operation("get_hash");
+
+    private final OperationMetrics setHashMetrics = metrics.operation("set_hash");
+
+    private final OperationMetrics getHashFieldMetrics = metrics.operation("get_hash_field");
+
+    private final OperationMetrics isMemberOfHashMetrics = metrics.operation("is_member_of_hash");
+
+    private final OperationMetrics getLongMetrics = metrics.operation("get_long");
+
+    private final OperationMetrics setLongMetrics = metrics.operation("set_long");
+
+    private final OperationMetrics incrementMetrics = metrics.operation("increment");
+
+    private final OperationMetrics getDoubleMetrics = metrics.operation("get_double");
+
+    private final OperationMetrics setDoubleMetrics = metrics.operation("set_double");
+
+    private final OperationMetrics getHashLongsMetrics = metrics.operation("get_hash_longs");
+
+    private final OperationMetrics setHashLongsMetrics = metrics.operation("set_hash_longs");
+
+    private final OperationMetrics getHashLongMetrics = metrics.operation("get_hash_long");
+
+    private final OperationMetrics addDistinctMetrics = metrics.operation("add_distinct");
+
+    private final OperationMetrics countDistinctMetrics = metrics.operation("count_distinct");
+
+    private final OperationMetrics mergeDistinctMetrics = metrics.operation("merge_distinct");
+
+    private final OperationMetrics expireHashFieldsMetrics = metrics.operation("expire_hash_fields");
+
+    private final HashFieldExpiry fieldExpiry = new HashFieldExpiry();
+
+    private volatile DiskCache diskCache;
+
+    private volatile TrackingCache trackingCache;
 
     /**
      * Constructs a new RedisService instance.
@@ -49,475 +197,2072 @@ public class RedisService
      */
     public RedisService(String host, int port) throws RedisServiceException
     {
-        try
-        {
-            JedisPoolConfig poolConfig = new JedisPoolConfig();
-            poolConfig.setMaxTotal(10);
-            poolConfig.setMaxIdle(5);
-            poolConfig.setMinIdle(1);
-            poolConfig.setTestOnBorrow(true);
-            poolConfig.setTestOnReturn(true);
-
-            String redisHost = System.getenv("REDIS_HOST");
-            int redisPort = PORT;
-            try
-            {
-                String portEnv = System.getenv("REDIS_PORT");
-                if (portEnv != null)
-                {
-                    redisPort = Integer.parseInt(portEnv);
-                }
-            }
-            catch (NumberFormatException e)
-            {
-                redisPort = port;
-            }
-
-            if (redisHost == null || redisHost.isEmpty())
-            {
-                redisHost = host;
-            }
-
-            this.jedisPool = new JedisPool(poolConfig, redisHost, redisPort);
-            
-            String env = System.getenv("ENV");
-            String siteEnv = System.getenv("SITE_ENV");
-            if (env != null && siteEnv != null)
-            {
-                this.envPrefix = (env + "-" + siteEnv + "-").toLowerCase();
-            }
-        }
-        catch (Exception e)
-        {
-            throw RedisServiceException.connectionFailed(e.getMessage());
-        }
+        this(new RedisBackend(host, port));
     }
 
     /**
      * Default constructor using default host and port.
+     * Uses an in-process {@link LocalBackend} instead when CACHE_BACKEND is set to "local".
      *
      * @throws RedisServiceException if connection fails
      */
     public RedisService() throws RedisServiceException
     {
-        this(HOST, PORT);
+        this(defaultBackend());
     }
 
     /**
-     * Closes the Redis connection pool.
+     * Constructs a new RedisService instance on the given storage backend.
+     * Features that only Redis provides, such as tags, the invalidation broadcast, chunking
+     * and the disk cache tier, require a {@link RedisBackend}.
+     *
+     * @param backend the storage backend
      */
-    public void close()
+    public RedisService(CacheBackend backend)
     {
-        if (jedisPool != null && !jedisPool.isClosed())
+        this.backend = backend;
+        this.redis = backend instanceof RedisBackend ? (RedisBackend) backend : null;
+
+        String env = System.getenv("ENV");
+        String siteEnv = System.getenv("SITE_ENV");
+        if (env != null && siteEnv != null)
         {
-            jedisPool.close();
+            this.keyCodec = new KeyCodec((env + "-" + siteEnv + "-").toLowerCase());
         }
+
+        this.invalidations = new InvalidationBus(envPrefix(INVALIDATION_CHANNEL));
     }
 
     /**
-     * Gets the environment prefix for keys.
-     *
-     * @param key the base key
-     * @return prefixed key
+     * Closes the storage backend, such as the Redis connection pool.
      */
-    public String envPrefix(String key)
+    public void close()
     {
-        return envPrefix + key.toLowerCase();
+        invalidations.stopBroadcast();
+        disableClientTracking();
+        disableDiskCache();
+        unregisterMBeans();
+        stopMetricsEndpoint();
+        backend.close();
     }
 
     /**
-     * Gets the singleton instance of RedisService.
-     * Thread-safe double-checked locking implementation.
+     * Sets the size above which serialized values are split into chunks.
+     * Chunks are written to a companion hash through a pipeline and read back by streaming decode,
+     * so neither side holds more than one chunk of encoded data at a time.
      *
-     * @return RedisService instance
-     * @throws RedisServiceException if connection fails
+     * @param bytes chunk size in bytes
+     * @return this instance for method chaining
      */
-    public static RedisService instance() throws RedisServiceException
+    public RedisService setChunkSize(int bytes)
     {
-        if (instance != null)
-        {
-            return instance;
-        }
-
-        synchronized (lock)
+        if (bytes <= 0)
         {
-            if (instance == null)
-            {
-                instance = new RedisService();
-            }
+            throw new IllegalArgumentException("Chunk size must be positive");
         }
-
-        return instance;
+        this.chunkSize = bytes;
+        return this;
     }
 
     /**
-     * Sets a key-value pair in Redis.
+     * Enables the on-disk cache tier for values of at least {@link #DEFAULT_DISK_CACHE_MIN_VALUE_BYTES}.
      *
-     * @param key the key
-     * @param value the value
+     * @param directory directory holding the cache files
+     * @param maxBytes size budget in bytes
      * @return this instance for method chaining
+     * @see #enableDiskCache(Path, long, int)
      */
-    public RedisService set(String key, String value)
+    public RedisService enableDiskCache(Path directory, long maxBytes)
     {
-        key = envPrefix(key);
-        try (Jedis jedis = jedisPool.getResource())
-        {
-            jedis.set(key, value);
-            setKeyBuffer(key);
-        }
-        return this;
+        return enableDiskCache(directory, maxBytes, DEFAULT_DISK_CACHE_MIN_VALUE_BYTES);
     }
 
     /**
-     * Sets a key-value pair with object serialization and compression.
+     * Enables an on-disk cache tier between the heap and Redis.
+     * Serialized values read from Redis are kept in memory-mapped files, so later reads
+     * skip the round trip and the decompression. Entries expire with their Redis TTL and are
+     * dropped on invalidation events; enable the invalidation broadcast when other nodes write the same keys.
+     * Entries left by a previous run are revalidated against their Redis TTL before first use.
+     * The disk cache tier requires a {@link RedisBackend}.
      *
-     * @param key the key
-     * @param value the object value
+     * @param directory directory holding the cache files, used by one process at a time
+     * @param maxBytes size budget in bytes
+     * @param minValueBytes smallest serialized value kept on disk
      * @return this instance for method chaining
      */
-    public RedisService set(String key, Object value)
+    public RedisService enableDiskCache(Path directory, long maxBytes, int minValueBytes)
     {
+        redis("enableDiskCache");
+        disableDiskCache();
         try
         {
-            byte[] serialized = serialize(value);
-            byte[] compressed = compress(serialized);
-            key = envPrefix(key);
-            try (Jedis jedis = jedisPool.getResource())
-            {
-                jedis.set(key.getBytes(), compressed);
-                setKeyBuffer(key);
-            }
+            DiskCache cache = DiskCache.open(directory, maxBytes, minValueBytes);
+            invalidations.addListener(cache);
+            this.diskCache = cache;
         }
         catch (IOException e)
         {
-            throw new RuntimeException("Failed to serialize object", e);
+            throw new RuntimeException("Failed to open disk cache", e);
         }
         return this;
     }
 
     /**
-     * Deletes a key from Redis.
+     * Disables the on-disk cache tier. Its files are kept for the next time it is enabled.
      *
-     * @param key the key to delete
      * @return this instance for method chaining
      */
-    public RedisService delete(String key)
+    public RedisService disableDiskCache()
     {
-        key = envPrefix(key);
-        try (Jedis jedis = jedisPool.getResource())
+        DiskCache cache = diskCache;
+        if (cache != null)
         {
-            jedis.del(key);
-            clearKeyBuffer(key);
+            diskCache = null;
+            invalidations.removeListener(cache);
+            cache.close();
         }
         return this;
     }
 
     /**
-     * Gets a value from Redis by key.
+     * Enables a near cache of decoded values that Redis keeps fresh through client-side caching (Redis 6+).
+     * Redis tracks the keys this node reads and notifies it the moment one is written by any client,
+     * so {@code get(key, clazz)} and {@code remember} serve repeated reads from the heap without a round trip.
+     * Cached values are shared between callers and must not be modified.
+     * While enabled, the disk cache tier is bypassed. Client tracking requires a {@link RedisBackend}.
      *
-     * @param key the key
-     * @return Optional containing the value if found
+     * @param maxEntries most values kept, the least recently used are evicted first
+     * @return this instance for method chaining
      */
-    public Optional<String> get(String key)
+    public RedisService enableClientTracking(int maxEntries)
     {
-        key = envPrefix(key);
-        try (Jedis jedis = jedisPool.getResource())
-        {
-            String value = jedis.get(key);
-            return Optional.ofNullable(value);
-        }
+        return enableClientTracking(maxEntries, new String[0]);
     }
 
     /**
-     * Gets a value from Redis and deserializes it.
+     * Enables a near cache in broadcast mode: Redis notifies this node of every write to a key under
+     * one of the prefixes, whether or not it was read here, and tracks no per-key state.
+     * Suits small, hot namespaces; only keys under the prefixes are cached.
+     * Keys compacted for length only match through their namespace, so prefixes should be namespaces such as "product:".
      *
-     * @param key the key
-     * @param clazz the class type to deserialize to
-     * @param <T> the type
-     * @return Optional containing the deserialized object if found
+     * @param maxEntries most values kept, the least recently used are evicted first
+     * @param prefixes key prefixes to watch, before the service prefix is added
+     * @return this instance for method chaining
+     * @see #enableClientTracking(int)
      */
-    @SuppressWarnings("unchecked")
-    public <T> Optional<T> get(String key, Class<T> clazz)
+    public RedisService enableClientTracking(int maxEntries, String... prefixes)
     {
-        key = envPrefix(key);
-        try (Jedis jedis = jedisPool.getResource())
-        {
-            byte[] compressed = jedis.get(key.getBytes());
-            if (compressed == null)
-            {
-                return Optional.empty();
-            }
+        RedisBackend backend = redis("enableClientTracking");
+        disableClientTracking();
 
-            byte[] decompressed = decompress(compressed);
-            Object obj = deserialize(decompressed);
-            
-            if (obj != null && clazz.isInstance(obj))
-            {
-                return Optional.of((T) obj);
-            }
-            return Optional.empty();
-        }
-        catch (IOException | ClassNotFoundException e)
+        byte[][] watched = new byte[prefixes.length][];
+        for (int i = 0; i < prefixes.length; i++)
         {
-            throw new RuntimeException("Failed to deserialize object", e);
+            watched[i] = (keyCodec.getPrefix() + prefixes[i].toLowerCase()).getBytes(StandardCharsets.UTF_8);
         }
+
+        TrackingCache cache = new TrackingCache(backend, maxEntries, watched, metrics);
+        invalidations.addListener(cache);
+        this.trackingCache = cache;
+        return this;
     }
 
     /**
-     * Gets all fields and values from a hash.
+     * Disables the client-side near cache and drops its entries.
      *
-     * @param key the hash key
-     * @return Map containing all hash fields and values
+     * @return this instance for method chaining
      */
-    public Map<String, Object> getHash(String key)
+    public RedisService disableClientTracking()
     {
-        key = envPrefix(key);
-        try (Jedis jedis = jedisPool.getResource())
+        TrackingCache cache = trackingCache;
+        if (cache != null)
         {
-            Map<String, String> serializedHash = jedis.hgetAll(key);
-            Map<String, Object> storedHash = new HashMap<>();
-
-            for (Map.Entry<String, String> entry : serializedHash.entrySet())
-            {
-                try
-                {
-                    byte[] compressed = entry.getValue().getBytes();
-                    byte[] decompressed = decompress(compressed);
-                    Object value = deserialize(decompressed);
-                    storedHash.put(entry.getKey(), value);
-                }
-                catch (IOException | ClassNotFoundException e)
-                {
-                    throw new RuntimeException("Failed to deserialize hash value", e);
-                }
-            }
-
-            return storedHash;
+            trackingCache = null;
+            invalidations.removeListener(cache);
+            cache.close();
         }
+        return this;
     }
 
     /**
-     * Checks if a key exists in Redis.
+     * Gets the keys that dominate traffic, as counted by a Count-Min sketch over every read and write.
      *
-     * @param key the key to check
-     * @return true if key exists, false otherwise
+     * @return up to {@link #DEFAULT_HOT_KEYS} hot keys, from the most to the least accessed
      */
-    public boolean exists(String key)
+    public List<HotKey> hotKeys()
     {
-        key = envPrefix(key);
-        try (Jedis jedis = jedisPool.getResource())
-        {
-            return jedis.exists(key);
-        }
+        return hotKeys.top(DEFAULT_HOT_KEYS);
     }
 
     /**
-     * Sets a hash from a map of key-value pairs.
-     * Values are serialized and compressed before storage.
+     * Gets the keys that dominate traffic, as counted by a Count-Min sketch over every read and write.
      *
-     * @param hashKey the hash key
-     * @param dataArray the map of data to store
-     * @return this instance for method chaining
+     * @param limit maximum number of keys
+     * @return hot keys, from the most to the least accessed
      */
-    public RedisService setHashFromArray(String hashKey, Map<String, Object> dataArray)
+    public List<HotKey> hotKeys(int limit)
     {
-        hashKey = envPrefix(hashKey);
-        try (Jedis jedis = jedisPool.getResource())
-        {
-            for (Map.Entry<String, Object> entry : dataArray.entrySet())
-            {
-                try
-                {
-                    byte[] serialized = serialize(entry.getValue());
-                    byte[] compressed = compress(serialized);
-                    jedis.hset(hashKey.getBytes(), entry.getKey().getBytes(), compressed);
-                }
-                catch (IOException e)
-                {
-                    throw new RuntimeException("Failed to serialize hash value", e);
-                }
-            }
-            setKeyBuffer(hashKey);
-        }
-        return this;
+        return hotKeys.top(limit);
     }
 
     /**
-     * Checks if a field exists in a hash.
+     * Gets the latency histograms and hit/miss counters of every operation.
+     * Each operation is broken down into pool wait, round trip, decompress and deserialize phases;
+     * remember also records supplier compute time and its total duration.
      *
-     * @param hashKey the hash key
-     * @param key the field key
-     * @return true if field exists, false otherwise
+     * @return metrics of this service
      */
-    public boolean isMemberOfHash(String hashKey, String key)
+    public CacheMetrics metrics()
     {
-        hashKey = envPrefix(hashKey);
-        try (Jedis jedis = jedisPool.getResource())
-        {
-            return jedis.hexists(hashKey, key);
-        }
+        return metrics;
     }
 
     /**
-     * Sets expiration time for the last buffered key.
+     * Serves the metrics in the Prometheus text format at http://&lt;address&gt;/metrics.
      *
-     * @param seconds expiration time in seconds
+     * @param port port to listen on
      * @return this instance for method chaining
      */
-    public RedisService expires(int seconds)
+    public RedisService startMetricsEndpoint(int port)
     {
-        String lastKey = getLastKeyBuffered();
-        if (lastKey == null)
+        try
         {
-            return this;
+            metrics.startEndpoint(new InetSocketAddress(port));
         }
-
-        try (Jedis jedis = jedisPool.getResource())
+        catch (IOException e)
         {
-            jedis.expire(lastKey, seconds);
-            clearKeyBuffer(lastKey);
+            throw new RuntimeException("Failed to start metrics endpoint", e);
         }
         return this;
     }
 
     /**
-     * Gets a value from Redis as byte array.
+     * Stops serving the metrics over HTTP.
      *
-     * @param key the key
-     * @return Optional containing the byte array if found
+     * @return this instance for method chaining
      */
-    private Optional<byte[]> getBytes(String key)
+    public RedisService stopMetricsEndpoint()
     {
-        key = envPrefix(key);
-        try (Jedis jedis = jedisPool.getResource())
-        {
-            byte[] value = jedis.get(key.getBytes());
-            return Optional.ofNullable(value);
-        }
+        metrics.stopEndpoint();
+        return this;
     }
 
     /**
-     * Remembers a value by key, using cache if available or computing via supplier.
-     * Values are compressed and serialized before storage.
+     * Registers the JMX beans of this service with the platform MBean server.
      *
-     * @param cachedKey the cache key
-     * @param expiration expiration time in seconds
-     * @param closure the supplier function to compute value if not cached
-     * @param <T> the value type
-     * @return the cached or computed value
+     * @param name instance name, used as the name property of the object names
+     * @return this instance for method chaining
      */
-    @SuppressWarnings("unchecked")
-    public <T> T remember(String cachedKey, int expiration, Supplier<T> closure)
+    public synchronized RedisService registerMBeans(String name)
     {
+        unregisterMBeans();
         try
         {
-            cachedKey = envPrefix(cachedKey);
-            RedisService service = instance();
-
-            Optional<byte[]> cached = service.getBytes(cachedKey);
-            if (cached.isPresent() && cached.get().length > 0)
-            {
-                try
-                {
-                    byte[] decompressed = decompress(cached.get());
-                    Object value = deserialize(decompressed);
-                    
-                    if (value != null)
-                    {
-                        return (T) value;
-                    }
-                }
-                catch (Exception e)
-                {
-                    try
-                    {
-                        Object value = deserialize(cached.get());
-                        if (value != null)
-                        {
-                            return (T) value;
-                        }
-                    }
-                    catch (Exception ex)
-                    {
-                    }
-                }
-            }
+            ObjectName objectName = new ObjectName("app.cache:type=RedisService,name=" + ObjectName.quote(name) + ",component=HotKeys");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(hotKeys, objectName);
+            hotKeysName = objectName;
 
-            T value = closure.get();
-            service.set(cachedKey, value).expires(expiration);
-            return value;
+            objectName = new ObjectName("app.cache:type=RedisService,name=" + ObjectName.quote(name) + ",component=Metrics");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            metricsName = objectName;
         }
-        catch (RedisServiceException e)
+        catch (JMException e)
         {
-            throw new RuntimeException("Failed to get RedisService instance", e);
+            throw new RuntimeException("Failed to register MBeans", e);
         }
+        return this;
     }
 
     /**
-     * Deletes multiple keys from Redis.
+     * Unregisters the JMX beans of this service.
      *
-     * @param cacheKeys array of keys to delete
+     * @return this instance for method chaining
      */
-    public void clearKeys(String[] cacheKeys)
+    public synchronized RedisService unregisterMBeans()
     {
-        String[] prefixedKeys = new String[cacheKeys.length];
-        for (int i = 0; i < cacheKeys.length; i++)
+        for (ObjectName objectName : new ObjectName[] {hotKeysName, metricsName})
         {
-            prefixedKeys[i] = envPrefix(cacheKeys[i]);
-        }
+            if (objectName == null)
+            {
+                continue;
+            }
 
-        try (Jedis jedis = jedisPool.getResource())
-        {
-            jedis.del(prefixedKeys);
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+            catch (JMException e)
+            {
+                System.err.println("[RedisService] :: [unregisterMBeans] - " + e.getMessage());
+            }
         }
+        hotKeysName = null;
+        metricsName = null;
+        return this;
     }
 
     /**
-     * Gets a specific field value from a hash.
+     * Enables key compaction for keys longer than the given length.
+     * Compacted keys keep the environment prefix and the namespace up to the first ':'
+     * readable, and replace the rest with a 128-bit hash of the whole key.
+     * Keys written before compaction was enabled are no longer found under their long form.
      *
-     * @param hashKey the hash key
-     * @param key the field key
+     * @param maxKeyLength maximum key length in bytes before compaction applies
+     * @return this instance for method chaining
+     */
+    public RedisService enableKeyCompaction(int maxKeyLength)
+    {
+        if (maxKeyLength <= 0)
+        {
+            throw new IllegalArgumentException("Maximum key length must be positive");
+        }
+        keyCodec.setMaxKeyLength(maxKeyLength);
+        return this;
+    }
+
+    /**
+     * Disables key compaction.
+     *
+     * @return this instance for method chaining
+     */
+    public RedisService disableKeyCompaction()
+    {
+        keyCodec.setMaxKeyLength(0);
+        return this;
+    }
+
+    /**
+     * Sets the fraction of compacted keys whose original form is remembered,
+     * so they can be mapped back with {@link #resolveCompactedKey(String)} while debugging.
+     *
+     * @param rate sampling rate between 0 (disabled) and 1 (every key)
+     * @return this instance for method chaining
+     */
+    public RedisService setKeyCompactionSampleRate(double rate)
+    {
+        keyCodec.setSampleRate(rate);
+        return this;
+    }
+
+    /**
+     * Maps a compacted key back to its original prefixed form.
+     * Only keys compacted on this node while sampling was enabled can be resolved.
+     *
+     * @param compactedKey the key as stored in Redis
+     * @return Optional containing the original key if it was sampled
+     */
+    public Optional<String> resolveCompactedKey(String compactedKey)
+    {
+        return keyCodec.resolve(compactedKey);
+    }
+
+    /**
+     * Gets the environment prefix for keys.
+     *
+     * @param key the base key
+     * @return prefixed key, compacted if key compaction applies
+     */
+    public String envPrefix(String key)
+    {
+        return new String(keyCodec.encode(key), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the singleton instance of RedisService.
+     * Thread-safe double-checked locking implementation.
+     *
+     * @return RedisService instance
+     * @throws RedisServiceException if connection fails
+     */
+    public static RedisService instance() throws RedisServiceException
+    {
+        if (instance != null)
+        {
+            return instance;
+        }
+
+        synchronized (lock)
+        {
+            if (instance == null)
+            {
+                instance = new RedisService();
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Creates the singleton instance on the given storage backend,
+     * for jobs that pick an in-process {@link LocalBackend} at startup instead of Redis.
+     *
+     * @param backend the storage backend
+     * @return RedisService instance
+     * @throws IllegalStateException if the singleton instance already exists
+     */
+    public static RedisService initialize(CacheBackend backend)
+    {
+        synchronized (lock)
+        {
+            if (instance != null)
+            {
+                throw new IllegalStateException("RedisService instance already exists");
+            }
+            instance = new RedisService(backend);
+            return instance;
+        }
+    }
+
+    /**
+     * Sets a key-value pair in Redis.
+     *
+     * @param key the key
+     * @param value the value
+     * @return this instance for method chaining
+     */
+    public RedisService set(String key, String value)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = setMetrics.record(OperationMetrics.POOL_WAIT, started);
+            connection.set(prefixedKey, value.getBytes(StandardCharsets.UTF_8), 0);
+            setMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            setKeyBuffer(prefixedKey);
+            invalidated(connection, prefixedKey);
+        }
+        return this;
+    }
+
+    /**
+     * Sets a key-value pair with object serialization and compression.
+     * Values larger than the chunk size are transparently stored in chunks.
+     *
+     * @param key the key
+     * @param value the object value
+     * @return this instance for method chaining
+     */
+    public RedisService set(String key, Object value)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = setObjectMetrics.record(OperationMetrics.POOL_WAIT, started);
+            writeValue(connection, prefixedKey, value, 0);
+            setObjectMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            setKeyBuffer(prefixedKey);
+            invalidated(connection, prefixedKey);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Failed to serialize object", e);
+        }
+        return this;
+    }
+
+    /**
+     * Sets a key-value pair with object serialization and compression, and associates it with tags.
+     * The value, its TTL and every tag membership are written in a single pipelined round trip.
+     * Tag sets drop expired keys and expire with the longest-lived key they reference that has a TTL.
+     * Tags require a {@link RedisBackend}.
+     *
+     * @param key the key
+     * @param value the object value
+     * @param expiration expiration time in seconds, zero or less for no expiration
+     * @param tags the tags the value depends on
+     * @return this instance for method chaining
+     */
+    public RedisService set(String key, Object value, int expiration, String... tags)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        byte[] ttl = encodeLong(expiration);
+
+        if (tags.length > 0)
+        {
+            redis("set with tags");
+        }
+
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = setObjectMetrics.record(OperationMetrics.POOL_WAIT, started);
+            if (redis == null)
+            {
+                writeValue(connection, prefixedKey, value, expiration);
+                setObjectMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+                invalidated(connection, prefixedKey);
+                return this;
+            }
+
+            Jedis jedis = jedis(connection);
+            Pipeline pipeline = writeObject(jedis, prefixedKey, value, expiration);
+
+            List<Response<Object>> tagged = new ArrayList<>(tags.length);
+            for (String tag : tags)
+            {
+                tagged.add(TAG_SCRIPT.eval(pipeline, 1, tagKey(tag), prefixedKey, ttl));
+            }
+
+            List<String> invalidatedKeys = invalidations.isActive() ? decodeKeys(prefixedKey) : null;
+            if (invalidations.isBroadcasting())
+            {
+                pipeline.publish(invalidations.getChannel(), invalidations.message(invalidatedKeys));
+            }
+
+            pipeline.sync();
+            for (int i = 0; i < tags.length; i++)
+            {
+                TAG_SCRIPT.evalIfMissing(tagged.get(i), jedis, 1, tagKey(tags[i]), prefixedKey, ttl);
+            }
+            setObjectMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            if (invalidatedKeys != null)
+            {
+                invalidations.emit(invalidatedKeys);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Failed to serialize object", e);
+        }
+        return this;
+    }
+
+    /**
+     * Deletes every key associated with a tag.
+     * The tag set is renamed first so keys tagged concurrently are kept for the next invalidation,
+     * then its members are unlinked in pipelined batches.
+     * Invalidation events are emitted for every unlinked key.
+     * Tags require a {@link RedisBackend}.
+     *
+     * @param tag the tag
+     * @return number of keys that were unlinked
+     */
+    public long invalidateTag(String tag)
+    {
+        RedisBackend redis = redis("invalidateTag");
+        byte[] tagKey = tagKey(tag);
+        byte[] detachedKey = (new String(tagKey, StandardCharsets.UTF_8) + ":invalidating:" + UUID.randomUUID())
+            .getBytes(StandardCharsets.UTF_8);
+
+        long started = System.nanoTime();
+        try (Jedis jedis = redis.resource())
+        {
+            long sent = invalidateTagMetrics.record(OperationMetrics.POOL_WAIT, started);
+            try
+            {
+                jedis.rename(tagKey, detachedKey);
+            }
+            catch (JedisDataException e)
+            {
+                // The tag has no members.
+                return 0;
+            }
+
+            long unlinked = 0;
+            ScanParams params = new ScanParams().count(TAG_BATCH_SIZE);
+            byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+
+            do
+            {
+                ScanResult<Tuple> batch = jedis.zscan(detachedKey, cursor, params);
+                cursor = batch.getCursorAsBytes();
+
+                List<Tuple> members = batch.getResult();
+                if (members.isEmpty())
+                {
+                    continue;
+                }
+
+                byte[][] memberKeys = new byte[members.size()][];
+                for (int i = 0; i < memberKeys.length; i++)
+                {
+                    memberKeys[i] = members.get(i).getBinaryElement();
+                }
+                byte[][] unlinkedKeys = new byte[memberKeys.length * 2][];
+                for (int i = 0; i < memberKeys.length; i++)
+                {
+                    unlinkedKeys[i * 2] = memberKeys[i];
+                    unlinkedKeys[i * 2 + 1] = ChunkManifest.chunksKey(memberKeys[i]);
+                }
+
+                List<String> invalidatedKeys = invalidations.isActive() ? decodeKeys(memberKeys) : null;
+
+                Pipeline pipeline = jedis.pipelined();
+                pipeline.unlink(unlinkedKeys);
+                if (invalidations.isBroadcasting())
+                {
+                    pipeline.publish(invalidations.getChannel(), invalidations.message(invalidatedKeys));
+                }
+                pipeline.sync();
+
+                unlinked += memberKeys.length;
+                if (invalidatedKeys != null)
+                {
+                    invalidations.emit(invalidatedKeys);
+                }
+            }
+            while (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY));
+
+            jedis.unlink(detachedKey);
+            invalidateTagMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            return unlinked;
+        }
+    }
+
+    /**
+     * Deletes every key associated with any of the given tags.
+     *
+     * @param tags the tags
+     * @return number of keys that were unlinked
+     */
+    public long invalidateTags(String... tags)
+    {
+        long unlinked = 0;
+        for (String tag : tags)
+        {
+            unlinked += invalidateTag(tag);
+        }
+        return unlinked;
+    }
+
+    /**
+     * Registers a listener notified whenever a key is written, deleted or invalidated through a tag.
+     * Near caches use it to drop stale local copies.
+     *
+     * @param listener the listener
+     * @return this instance for method chaining
+     */
+    public RedisService addInvalidationListener(InvalidationListener listener)
+    {
+        invalidations.addListener(listener);
+        return this;
+    }
+
+    /**
+     * Unregisters an invalidation listener.
+     *
+     * @param listener the listener
+     * @return this instance for method chaining
+     */
+    public RedisService removeInvalidationListener(InvalidationListener listener)
+    {
+        invalidations.removeListener(listener);
+        return this;
+    }
+
+    /**
+     * Publishes invalidation events on a Redis pub/sub channel and relays
+     * the events published by other nodes to the local listeners.
+     * Every write then costs one extra PUBLISH command.
+     * The broadcast requires a {@link RedisBackend}.
+     *
+     * @return this instance for method chaining
+     */
+    public RedisService enableInvalidationBroadcast()
+    {
+        RedisBackend redis = redis("enableInvalidationBroadcast");
+        invalidations.startBroadcast(redis.host(), redis.port());
+        return this;
+    }
+
+    /**
+     * Stops publishing and relaying invalidation events.
+     *
+     * @return this instance for method chaining
+     */
+    public RedisService disableInvalidationBroadcast()
+    {
+        invalidations.stopBroadcast();
+        return this;
+    }
+
+    /**
+     * Deletes a key from Redis.
+     *
+     * @param key the key to delete
+     * @return this instance for method chaining
+     */
+    public RedisService delete(String key)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = deleteMetrics.record(OperationMetrics.POOL_WAIT, started);
+            connection.delete(prefixedKey, ChunkManifest.chunksKey(prefixedKey));
+            deleteMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            clearKeyBuffer(prefixedKey);
+            invalidated(connection, prefixedKey);
+        }
+        return this;
+    }
+
+    /**
+     * Gets a value from Redis by key.
+     *
+     * @param key the key
+     * @return Optional containing the value if found
+     */
+    public Optional<String> get(String key)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = getMetrics.record(OperationMetrics.POOL_WAIT, started);
+            byte[] value = connection.get(prefixedKey);
+            getMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            recordRead(getMetrics, prefixedKey, value != null);
+            return value == null ? Optional.empty() : Optional.of(new String(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Gets a value from Redis and deserializes it.
+     *
+     * @param key the key
+     * @param clazz the class type to deserialize to
+     * @param <T> the type
+     * @return Optional containing the deserialized object if found
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> get(String key, Class<T> clazz)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        try
+        {
+            Object obj = readCached(getObjectMetrics, prefixedKey);
+            
+            if (obj != null && clazz.isInstance(obj))
+            {
+                return Optional.of((T) obj);
+            }
+            return Optional.empty();
+        }
+        catch (ChunkedValueInputStream.ChunkMissingException e)
+        {
+            return Optional.empty();
+        }
+        catch (IOException | ClassNotFoundException e)
+        {
+            throw new RuntimeException("Failed to deserialize object", e);
+        }
+    }
+
+    /**
+     * Gets all fields and values from a hash.
+     *
+     * @param key the hash key
+     * @return Map containing all hash fields and values
+     */
+    public Map<String, Object> getHash(String key)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = getHashMetrics.record(OperationMetrics.POOL_WAIT, started);
+            Map<byte[], byte[]> serializedHash = connection.hgetAll(prefixedKey);
+            getHashMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            recordRead(getHashMetrics, prefixedKey, !serializedHash.isEmpty());
+            Map<String, Object> storedHash = new HashMap<>();
+            List<byte[]> expired = new ArrayList<>();
+            long now = System.currentTimeMillis();
+
+            for (Map.Entry<byte[], byte[]> entry : serializedHash.entrySet())
+            {
+                if (HashFieldExpiry.isExpired(entry.getValue(), now))
+                {
+                    expired.add(entry.getKey());
+                    continue;
+                }
+
+                try
+                {
+                    long decoding = System.nanoTime();
+                    byte[] compressed = HashFieldExpiry.unwrap(entry.getValue());
+                    byte[] decompressed = decompress(compressed);
+                    decoding = getHashMetrics.record(OperationMetrics.DECOMPRESS, decoding);
+                    Object value = deserialize(decompressed);
+                    getHashMetrics.record(OperationMetrics.DESERIALIZE, decoding);
+                    storedHash.put(new String(entry.getKey(), StandardCharsets.UTF_8), value);
+                }
+                catch (IOException | ClassNotFoundException e)
+                {
+                    throw new RuntimeException("Failed to deserialize hash value", e);
+                }
+            }
+
+            if (!expired.isEmpty())
+            {
+                fieldExpiry.drop(jedis(connection), prefixedKey, expired);
+            }
+            return storedHash;
+        }
+    }
+
+    /**
+     * Checks if a key exists in Redis.
+     *
+     * @param key the key to check
+     * @return true if key exists, false otherwise
+     */
+    public boolean exists(String key)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = existsMetrics.record(OperationMetrics.POOL_WAIT, started);
+            boolean exists = connection.exists(prefixedKey);
+            existsMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            recordRead(existsMetrics, prefixedKey, exists);
+            return exists;
+        }
+    }
+
+    /**
+     * Sets a hash from a map of key-value pairs.
+     * Values are serialized and compressed before storage, then all fields are written with a single HSET command.
+     *
+     * @param hashKey the hash key
+     * @param dataArray the map of data to store
+     * @return this instance for method chaining
+     */
+    public RedisService setHashFromArray(String hashKey, Map<String, Object> dataArray)
+    {
+        byte[] prefixedKey = keyCodec.encode(hashKey);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        Map<byte[], byte[]> encoded = encodeHash(dataArray);
+
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = setHashMetrics.record(OperationMetrics.POOL_WAIT, started);
+            if (!encoded.isEmpty())
+            {
+                connection.hset(prefixedKey, encoded);
+            }
+            setHashMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            setKeyBuffer(prefixedKey);
+            invalidated(connection, prefixedKey);
+        }
+        return this;
+    }
+
+    /**
+     * Sets hash fields that each expire after the given time, independently of the hash and of the other fields.
+     * A stale field can then be refreshed on its own with {@link #setHashField(String, String, Object, int)}.
+     * Redis 7.4 and later expire the fields natively; older servers store the expiration with each value and
+     * drop expired fields when reads come across them, going by the clock of the reading node.
+     * Per-field expiration requires a {@link RedisBackend}.
+     *
+     * @param hashKey the hash key
+     * @param dataArray the map of data to store
+     * @param fieldSeconds time to live of each field in seconds
+     * @return this instance for method chaining
+     */
+    public RedisService setHashFromArray(String hashKey, Map<String, Object> dataArray, int fieldSeconds)
+    {
+        if (fieldSeconds <= 0)
+        {
+            throw new IllegalArgumentException("Field expiration must be positive");
+        }
+        redis("setHashFromArray");
+
+        byte[] prefixedKey = keyCodec.encode(hashKey);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        Map<byte[], byte[]> encoded = encodeHash(dataArray);
+
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = setHashMetrics.record(OperationMetrics.POOL_WAIT, started);
+            if (!encoded.isEmpty())
+            {
+                fieldExpiry.write(jedis(connection), prefixedKey, encoded, fieldSeconds);
+            }
+            setHashMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            setKeyBuffer(prefixedKey);
+            invalidated(connection, prefixedKey);
+        }
+        return this;
+    }
+
+    /**
+     * Sets one hash field with its own expiration, leaving the other fields untouched.
+     *
+     * @param hashKey the hash key
+     * @param field the field key
+     * @param value the value to store
+     * @param seconds time to live of the field in seconds
+     * @return this instance for method chaining
+     * @see #setHashFromArray(String, Map, int)
+     */
+    public RedisService setHashField(String hashKey, String field, Object value, int seconds)
+    {
+        return setHashFromArray(hashKey, Collections.singletonMap(field, value), seconds);
+    }
+
+    /**
+     * Sets a new expiration on existing hash fields, counted from now, without sending their values again.
+     * Fields that are missing or already expired are skipped; a time of 0 or less deletes the fields.
+     * Requires a {@link RedisBackend}.
+     *
+     * @param hashKey the hash key
+     * @param seconds time to live of the fields in seconds
+     * @param fields the field keys
+     * @return number of fields updated
+     */
+    public long expireHashFields(String hashKey, int seconds, String... fields)
+    {
+        redis("expireHashFields");
+        byte[] prefixedKey = keyCodec.encode(hashKey);
+        byte[][] encodedFields = new byte[fields.length][];
+        for (int i = 0; i < fields.length; i++)
+        {
+            encodedFields[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+        }
+        if (encodedFields.length == 0)
+        {
+            return 0;
+        }
+
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = expireHashFieldsMetrics.record(OperationMetrics.POOL_WAIT, started);
+            Jedis jedis = jedis(connection);
+            long updated = seconds <= 0
+                ? jedis.hdel(prefixedKey, encodedFields)
+                : fieldExpiry.expire(jedis, prefixedKey, seconds, encodedFields);
+            expireHashFieldsMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            if (seconds <= 0)
+            {
+                invalidated(connection, prefixedKey);
+            }
+            return updated;
+        }
+    }
+
+    /**
+     * Checks if a field exists in a hash.
+     *
+     * @param hashKey the hash key
+     * @param key the field key
+     * @return true if field exists, false otherwise
+     */
+    public boolean isMemberOfHash(String hashKey, String key)
+    {
+        byte[] prefixedKey = keyCodec.encode(hashKey);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = isMemberOfHashMetrics.record(OperationMetrics.POOL_WAIT, started);
+            byte[] field = key.getBytes(StandardCharsets.UTF_8);
+            // Enveloped fields may have expired, which only the value tells.
+            boolean exists = redis == null
+                ? connection.hexists(prefixedKey, field)
+                : fieldExpiry.exists(jedis(connection), prefixedKey, field);
+            isMemberOfHashMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            recordRead(isMemberOfHashMetrics, prefixedKey, exists);
+            return exists;
+        }
+    }
+
+    /**
+     * Sets expiration time for the last buffered key.
+     *
+     * @param seconds expiration time in seconds
+     * @return this instance for method chaining
+     */
+    public RedisService expires(int seconds)
+    {
+        byte[] lastKey = getLastKeyBuffered();
+        if (lastKey == null)
+        {
+            return this;
+        }
+
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = expiresMetrics.record(OperationMetrics.POOL_WAIT, started);
+            if (redis != null)
+            {
+                // The chunks hash only exists for a chunked value, and EXPIRE on a missing key does nothing.
+                Pipeline pipeline = jedis(connection).pipelined();
+                pipeline.expire(lastKey, (long) seconds);
+                pipeline.expire(ChunkManifest.chunksKey(lastKey), (long) seconds);
+                pipeline.sync();
+            }
+            else
+            {
+                connection.expire(lastKey, seconds);
+            }
+            expiresMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            clearKeyBuffer(lastKey);
+        }
+
+        DiskCache cache = diskCache;
+        if (cache != null)
+        {
+            cache.remove(lastKey);
+        }
+        return this;
+    }
+
+    /**
+     * Remembers a value by key, using cache if available or computing via supplier.
+     * Values are compressed and serialized before storage.
+     *
+     * @param cachedKey the cache key
+     * @param expiration expiration time in seconds
+     * @param closure the supplier function to compute value if not cached
+     * @param <T> the value type
+     * @return the cached or computed value
+     */
+    public <T> T remember(String cachedKey, int expiration, Supplier<T> closure)
+    {
+        return remember(cachedKey, expiration, closure, new String[0]);
+    }
+
+    /**
+     * Remembers a value by key and associates computed values with tags,
+     * so they can be dropped together through {@link #invalidateTag(String)}.
+     *
+     * @param cachedKey the cache key
+     * @param expiration expiration time in seconds
+     * @param closure the supplier function to compute value if not cached
+     * @param tags the tags the computed value depends on
+     * @param <T> the value type
+     * @return the cached or computed value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T remember(String cachedKey, int expiration, Supplier<T> closure, String... tags)
+    {
+        long started = System.nanoTime();
+        hitStatistics.record(cachedKey, expiration, tags);
+        cachedKey = envPrefix(cachedKey);
+
+        try
+        {
+            Object cached = readCached(rememberMetrics, keyCodec.encode(cachedKey));
+            if (cached != null)
+            {
+                rememberMetrics.record(OperationMetrics.TOTAL, started);
+                return (T) cached;
+            }
+        }
+        catch (Exception e)
+        {
+        }
+
+        long computing = System.nanoTime();
+        T value = closure.get();
+        rememberMetrics.record(OperationMetrics.COMPUTE, computing);
+        if (tags.length == 0)
+        {
+            set(cachedKey, value).expires(expiration);
+        }
+        else
+        {
+            set(cachedKey, value, expiration, tags);
+        }
+        rememberMetrics.record(OperationMetrics.TOTAL, started);
+        return value;
+    }
+
+    /**
+     * Opens a Bloom filter stored in Redis, sized for the expected number of ids and false-positive rate.
+     * An existing filter under the same key keeps its original sizing. Requires a {@link RedisBackend}.
+     *
+     * @param key the filter key
+     * @param expectedInsertions number of ids the filter is sized for
+     * @param falsePositiveRate false-positive rate at the expected number of ids, such as 0.01
+     * @return the Bloom filter
+     */
+    public BloomFilter bloomFilter(String key, long expectedInsertions, double falsePositiveRate)
+    {
+        return BloomFilter.open(redis("bloomFilter"), keyCodec.encode(key), expectedInsertions, falsePositiveRate, metrics);
+    }
+
+    /**
+     * Gets a token-bucket rate limiter shared by every node using the same key.
+     * Requires a {@link RedisBackend}.
+     *
+     * @param key the bucket key
+     * @param permitsPerSecond refill rate
+     * @param capacity largest number of tokens the bucket holds, the longest burst
+     * @return the rate limiter
+     */
+    public RateLimiter rateLimiter(String key, double permitsPerSecond, long capacity)
+    {
+        return new RateLimiter(redis("rateLimiter"), keyCodec.encode(key), permitsPerSecond, capacity, metrics);
+    }
+
+    /**
+     * Opens a work queue on a Redis stream, read by the given consumer group.
+     * Creates the stream and the group if they do not exist. Requires a {@link RedisBackend}.
+     *
+     * @param name the queue name
+     * @param group the consumer group, one per kind of worker
+     * @return the work queue
+     */
+    public WorkQueue workQueue(String name, String group)
+    {
+        RedisBackend backend = redis("workQueue");
+        return WorkQueue.open(backend, new String(keyCodec.encode(name), StandardCharsets.UTF_8), group, metrics);
+    }
+
+    /**
+     * Takes a lease on a named lock if no other node holds it, for jobs that must run on one node at a time.
+     * The lease renews itself until closed, and the lock expires on its own if this node dies.
+     * Requires a {@link RedisBackend}.
+     *
+     * @param name the lock name
+     * @param leaseTime how long the lock outlives its last renewal
+     * @param unit unit of the lease time
+     * @return the lease, or null if another node holds the lock
+     */
+    public Lease tryLease(String name, long leaseTime, TimeUnit unit)
+    {
+        RedisBackend backend = redis("tryLease");
+        return Lease.tryAcquire(backend, name, keyCodec.encode(name), keyCodec.encode(name + ":fence"), unit.toMillis(leaseTime), metrics);
+    }
+
+    /**
+     * Gets an analyzer that estimates the memory used by each key namespace of this service from a sample.
+     * Requires a {@link RedisBackend}.
+     *
+     * @return memory analyzer bound to this service's keys
+     */
+    public MemoryAnalyzer memoryAnalyzer()
+    {
+        return new MemoryAnalyzer(redis("memoryAnalyzer"), keyCodec.getPrefix());
+    }
+
+    /**
+     * Gets a warmer that exports the most remembered keys and reloads them into an empty cache.
+     *
+     * @return cache warmer bound to this service
+     */
+    public CacheWarmer warmer()
+    {
+        return new CacheWarmer(this);
+    }
+
+    /**
+     * Gets the most accessed remembered keys.
+     *
+     * @param limit maximum number of keys
+     * @return entries ordered from the most to the least accessed
+     */
+    List<WarmUpEntry> hotKeysForWarmUp(int limit)
+    {
+        return hitStatistics.top(limit);
+    }
+
+    /**
+     * Finds the remembered keys that are missing from the cache, checking them in one pipelined round trip.
+     *
+     * @param entries the snapshot entries
+     * @return entries whose key does not exist
+     */
+    List<WarmUpEntry> missingRememberedKeys(List<WarmUpEntry> entries)
+    {
+        byte[][] keys = new byte[entries.size()][];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = rememberedKey(entries.get(i).key);
+        }
+
+        List<WarmUpEntry> missing = new ArrayList<>();
+        try (CacheConnection connection = backend.connection())
+        {
+            boolean[] exists = connection.existsEach(keys);
+            for (int i = 0; i < exists.length; i++)
+            {
+                if (!exists[i])
+                {
+                    missing.add(entries.get(i));
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Stores computed values under their remembered keys and tags, as remember would.
+     * On Redis, values that fit in a single chunk are written in one pipelined round trip together with
+     * their tag memberships; larger values go through the chunked writer one by one.
+     *
+     * @param entries the snapshot entries
+     * @param values the computed values, in the same order as the entries
+     */
+    void storeRemembered(List<WarmUpEntry> entries, List<Object> values)
+    {
+        if (entries.isEmpty())
+        {
+            return;
+        }
+
+        byte[][] storedKeys = new byte[entries.size()][];
+        try (CacheConnection connection = backend.connection())
+        {
+            if (redis == null)
+            {
+                for (int i = 0; i < entries.size(); i++)
+                {
+                    storedKeys[i] = rememberedKey(entries.get(i).key);
+                    hotKeys.record(storedKeys[i], HotKeySketch.WRITE);
+                    writeValue(connection, storedKeys[i], values.get(i), entries.get(i).expiration);
+                }
+                invalidated(connection, storedKeys);
+                return;
+            }
+
+            Jedis jedis = jedis(connection);
+            List<Integer> large = new ArrayList<>();
+            List<byte[][]> tagArguments = new ArrayList<>();
+            List<Response<Object>> tagged = new ArrayList<>();
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < entries.size(); i++)
+            {
+                WarmUpEntry entry = entries.get(i);
+                storedKeys[i] = rememberedKey(entry.key);
+                hotKeys.record(storedKeys[i], HotKeySketch.WRITE);
+
+                byte[] compressed = compress(serialize(values.get(i)));
+                if (compressed.length > chunkSize)
+                {
+                    large.add(i);
+                    continue;
+                }
+
+                pipeline.set(storedKeys[i], compressed, SetParams.setParams().ex((long) entry.expiration));
+                pipeline.unlink(ChunkManifest.chunksKey(storedKeys[i]));
+                tagRemembered(pipeline, storedKeys[i], entry, tagArguments, tagged);
+            }
+            pipeline.sync();
+            tagRememberedIfMissing(jedis, tagArguments, tagged);
+
+            for (int i : large)
+            {
+                tagArguments.clear();
+                tagged.clear();
+                pipeline = writeObject(jedis, storedKeys[i], values.get(i), entries.get(i).expiration);
+                tagRemembered(pipeline, storedKeys[i], entries.get(i), tagArguments, tagged);
+                pipeline.sync();
+                tagRememberedIfMissing(jedis, tagArguments, tagged);
+            }
+
+            invalidated(connection, storedKeys);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Failed to serialize object", e);
+        }
+    }
+
+    /**
+     * Deletes multiple keys from Redis.
+     *
+     * @param cacheKeys array of keys to delete
+     */
+    public void clearKeys(String[] cacheKeys)
+    {
+        byte[][] prefixedKeys = new byte[cacheKeys.length][];
+        byte[][] deletedKeys = new byte[cacheKeys.length * 2][];
+        for (int i = 0; i < cacheKeys.length; i++)
+        {
+            prefixedKeys[i] = keyCodec.encode(cacheKeys[i]);
+            hotKeys.record(prefixedKeys[i], HotKeySketch.WRITE);
+            deletedKeys[i * 2] = prefixedKeys[i];
+            deletedKeys[i * 2 + 1] = ChunkManifest.chunksKey(prefixedKeys[i]);
+        }
+
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = clearKeysMetrics.record(OperationMetrics.POOL_WAIT, started);
+            connection.delete(deletedKeys);
+            clearKeysMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            invalidated(connection, prefixedKeys);
+        }
+    }
+
+    /**
+     * Gets a specific field value from a hash.
+     *
+     * @param hashKey the hash key
+     * @param key the field key
      * @return the deserialized field value, or empty string if not found
      */
-    public Object getHashFieldValue(String hashKey, String key)
+    public Object getHashFieldValue(String hashKey, String key)
+    {
+        byte[] prefixedKey = keyCodec.encode(hashKey);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = getHashFieldMetrics.record(OperationMetrics.POOL_WAIT, started);
+            byte[] cached = connection.hget(prefixedKey, key.getBytes(StandardCharsets.UTF_8));
+            getHashFieldMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            if (cached != null && HashFieldExpiry.isExpired(cached, System.currentTimeMillis()))
+            {
+                fieldExpiry.drop(jedis(connection), prefixedKey, Collections.singletonList(key.getBytes(StandardCharsets.UTF_8)));
+                cached = null;
+            }
+            recordRead(getHashFieldMetrics, prefixedKey, cached != null);
+            if (cached == null)
+            {
+                return "";
+            }
+
+            long decoding = System.nanoTime();
+            byte[] uncompressed = decompress(HashFieldExpiry.unwrap(cached));
+            decoding = getHashFieldMetrics.record(OperationMetrics.DECOMPRESS, decoding);
+            Object value = deserialize(uncompressed);
+            getHashFieldMetrics.record(OperationMetrics.DESERIALIZE, decoding);
+            return value;
+        }
+        catch (IOException | ClassNotFoundException e)
+        {
+            throw new RuntimeException("Failed to deserialize hash field value", e);
+        }
+    }
+
+    /**
+     * Sets a long value stored as a Redis-native numeric string.
+     * The value stays compatible with INCRBY and is never serialized or compressed.
+     *
+     * @param key the key
+     * @param value the long value
+     * @return this instance for method chaining
+     */
+    public RedisService setLong(String key, long value)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = setLongMetrics.record(OperationMetrics.POOL_WAIT, started);
+            connection.set(prefixedKey, encodeLong(value), 0);
+            setLongMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            setKeyBuffer(prefixedKey);
+            invalidated(connection, prefixedKey);
+        }
+        return this;
+    }
+
+    /**
+     * Gets a long value stored as a Redis-native numeric string.
+     * The reply bytes are parsed in place, without an intermediate String or boxed value.
+     *
+     * @param key the key
+     * @return OptionalLong containing the value if found
+     * @throws NumberFormatException if the stored value is not a numeric string
+     */
+    public OptionalLong getLong(String key)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = getLongMetrics.record(OperationMetrics.POOL_WAIT, started);
+            byte[] value = connection.get(prefixedKey);
+            getLongMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            recordRead(getLongMetrics, prefixedKey, value != null);
+            if (value == null)
+            {
+                return OptionalLong.empty();
+            }
+            return OptionalLong.of(decodeLong(value));
+        }
+    }
+
+    /**
+     * Atomically increments a long value stored as a Redis-native numeric string.
+     * Missing keys are treated as zero.
+     *
+     * @param key the key
+     * @param delta the amount to add, may be negative
+     * @return the value after the increment
+     */
+    public long increment(String key, long delta)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = incrementMetrics.record(OperationMetrics.POOL_WAIT, started);
+            long value = connection.incrBy(prefixedKey, delta);
+            incrementMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            invalidated(connection, prefixedKey);
+            return value;
+        }
+    }
+
+    /**
+     * Sets a double value stored as an 8-byte big-endian IEEE 754 encoding.
+     *
+     * @param key the key
+     * @param value the double value
+     * @return this instance for method chaining
+     */
+    public RedisService setDouble(String key, double value)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = setDoubleMetrics.record(OperationMetrics.POOL_WAIT, started);
+            connection.set(prefixedKey, encodeDouble(value), 0);
+            setDoubleMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            setKeyBuffer(prefixedKey);
+            invalidated(connection, prefixedKey);
+        }
+        return this;
+    }
+
+    /**
+     * Gets a double value stored with {@link #setDouble(String, double)}.
+     *
+     * @param key the key
+     * @return OptionalDouble containing the value if found
+     * @throws IllegalStateException if the stored value is not an 8-byte encoding
+     */
+    public OptionalDouble getDouble(String key)
+    {
+        byte[] prefixedKey = keyCodec.encode(key);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = getDoubleMetrics.record(OperationMetrics.POOL_WAIT, started);
+            byte[] value = connection.get(prefixedKey);
+            getDoubleMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            recordRead(getDoubleMetrics, prefixedKey, value != null);
+            if (value == null)
+            {
+                return OptionalDouble.empty();
+            }
+            return OptionalDouble.of(decodeDouble(value));
+        }
+    }
+
+    /**
+     * Sets a hash of long values stored as Redis-native numeric strings.
+     * All fields are written with a single HSET command.
+     *
+     * @param hashKey the hash key
+     * @param values the map of fields to long values
+     * @return this instance for method chaining
+     */
+    public RedisService setHashLongs(String hashKey, Map<String, Long> values)
+    {
+        byte[] prefixedKey = keyCodec.encode(hashKey);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        if (values.isEmpty())
+        {
+            return this;
+        }
+
+        Map<byte[], byte[]> encoded = new HashMap<>(values.size() * 2);
+        for (Map.Entry<String, Long> entry : values.entrySet())
+        {
+            encoded.put(entry.getKey().getBytes(StandardCharsets.UTF_8), encodeLong(entry.getValue()));
+        }
+
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = setHashLongsMetrics.record(OperationMetrics.POOL_WAIT, started);
+            connection.hset(prefixedKey, encoded);
+            setHashLongsMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            setKeyBuffer(prefixedKey);
+            invalidated(connection, prefixedKey);
+        }
+        return this;
+    }
+
+    /**
+     * Gets all fields of a hash written with {@link #setHashLongs(String, Map)}.
+     *
+     * @param hashKey the hash key
+     * @return Map containing all hash fields and their long values
+     * @throws NumberFormatException if a stored value is not a numeric string
+     */
+    public Map<String, Long> getHashLongs(String hashKey)
+    {
+        byte[] prefixedKey = keyCodec.encode(hashKey);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = getHashLongsMetrics.record(OperationMetrics.POOL_WAIT, started);
+            Map<byte[], byte[]> encoded = connection.hgetAll(prefixedKey);
+            getHashLongsMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            recordRead(getHashLongsMetrics, prefixedKey, !encoded.isEmpty());
+            Map<String, Long> values = new HashMap<>(encoded.size() * 2);
+
+            for (Map.Entry<byte[], byte[]> entry : encoded.entrySet())
+            {
+                values.put(new String(entry.getKey(), StandardCharsets.UTF_8), decodeLong(entry.getValue()));
+            }
+
+            return values;
+        }
+    }
+
+    /**
+     * Gets a single long field from a hash.
+     *
+     * @param hashKey the hash key
+     * @param key the field key
+     * @return OptionalLong containing the field value if found
+     * @throws NumberFormatException if the stored value is not a numeric string
+     */
+    public OptionalLong getHashLong(String hashKey, String key)
+    {
+        byte[] prefixedKey = keyCodec.encode(hashKey);
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = getHashLongMetrics.record(OperationMetrics.POOL_WAIT, started);
+            byte[] value = connection.hget(prefixedKey, key.getBytes(StandardCharsets.UTF_8));
+            getHashLongMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            recordRead(getHashLongMetrics, prefixedKey, value != null);
+            if (value == null)
+            {
+                return OptionalLong.empty();
+            }
+            return OptionalLong.of(decodeLong(value));
+        }
+    }
+
+    /**
+     * Adds items to a HyperLogLog distinct counter, creating it if needed.
+     * A counter takes at most 12 KB whatever the number of distinct items, with a standard error of 0.81%.
+     * Requires a {@link RedisBackend}.
+     *
+     * @param key the counter key
+     * @param items the items
+     * @return true if the estimated count changed
+     */
+    public boolean addDistinct(String key, String... items)
+    {
+        return addDistinct(key, Arrays.asList(items));
+    }
+
+    /**
+     * Adds items to a HyperLogLog distinct counter, in pipelined PFADD batches.
+     *
+     * @param key the counter key
+     * @param items the items
+     * @return true if the estimated count changed
+     * @see #addDistinct(String, String...)
+     */
+    public boolean addDistinct(String key, Collection<String> items)
+    {
+        return !addDistinct(Collections.singletonMap(key, items)).isEmpty();
+    }
+
+    /**
+     * Adds items to several HyperLogLog distinct counters in one pipelined round trip,
+     * such as the viewers of every product seen in a batch of events.
+     *
+     * @param itemsByKey items to add, by counter key
+     * @return the keys whose estimated count changed
+     */
+    public Set<String> addDistinct(Map<String, ? extends Collection<String>> itemsByKey)
+    {
+        redis("addDistinct");
+
+        Map<String, byte[]> prefixedKeys = new LinkedHashMap<>();
+        for (String key : itemsByKey.keySet())
+        {
+            byte[] prefixedKey = keyCodec.encode(key);
+            hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+            prefixedKeys.put(key, prefixedKey);
+        }
+
+        Map<String, List<Response<Long>>> responses = new LinkedHashMap<>();
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = addDistinctMetrics.record(OperationMetrics.POOL_WAIT, started);
+            Pipeline pipeline = jedis(connection).pipelined();
+            for (Map.Entry<String, ? extends Collection<String>> entry : itemsByKey.entrySet())
+            {
+                byte[] prefixedKey = prefixedKeys.get(entry.getKey());
+                List<Response<Long>> keyResponses = new ArrayList<>();
+                List<byte[]> batch = new ArrayList<>(Math.min(entry.getValue().size(), DISTINCT_BATCH_SIZE));
+                for (String item : entry.getValue())
+                {
+                    batch.add(item.getBytes(StandardCharsets.UTF_8));
+                    if (batch.size() == DISTINCT_BATCH_SIZE)
+                    {
+                        keyResponses.add(pipeline.pfadd(prefixedKey, batch.toArray(new byte[0][])));
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty())
+                {
+                    keyResponses.add(pipeline.pfadd(prefixedKey, batch.toArray(new byte[0][])));
+                }
+                responses.put(entry.getKey(), keyResponses);
+            }
+            pipeline.sync();
+            addDistinctMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+
+            Set<String> changed = new LinkedHashSet<>();
+            for (Map.Entry<String, List<Response<Long>>> entry : responses.entrySet())
+            {
+                for (Response<Long> response : entry.getValue())
+                {
+                    if (response.get() == 1)
+                    {
+                        changed.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+
+            if (!changed.isEmpty())
+            {
+                byte[][] changedKeys = new byte[changed.size()][];
+                int i = 0;
+                for (String key : changed)
+                {
+                    changedKeys[i++] = prefixedKeys.get(key);
+                }
+                invalidated(connection, changedKeys);
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Estimates the number of distinct items added to any of the given counters.
+     * A union does not tell which of its counters exist, so hits and misses are only recorded for a single counter.
+     * Requires a {@link RedisBackend}.
+     *
+     * @param keys the counter keys
+     * @return estimated size of the union, 0 if no counter exists or no key is given
+     */
+    public long countDistinct(String... keys)
     {
-        hashKey = envPrefix(hashKey);
-        try (Jedis jedis = jedisPool.getResource())
+        redis("countDistinct");
+        if (keys.length == 0)
         {
-            byte[] cached = jedis.hget(hashKey.getBytes(), key.getBytes());
-            if (cached == null)
+            return 0;
+        }
+
+        byte[][] prefixedKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++)
+        {
+            prefixedKeys[i] = keyCodec.encode(keys[i]);
+        }
+
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = countDistinctMetrics.record(OperationMetrics.POOL_WAIT, started);
+            long count = jedis(connection).pfcount(prefixedKeys);
+            countDistinctMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            if (prefixedKeys.length == 1)
             {
-                return "";
+                recordRead(countDistinctMetrics, prefixedKeys[0], count > 0);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Estimates the number of distinct items of each counter separately, in one pipelined round trip.
+     *
+     * @param keys the counter keys
+     * @return estimated count by key, 0 for counters that do not exist
+     */
+    public Map<String, Long> countDistinctEach(Collection<String> keys)
+    {
+        redis("countDistinctEach");
+
+        Map<String, byte[]> prefixedKeys = new LinkedHashMap<>();
+        for (String key : keys)
+        {
+            prefixedKeys.put(key, keyCodec.encode(key));
+        }
+
+        Map<String, Response<Long>> responses = new LinkedHashMap<>();
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = countDistinctMetrics.record(OperationMetrics.POOL_WAIT, started);
+            Pipeline pipeline = jedis(connection).pipelined();
+            for (Map.Entry<String, byte[]> entry : prefixedKeys.entrySet())
+            {
+                responses.put(entry.getKey(), pipeline.pfcount(entry.getValue()));
             }
+            pipeline.sync();
+            countDistinctMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+        }
 
-            byte[] uncompressed = decompress(cached);
-            return deserialize(uncompressed);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, Response<Long>> entry : responses.entrySet())
+        {
+            long count = entry.getValue().get();
+            recordRead(countDistinctMetrics, prefixedKeys.get(entry.getKey()), count > 0);
+            counts.put(entry.getKey(), count);
         }
-        catch (IOException | ClassNotFoundException e)
+        return counts;
+    }
+
+    /**
+     * Merges HyperLogLog distinct counters into a destination counter,
+     * which then estimates the union of the destination and the sources.
+     * Requires a {@link RedisBackend}.
+     *
+     * @param destinationKey the destination counter key
+     * @param sourceKeys the source counter keys
+     * @return this instance for method chaining
+     */
+    public RedisService mergeDistinct(String destinationKey, String... sourceKeys)
+    {
+        redis("mergeDistinct");
+
+        byte[] prefixedKey = keyCodec.encode(destinationKey);
+        hotKeys.record(prefixedKey, HotKeySketch.WRITE);
+        byte[][] prefixedSources = new byte[sourceKeys.length][];
+        for (int i = 0; i < sourceKeys.length; i++)
         {
-            throw new RuntimeException("Failed to deserialize hash field value", e);
+            prefixedSources[i] = keyCodec.encode(sourceKeys[i]);
+        }
+
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = mergeDistinctMetrics.record(OperationMetrics.POOL_WAIT, started);
+            jedis(connection).pfmerge(prefixedKey, prefixedSources);
+            mergeDistinctMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            setKeyBuffer(prefixedKey);
+            invalidated(connection, prefixedKey);
+        }
+        return this;
+    }
+
+    private Pipeline writeObject(Jedis jedis, byte[] key, Object value, int expiration) throws IOException
+    {
+        ChunkedValueOutputStream stream = new ChunkedValueOutputStream(jedis, key, chunkSize);
+        try (ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(stream)))
+        {
+            oos.writeObject(value);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            stream.abort();
+            throw e;
+        }
+
+        return stream.commit(expiration);
+    }
+
+    private Object readObject(Jedis jedis, byte[] key, byte[] stored) throws IOException, ClassNotFoundException
+    {
+        if (!ChunkManifest.isManifest(stored))
+        {
+            return deserialize(isCompressed(stored) ? decompress(stored) : stored);
+        }
+
+        InputStream chunks = new ChunkedValueInputStream(jedis, key, ChunkManifest.decode(stored));
+        try (ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(chunks, CHUNK_READ_BUFFER_SIZE)))
+        {
+            return ois.readObject();
+        }
+    }
+
+    /**
+     * Decodes a value read on a connection that has already been handed back, borrowing one for the chunks if it is chunked.
+     */
+    private Object readDetached(byte[] key, byte[] stored) throws IOException, ClassNotFoundException
+    {
+        if (!ChunkManifest.isManifest(stored))
+        {
+            return deserialize(isCompressed(stored) ? decompress(stored) : stored);
+        }
+
+        try (Jedis jedis = redis.resource())
+        {
+            return readObject(jedis, key, stored);
+        }
+    }
+
+    /**
+     * Reads a value through the disk tier when it is enabled.
+     * On a disk miss, the value and its TTL are fetched in one round trip and kept on disk if large enough.
+     */
+    private Object readCached(OperationMetrics operation, byte[] key) throws IOException, ClassNotFoundException
+    {
+        TrackingCache tracking = trackingCache;
+        if (tracking != null)
+        {
+            Object value = tracking.get(key, jedis -> {
+                long sent = System.nanoTime();
+                byte[] stored = jedis.get(key);
+                operation.record(OperationMetrics.ROUND_TRIP, sent);
+                return stored;
+            }, stored -> {
+                if (stored == null || stored.length == 0)
+                {
+                    return null;
+                }
+                long received = System.nanoTime();
+                Object decoded = readDetached(key, stored);
+                operation.record(OperationMetrics.DESERIALIZE, received);
+                return decoded;
+            });
+            recordRead(operation, key, value != null);
+            return value;
+        }
+
+        DiskCache cache = diskCache;
+        long started = System.nanoTime();
+        try (CacheConnection connection = backend.connection())
+        {
+            long sent = operation.record(OperationMetrics.POOL_WAIT, started);
+            if (cache == null)
+            {
+                byte[] stored = connection.get(key);
+                long received = operation.record(OperationMetrics.ROUND_TRIP, sent);
+                recordRead(operation, key, stored != null);
+                if (stored == null || stored.length == 0)
+                {
+                    return null;
+                }
+
+                if (ChunkManifest.isManifest(stored))
+                {
+                    // Chunk reads, decompression and deserialization are streamed together.
+                    Object value = readObject(jedis(connection), key, stored);
+                    operation.record(OperationMetrics.DESERIALIZE, received);
+                    return value;
+                }
+
+                byte[] serialized = isCompressed(stored) ? decompress(stored) : stored;
+                received = operation.record(OperationMetrics.DECOMPRESS, received);
+                Object value = deserialize(serialized);
+                operation.record(OperationMetrics.DESERIALIZE, received);
+                return value;
+            }
+
+            // The disk tier is only enabled on Redis.
+            Jedis jedis = jedis(connection);
+            DiskCache.Entry entry = cache.get(key);
+            if (entry != null && (entry.verified || verify(jedis, cache, key, entry)))
+            {
+                recordRead(operation, key, true);
+                long decoding = System.nanoTime();
+                Object value = deserialize(entry.value);
+                operation.record(OperationMetrics.DESERIALIZE, decoding);
+                return value;
+            }
+
+            long stamp = cache.stamp();
+            sent = System.nanoTime();
+            Pipeline pipeline = jedis.pipelined();
+            Response<byte[]> value = pipeline.get(key);
+            Response<Long> ttl = pipeline.pttl(key);
+            pipeline.sync();
+            long received = operation.record(OperationMetrics.ROUND_TRIP, sent);
+
+            byte[] stored = value.get();
+            recordRead(operation, key, stored != null);
+            if (stored == null || stored.length == 0)
+            {
+                return null;
+            }
+
+            byte[] serialized;
+            if (ChunkManifest.isManifest(stored))
+            {
+                InputStream chunks = new ChunkedValueInputStream(jedis, key, ChunkManifest.decode(stored));
+                serialized = decompress(new GZIPInputStream(chunks, CHUNK_READ_BUFFER_SIZE));
+            }
+            else
+            {
+                serialized = isCompressed(stored) ? decompress(stored) : stored;
+            }
+            received = operation.record(OperationMetrics.DECOMPRESS, received);
+
+            // Keys read once are not worth the disk space.
+            if (hotKeys.estimate(key) >= DISK_ADMISSION_MIN_ACCESSES)
+            {
+                cache.put(key, serialized, DiskCache.version(stored), ttl.get(), stamp);
+            }
+
+            Object deserialized = deserialize(serialized);
+            operation.record(OperationMetrics.DESERIALIZE, received);
+            return deserialized;
+        }
+    }
+
+    /**
+     * Checks a recovered disk entry against the value in Redis, without transferring the value.
+     */
+    private static boolean verify(Jedis jedis, DiskCache cache, byte[] key, DiskCache.Entry entry)
+    {
+        List<?> reply = (List<?>) DISK_VERSION_SCRIPT.eval(jedis, 1, key);
+        if (reply.isEmpty())
+        {
+            return cache.verify(key, entry, 0, -2);
+        }
+
+        long version = DiskCache.version(new String((byte[]) reply.get(0), StandardCharsets.US_ASCII));
+        return cache.verify(key, entry, version, (Long) reply.get(1));
+    }
+
+    /**
+     * Writes a serialized and compressed value, in chunks on Redis and whole on other backends.
+     */
+    private void writeValue(CacheConnection connection, byte[] key, Object value, int expiration) throws IOException
+    {
+        if (redis == null)
+        {
+            connection.set(key, compress(serialize(value)), expiration);
+            return;
+        }
+        writeObject(jedis(connection), key, value, expiration).sync();
+    }
+
+    /**
+     * Gets the Redis backend for a feature only Redis provides.
+     */
+    private RedisBackend redis(String operation)
+    {
+        if (redis == null)
+        {
+            throw new RuntimeException("Failed to run " + operation, RedisServiceException.unsupportedOperation(operation));
+        }
+        return redis;
+    }
+
+    private static Jedis jedis(CacheConnection connection)
+    {
+        return ((RedisBackend.Connection) connection).jedis;
+    }
+
+    private static CacheBackend defaultBackend() throws RedisServiceException
+    {
+        if ("local".equalsIgnoreCase(System.getenv("CACHE_BACKEND")))
+        {
+            return new LocalBackend();
+        }
+        return new RedisBackend(HOST, PORT);
+    }
+
+    private void recordRead(OperationMetrics operation, byte[] key, boolean hit)
+    {
+        hotKeys.record(key, hit ? HotKeySketch.HIT : HotKeySketch.MISS);
+        if (hit)
+        {
+            operation.hit();
+        }
+        else
+        {
+            operation.miss();
+        }
+    }
+
+    private void tagRemembered(Pipeline pipeline, byte[] storedKey, WarmUpEntry entry, List<byte[][]> arguments, List<Response<Object>> tagged)
+    {
+        byte[] ttl = encodeLong(entry.expiration);
+        for (String tag : entry.tags)
+        {
+            byte[][] tagArguments = {tagKey(tag), storedKey, ttl};
+            arguments.add(tagArguments);
+            tagged.add(TAG_SCRIPT.eval(pipeline, 1, tagArguments));
         }
     }
 
-    private void setKeyBuffer(String key)
+    private void tagRememberedIfMissing(Jedis jedis, List<byte[][]> arguments, List<Response<Object>> tagged)
+    {
+        for (int i = 0; i < tagged.size(); i++)
+        {
+            TAG_SCRIPT.evalIfMissing(tagged.get(i), jedis, 1, arguments.get(i));
+        }
+    }
+
+    private byte[] rememberedKey(String key)
+    {
+        // remember prefixes its key before handing it to the methods that prefix again.
+        return keyCodec.encode(envPrefix(key));
+    }
+
+    private byte[] tagKey(String tag)
+    {
+        return keyCodec.encode(TAG_PREFIX + tag);
+    }
+
+    private void invalidated(CacheConnection connection, byte[]... keys)
+    {
+        if (!invalidations.isActive())
+        {
+            return;
+        }
+
+        List<String> invalidatedKeys = decodeKeys(keys);
+        if (invalidations.isBroadcasting())
+        {
+            // The broadcast is only enabled on Redis.
+            jedis(connection).publish(invalidations.getChannel(), invalidations.message(invalidatedKeys));
+        }
+        invalidations.emit(invalidatedKeys);
+    }
+
+    private static List<String> decodeKeys(byte[]... keys)
+    {
+        List<String> decoded = new ArrayList<>(keys.length);
+        for (byte[] key : keys)
+        {
+            decoded.add(new String(key, StandardCharsets.UTF_8));
+        }
+        return decoded;
+    }
+
+    private void setKeyBuffer(byte[] key)
     {
         keyBuffer.push(key);
     }
 
-    private String getLastKeyBuffered()
+    private byte[] getLastKeyBuffered()
     {
         return keyBuffer.isEmpty() ? null : keyBuffer.peek();
     }
 
-    private void clearKeyBuffer(String key)
+    private void clearKeyBuffer(byte[] key)
     {
-        if (!keyBuffer.isEmpty() && keyBuffer.peek().equals(key))
+        if (!keyBuffer.isEmpty() && Arrays.equals(keyBuffer.peek(), key))
         {
             keyBuffer.pop();
         }
     }
 
-    private byte[] serialize(Object obj) throws IOException
+    /**
+     * Serializes an object with Java serialization.
+     *
+     * @param obj the object
+     * @return serialized bytes
+     * @throws IOException if the object cannot be serialized
+     */
+    byte[] serialize(Object obj) throws IOException
     {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try (ObjectOutputStream oos = new ObjectOutputStream(baos))
@@ -527,7 +2272,15 @@ public class RedisService
         return baos.toByteArray();
     }
 
-    private Object deserialize(byte[] data) throws IOException, ClassNotFoundException
+    /**
+     * Deserializes an object written by {@link #serialize(Object)}.
+     *
+     * @param data serialized bytes
+     * @return the object, or null for empty data
+     * @throws IOException if the data cannot be read
+     * @throws ClassNotFoundException if the object's class is not on the classpath
+     */
+    Object deserialize(byte[] data) throws IOException, ClassNotFoundException
     {
         if (data == null || data.length == 0)
         {
@@ -540,7 +2293,14 @@ public class RedisService
         }
     }
 
-    private byte[] compress(byte[] data) throws IOException
+    /**
+     * Compresses bytes with GZIP.
+     *
+     * @param data uncompressed bytes
+     * @return compressed bytes
+     * @throws IOException if compression fails
+     */
+    byte[] compress(byte[] data) throws IOException
     {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try (GZIPOutputStream gzos = new GZIPOutputStream(baos))
@@ -550,24 +2310,152 @@ public class RedisService
         return baos.toByteArray();
     }
 
-    private byte[] decompress(byte[] compressed) throws IOException
+    /**
+     * Decompresses bytes written by {@link #compress(byte[])}.
+     *
+     * @param compressed compressed bytes
+     * @return uncompressed bytes
+     * @throws IOException if the data is not valid GZIP
+     */
+    byte[] decompress(byte[] compressed) throws IOException
     {
         if (compressed == null || compressed.length == 0)
         {
             return compressed;
         }
         ByteArrayInputStream bais = new ByteArrayInputStream(compressed);
+        return decompress(new GZIPInputStream(bais));
+    }
+
+    private byte[] decompress(GZIPInputStream gzis) throws IOException
+    {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (GZIPInputStream gzis = new GZIPInputStream(bais))
+        try (GZIPInputStream input = gzis)
         {
             byte[] buffer = new byte[1024];
             int len;
-            while ((len = gzis.read(buffer)) != -1)
+            while ((len = input.read(buffer)) != -1)
             {
                 baos.write(buffer, 0, len);
             }
         }
         return baos.toByteArray();
     }
+
+    private Map<byte[], byte[]> encodeHash(Map<String, Object> dataArray)
+    {
+        Map<byte[], byte[]> encoded = new HashMap<>(dataArray.size() * 2);
+        for (Map.Entry<String, Object> entry : dataArray.entrySet())
+        {
+            try
+            {
+                byte[] serialized = serialize(entry.getValue());
+                encoded.put(entry.getKey().getBytes(StandardCharsets.UTF_8), compress(serialized));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Failed to serialize hash value", e);
+            }
+        }
+        return encoded;
+    }
+
+    private static boolean isCompressed(byte[] stored)
+    {
+        return stored.length >= 2 && stored[0] == (byte) 0x1f && stored[1] == (byte) 0x8b;
+    }
+
+    private static byte[] encodeLong(long value)
+    {
+        if (value == Long.MIN_VALUE)
+        {
+            return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        boolean negative = value < 0;
+        long remaining = negative ? -value : value;
+
+        int length = negative ? 2 : 1;
+        for (long probe = remaining; probe >= 10; probe /= 10)
+        {
+            length++;
+        }
+
+        byte[] digits = new byte[length];
+        for (int i = length - 1; i >= (negative ? 1 : 0); i--)
+        {
+            digits[i] = (byte) ('0' + (remaining % 10));
+            remaining /= 10;
+        }
+        if (negative)
+        {
+            digits[0] = '-';
+        }
+        return digits;
+    }
+
+    private static long decodeLong(byte[] digits)
+    {
+        if (digits.length == 0)
+        {
+            throw new NumberFormatException("Empty numeric value");
+        }
+
+        boolean negative = digits[0] == '-';
+        int start = negative || digits[0] == '+' ? 1 : 0;
+        if (start == digits.length)
+        {
+            throw new NumberFormatException("Invalid numeric value");
+        }
+
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+
+        // Accumulate negatively so that Long.MIN_VALUE is representable.
+        for (int i = start; i < digits.length; i++)
+        {
+            int digit = digits[i] - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit)
+            {
+                throw new NumberFormatException("Invalid numeric value");
+            }
+            result *= 10;
+            if (result < limit + digit)
+            {
+                throw new NumberFormatException("Numeric value out of range");
+            }
+            result -= digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    private static byte[] encodeDouble(double value)
+    {
+        long bits = Double.doubleToRawLongBits(value);
+        byte[] encoded = new byte[8];
+        for (int i = 7; i >= 0; i--)
+        {
+            encoded[i] = (byte) bits;
+            bits >>>= 8;
+        }
+        return encoded;
+    }
+
+    private static double decodeDouble(byte[] encoded)
+    {
+        if (encoded.length != 8)
+        {
+            throw new IllegalStateException("Stored value is not an 8-byte double encoding");
+        }
+
+        long bits = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            bits = (bits << 8) | (encoded[i] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
 }
 
@@ -0,0 +1,590 @@
+package app.cache;
+
+import app.interfaces.InvalidationListener;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.util.RedisInputStream;
+import redis.clients.jedis.util.RedisOutputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Near cache of decoded values kept fresh by Redis client-side caching (CLIENT TRACKING, Redis 6+).
+ * Redis remembers which keys were read through the tracking connections, or watches whole prefixes in
+ * broadcast mode, and pushes an invalidation the moment one is written. Jedis speaks RESP2, so the pushes are
+ * redirected to a connection subscribed to __redis__:invalidate, which is pinged when idle so a silent drop is noticed.
+ * If the subscriber or a tracking connection drops, notifications may have been lost and every entry is dropped.
+ * The least recently used entries are evicted beyond the size limit.
+ */
+final class TrackingCache implements InvalidationListener, Closeable
+{
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    /**
+     * Idle time after which the subscriber is pinged. A connection that stays silent for another interval is reopened.
+     */
+    private static final long HEARTBEAT_MILLIS = 5000;
+
+    /**
+     * Most tracking connections in default mode, so concurrent misses do not queue behind one connection.
+     */
+    private static final int TRACKING_CONNECTIONS = 4;
+
+    private static final byte[] INVALIDATE_CHANNEL = "__redis__:invalidate".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] MESSAGE = "message".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Reads the stored bytes of a key from Redis, in one round trip.
+     */
+    @FunctionalInterface
+    interface Fetcher
+    {
+
+        /**
+         * Reads the stored bytes.
+         *
+         * @param jedis connection to read on
+         * @return the stored bytes, or null if missing
+         */
+        byte[] fetch(Jedis jedis);
+    }
+
+    /**
+     * Turns stored bytes into the value kept in the near cache. Runs without holding a connection.
+     */
+    @FunctionalInterface
+    interface Decoder
+    {
+
+        /**
+         * Decodes the stored bytes.
+         *
+         * @param stored the stored bytes, or null if the key was missing
+         * @return the decoded value, or null if missing
+         * @throws IOException if the value cannot be read
+         * @throws ClassNotFoundException if the value cannot be deserialized
+         */
+        Object decode(byte[] stored) throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Marks a key being loaded. An invalidation removes it, which tells the loader not to store what it read.
+     */
+    private static final class Pending
+    {
+    }
+
+    private final RedisBackend redis;
+
+    private final byte[][] prefixes;
+
+    private final Map<ByteBuffer, Object> entries;
+
+    private final OperationMetrics metrics;
+
+    private final Thread subscriberThread;
+
+    /**
+     * Guards the tracking connections, the redirect id and the generation.
+     */
+    private final Object trackerLock = new Object();
+
+    /**
+     * Idle tracking connections of the current subscriber, in default mode.
+     */
+    private final ArrayDeque<Jedis> idleTrackers = new ArrayDeque<>();
+
+    private int openTrackers;
+
+    /**
+     * Counts subscriber changes. Tracking connections of an earlier generation are closed when handed back.
+     */
+    private long generation;
+
+    /**
+     * Connection holding the broadcast registration, in broadcast mode. Nothing is read on it.
+     */
+    private Jedis broadcaster;
+
+    private volatile boolean open = true;
+
+    private volatile long redirectId = -1;
+
+    private volatile Jedis subscriber;
+
+    /**
+     * Constructs a new TrackingCache and starts listening for invalidations.
+     * Values are only cached once the invalidation subscription is up.
+     *
+     * @param redis the Redis backend
+     * @param maxEntries most values kept
+     * @param prefixes prefixed key prefixes to watch in broadcast mode, or none to track the keys read
+     * @param metrics metrics to record near cache hits and misses in
+     */
+    TrackingCache(RedisBackend redis, int maxEntries, byte[][] prefixes, CacheMetrics metrics)
+    {
+        if (maxEntries <= 0)
+        {
+            throw new IllegalArgumentException("Max entries must be positive");
+        }
+
+        this.redis = redis;
+        this.prefixes = prefixes;
+        this.metrics = metrics.operation("near_cache");
+        this.entries = new LinkedHashMap<ByteBuffer, Object>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Object> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+
+        subscriberThread = new Thread(this::listen, "redis-tracking-subscriber");
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+    }
+
+    /**
+     * Gets a value from the near cache, or loads it and keeps it until Redis reports the key changed.
+     * In default mode the read runs on a tracking connection, so Redis knows this client holds the key.
+     * In broadcast mode it runs on a pooled connection, and keys outside the prefixes are never kept.
+     * Either way the connection is handed back before the value is decoded.
+     *
+     * @param key the prefixed key
+     * @param fetcher reads the stored bytes from Redis
+     * @param decoder turns the stored bytes into the value
+     * @return the value, or null if missing
+     * @throws IOException if the value cannot be read
+     * @throws ClassNotFoundException if the value cannot be deserialized
+     */
+    Object get(byte[] key, Fetcher fetcher, Decoder decoder) throws IOException, ClassNotFoundException
+    {
+        ByteBuffer wrapped = ByteBuffer.wrap(key);
+        Pending pending = new Pending();
+        synchronized (entries)
+        {
+            Object cached = entries.get(wrapped);
+            if (cached != null && !(cached instanceof Pending))
+            {
+                metrics.hit();
+                return cached;
+            }
+            metrics.miss();
+
+            if (redirectId < 0 || (prefixes.length > 0 && !watched(key)))
+            {
+                pending = null;
+            }
+            else
+            {
+                entries.put(wrapped, pending);
+            }
+        }
+
+        byte[] stored;
+        if (pending == null || prefixes.length > 0)
+        {
+            try (Jedis jedis = redis.resource())
+            {
+                stored = fetcher.fetch(jedis);
+            }
+        }
+        else
+        {
+            stored = fetchTracked(fetcher);
+        }
+
+        Object value = decoder.decode(stored);
+
+        if (pending != null)
+        {
+            synchronized (entries)
+            {
+                if (entries.get(wrapped) == pending)
+                {
+                    if (value == null)
+                    {
+                        entries.remove(wrapped);
+                    }
+                    else
+                    {
+                        entries.put(wrapped, value);
+                    }
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Gets the number of values kept.
+     *
+     * @return number of entries
+     */
+    int size()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Drops a key written by this node, without waiting for the notification from Redis.
+     *
+     * @param key the prefixed key
+     */
+    @Override
+    public void invalidated(String key)
+    {
+        evict(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void invalidatedAll()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Stops listening for invalidations and closes every connection.
+     */
+    @Override
+    public void close()
+    {
+        open = false;
+        Jedis current = subscriber;
+        if (current != null)
+        {
+            current.close();
+        }
+        subscriberThread.interrupt();
+        redirect(-1, null);
+    }
+
+    /**
+     * Reads on a tracking connection of the current subscriber, opening one if none is idle and the limit allows.
+     */
+    private byte[] fetchTracked(Fetcher fetcher) throws IOException
+    {
+        Jedis tracker;
+        long redirect;
+        long trackedGeneration;
+        synchronized (trackerLock)
+        {
+            while (redirectId >= 0 && idleTrackers.isEmpty() && openTrackers >= TRACKING_CONNECTIONS)
+            {
+                try
+                {
+                    trackerLock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a tracking connection");
+                }
+            }
+
+            redirect = redirectId;
+            trackedGeneration = generation;
+            tracker = idleTrackers.pollFirst();
+            if (tracker == null && redirect >= 0)
+            {
+                openTrackers++;
+            }
+        }
+
+        if (redirect < 0)
+        {
+            // The subscriber dropped and took the pending entry with it, so the value is read but not kept.
+            try (Jedis jedis = redis.resource())
+            {
+                return fetcher.fetch(jedis);
+            }
+        }
+
+        if (tracker == null)
+        {
+            try
+            {
+                tracker = track(redirect);
+            }
+            catch (JedisException e)
+            {
+                release(null, trackedGeneration);
+                throw e;
+            }
+        }
+
+        try
+        {
+            byte[] stored = fetcher.fetch(tracker);
+            release(tracker, trackedGeneration);
+            return stored;
+        }
+        catch (JedisConnectionException e)
+        {
+            // Redis forgets what a closed connection was tracking.
+            tracker.close();
+            release(null, trackedGeneration);
+            invalidatedAll();
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            release(tracker, trackedGeneration);
+            throw e;
+        }
+    }
+
+    /**
+     * Hands a tracking connection back, or frees its slot when it was closed.
+     * Connections of an earlier generation redirect to a subscriber that is gone, so they are closed.
+     */
+    private void release(Jedis tracker, long trackedGeneration)
+    {
+        synchronized (trackerLock)
+        {
+            if (trackedGeneration == generation)
+            {
+                if (tracker != null)
+                {
+                    idleTrackers.push(tracker);
+                    trackerLock.notify();
+                    return;
+                }
+                openTrackers--;
+                trackerLock.notify();
+                return;
+            }
+        }
+
+        if (tracker != null)
+        {
+            tracker.close();
+        }
+    }
+
+    /**
+     * Points tracking at a new subscriber, or at none with -1. Closes the connections of the previous one
+     * and drops every entry, since they were tracked for a subscriber that no longer receives the notifications.
+     */
+    private void redirect(long id, Jedis broadcast)
+    {
+        List<Jedis> stale;
+        synchronized (trackerLock)
+        {
+            generation++;
+            stale = new ArrayList<>(idleTrackers);
+            idleTrackers.clear();
+            openTrackers = 0;
+            if (broadcaster != null)
+            {
+                stale.add(broadcaster);
+            }
+            broadcaster = broadcast;
+            redirectId = id;
+            invalidatedAll();
+            trackerLock.notifyAll();
+        }
+
+        for (Jedis jedis : stale)
+        {
+            jedis.close();
+        }
+    }
+
+    private Jedis track(long redirect)
+    {
+        List<byte[]> arguments = new ArrayList<>();
+        arguments.add(bytes("TRACKING"));
+        arguments.add(bytes("ON"));
+        arguments.add(bytes("REDIRECT"));
+        arguments.add(bytes(Long.toString(redirect)));
+        if (prefixes.length > 0)
+        {
+            arguments.add(bytes("BCAST"));
+            for (byte[] prefix : prefixes)
+            {
+                arguments.add(bytes("PREFIX"));
+                arguments.add(prefix);
+            }
+        }
+
+        Jedis jedis = new Jedis(redis.host(), redis.port());
+        try
+        {
+            jedis.sendCommand(Protocol.Command.CLIENT, arguments.toArray(new byte[0][]));
+            return jedis;
+        }
+        catch (JedisException e)
+        {
+            jedis.close();
+            throw e;
+        }
+    }
+
+    private void listen()
+    {
+        while (open)
+        {
+            try (Jedis jedis = new Jedis(redis.host(), redis.port()))
+            {
+                subscriber = jedis;
+                long id = jedis.clientId();
+
+                // The socket is used directly from here on, since Jedis gives up on a connection after a read timeout.
+                Socket socket = jedis.getClient().getSocket();
+                RedisInputStream in = new RedisInputStream(socket.getInputStream());
+                RedisOutputStream out = new RedisOutputStream(socket.getOutputStream());
+                Protocol.sendCommand(out, Protocol.Command.SUBSCRIBE, INVALIDATE_CHANNEL);
+                out.flush();
+                Protocol.read(in);
+
+                // Tracking must redirect to this subscriber, and anything cached before was not.
+                redirect(id, prefixes.length > 0 ? track(id) : null);
+
+                // A read that times out sends a PING; a second one in a row means the pong never came.
+                socket.setSoTimeout((int) HEARTBEAT_MILLIS);
+                boolean pinged = false;
+                while (open)
+                {
+                    Object reply;
+                    try
+                    {
+                        reply = Protocol.read(in);
+                    }
+                    catch (JedisConnectionException e)
+                    {
+                        if (pinged || !(e.getCause() instanceof SocketTimeoutException))
+                        {
+                            throw e;
+                        }
+                        Protocol.sendCommand(out, Protocol.Command.PING);
+                        out.flush();
+                        pinged = true;
+                        continue;
+                    }
+                    pinged = false;
+                    receive(reply);
+                }
+            }
+            catch (JedisException | IOException e)
+            {
+                if (open)
+                {
+                    System.err.println("[TrackingCache] :: [listen] - " + e.getMessage());
+                }
+            }
+            finally
+            {
+                subscriber = null;
+                redirect(-1, null);
+            }
+
+            if (!open)
+            {
+                return;
+            }
+
+            try
+            {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handles a message on the invalidation channel: the keys that changed, or nil after FLUSHALL.
+     */
+    private void receive(Object reply)
+    {
+        if (!(reply instanceof List))
+        {
+            return;
+        }
+        List<?> message = (List<?>) reply;
+        if (message.size() < 3 || !(message.get(0) instanceof byte[]) || !Arrays.equals((byte[]) message.get(0), MESSAGE))
+        {
+            return;
+        }
+
+        Object keys = message.get(2);
+        if (keys instanceof List)
+        {
+            for (Object key : (List<?>) keys)
+            {
+                evict((byte[]) key);
+            }
+        }
+        else
+        {
+            invalidatedAll();
+        }
+    }
+
+    private void evict(byte[] key)
+    {
+        synchronized (entries)
+        {
+            entries.remove(ByteBuffer.wrap(key));
+        }
+    }
+
+    private boolean watched(byte[] key)
+    {
+        for (byte[] prefix : prefixes)
+        {
+            if (startsWith(key, prefix))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix)
+    {
+        if (key.length < prefix.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if (key[i] != prefix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,114 @@
+package app.cache;
+
+import java.util.Arrays;
+
+/**
+ * A key listed in a warm-up snapshot, with the expiration and tags it is remembered with.
+ */
+class WarmUpEntry
+{
+
+    private static final String[] NO_TAGS = new String[0];
+
+    final String key;
+
+    final int expiration;
+
+    final String[] tags;
+
+    /**
+     * Constructs a new WarmUpEntry.
+     *
+     * @param key the key as passed to remember
+     * @param expiration expiration time in seconds
+     * @param tags the tags as passed to remember
+     */
+    WarmUpEntry(String key, int expiration, String... tags)
+    {
+        this.key = key;
+        this.expiration = expiration;
+        this.tags = tags.length == 0 ? NO_TAGS : tags.clone();
+    }
+
+    /**
+     * Checks whether the entry was recorded with the given expiration and tags.
+     *
+     * @param expiration expiration time in seconds
+     * @param tags the tags
+     * @return true if both match
+     */
+    boolean matches(int expiration, String[] tags)
+    {
+        return this.expiration == expiration && Arrays.equals(this.tags, tags);
+    }
+
+    /**
+     * Checks whether the key and tags can be written to a snapshot line and read back unchanged.
+     *
+     * @return false if the key or a tag contains a tab or a line break
+     */
+    boolean isExportable()
+    {
+        if (!isField(key))
+        {
+            return false;
+        }
+        for (String tag : tags)
+        {
+            if (!isField(tag))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Formats the entry as a snapshot line.
+     *
+     * @return expiration, key and tags separated by tabs
+     */
+    String toLine()
+    {
+        StringBuilder line = new StringBuilder().append(expiration).append('\t').append(key);
+        for (String tag : tags)
+        {
+            line.append('\t').append(tag);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Parses a snapshot line.
+     *
+     * @param line the line
+     * @return entry, or null for blank, comment and malformed lines
+     */
+    static WarmUpEntry fromLine(String line)
+    {
+        if (line.isEmpty() || line.charAt(0) == '#')
+        {
+            return null;
+        }
+
+        String[] fields = line.split("\t", -1);
+        if (fields.length < 2 || fields[0].isEmpty() || fields[1].isEmpty())
+        {
+            return null;
+        }
+
+        try
+        {
+            return new WarmUpEntry(fields[1], Integer.parseInt(fields[0]), Arrays.copyOfRange(fields, 2, fields.length));
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    private static boolean isField(String value)
+    {
+        return value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0;
+    }
+}
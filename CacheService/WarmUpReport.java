@@ -0,0 +1,81 @@
+package app.cache;
+
+/**
+ * Outcome of a cache warm-up run.
+ */
+public class WarmUpReport
+{
+
+    private final long loaded;
+
+    private final long skipped;
+
+    private final long failed;
+
+    private final long elapsedMillis;
+
+    /**
+     * Constructs a new WarmUpReport.
+     *
+     * @param loaded number of keys computed and stored
+     * @param skipped number of keys already present in Redis
+     * @param failed number of keys whose loader failed or returned null
+     * @param elapsedMillis duration of the run in milliseconds
+     */
+    public WarmUpReport(long loaded, long skipped, long failed, long elapsedMillis)
+    {
+        this.loaded = loaded;
+        this.skipped = skipped;
+        this.failed = failed;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Gets the number of keys computed and stored.
+     *
+     * @return loaded keys
+     */
+    public long getLoaded()
+    {
+        return loaded;
+    }
+
+    /**
+     * Gets the number of keys already present in Redis.
+     *
+     * @return skipped keys
+     */
+    public long getSkipped()
+    {
+        return skipped;
+    }
+
+    /**
+     * Gets the number of keys whose loader failed or returned null.
+     *
+     * @return failed keys
+     */
+    public long getFailed()
+    {
+        return failed;
+    }
+
+    /**
+     * Gets the duration of the run.
+     *
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WarmUpReport{loaded=" + loaded
+            + ", skipped=" + skipped
+            + ", failed=" + failed
+            + ", elapsedMillis=" + elapsedMillis + "}";
+    }
+}
@@ -0,0 +1,67 @@
+package app.cache;
+
+/**
+ * A unit of work taken from a {@link WorkQueue}, to be acknowledged once processed.
+ */
+public class WorkItem
+{
+
+    private final String id;
+
+    private final byte[] payload;
+
+    private final long deliveries;
+
+    /**
+     * Constructs a new WorkItem.
+     *
+     * @param id the stream entry id
+     * @param payload the enqueued bytes
+     * @param deliveries number of times the item has been handed to a consumer
+     */
+    public WorkItem(String id, byte[] payload, long deliveries)
+    {
+        this.id = id;
+        this.payload = payload;
+        this.deliveries = deliveries;
+    }
+
+    /**
+     * Gets the stream entry id, which starts with the enqueue time in milliseconds.
+     *
+     * @return entry id
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Gets the enqueued bytes.
+     *
+     * @return payload
+     */
+    public byte[] getPayload()
+    {
+        return payload;
+    }
+
+    /**
+     * Gets the number of times the item has been handed to a consumer, 1 on the first delivery.
+     * Items that keep coming back may be failing every time and are worth setting aside.
+     *
+     * @return deliveries
+     */
+    public long getDeliveries()
+    {
+        return deliveries;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WorkItem{id=" + id
+            + ", bytes=" + payload.length
+            + ", deliveries=" + deliveries + "}";
+    }
+}
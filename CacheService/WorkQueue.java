@@ -0,0 +1,433 @@
+package app.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.StreamEntry;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.StreamGroupInfo;
+import redis.clients.jedis.StreamPendingEntry;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.params.XPendingParams;
+import redis.clients.jedis.params.XReadGroupParams;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable work queue on a Redis stream, read through a consumer group so every item goes to one worker.
+ * Items stay pending until acknowledged, and items of a worker that died can be claimed by another
+ * once they have been idle long enough. Payloads are stored Base64 encoded in a single stream field.
+ * The stream is trimmed to about {@link #DEFAULT_MAX_LENGTH} entries unless configured otherwise.
+ */
+public class WorkQueue
+{
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    public static final long DEFAULT_MAX_LENGTH = 1_000_000;
+
+    /**
+     * Most undelivered entries counted by {@link #stats()} on Redis versions that do not track the lag.
+     */
+    public static final int LAG_SCAN_LIMIT = 10_000;
+
+    private static final String PAYLOAD = "p";
+
+    private static final StreamEntryID FIRST_ID = new StreamEntryID();
+
+    private static final StreamEntryID LAST_ID = new StreamEntryID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    /**
+     * KEYS[1] stream; ARGV first id, most entries to count.
+     * Returns the stream length, the number of entries from the first id on and the id of the first of them,
+     * without sending the entries back.
+     */
+    private static final LuaScript COUNT_FROM = new LuaScript(
+        "local length = redis.call('XLEN', KEYS[1]) "
+        + "local entries = redis.call('XRANGE', KEYS[1], ARGV[1], '+', 'COUNT', ARGV[2]) "
+        + "if #entries == 0 then return {length, 0, false} end "
+        + "return {length, #entries, entries[1][1]}"
+    );
+
+    private final RedisBackend redis;
+
+    private final String stream;
+
+    private final String group;
+
+    private final OperationMetrics enqueueMetrics;
+
+    private final OperationMetrics pollMetrics;
+
+    private final OperationMetrics ackMetrics;
+
+    private final OperationMetrics reclaimMetrics;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private long maxLength = DEFAULT_MAX_LENGTH;
+
+    private WorkQueue(RedisBackend redis, String stream, String group, CacheMetrics metrics)
+    {
+        this.redis = redis;
+        this.stream = stream;
+        this.group = group;
+        this.enqueueMetrics = metrics.operation("queue_enqueue");
+        this.pollMetrics = metrics.operation("queue_poll");
+        this.ackMetrics = metrics.operation("queue_ack");
+        this.reclaimMetrics = metrics.operation("queue_reclaim");
+    }
+
+    /**
+     * Opens a queue, creating the stream and the consumer group if they do not exist.
+     * A new group starts at the beginning of the stream, so items enqueued before it was created are not lost.
+     *
+     * @param redis the Redis backend
+     * @param stream the prefixed stream key
+     * @param group the consumer group
+     * @param metrics metrics to record operations in
+     * @return the queue
+     */
+    static WorkQueue open(RedisBackend redis, String stream, String group, CacheMetrics metrics)
+    {
+        try (Jedis jedis = redis.resource())
+        {
+            jedis.xgroupCreate(stream, group, FIRST_ID, true);
+        }
+        catch (JedisDataException e)
+        {
+            if (e.getMessage() == null || !e.getMessage().startsWith("BUSYGROUP"))
+            {
+                throw e;
+            }
+        }
+        return new WorkQueue(redis, stream, group, metrics);
+    }
+
+    /**
+     * Sets how many items {@link #enqueueAll(List)} sends per pipeline flush.
+     *
+     * @param batchSize items per flush
+     * @return this instance for method chaining
+     */
+    public WorkQueue batchSize(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets the approximate number of entries the stream is trimmed to on every enqueue.
+     * Trimming drops the oldest entries whether or not they were processed, so the length
+     * should stay well above the expected backlog.
+     *
+     * @param maxLength entries to keep, or 0 to never trim
+     * @return this instance for method chaining
+     */
+    public WorkQueue maxLength(long maxLength)
+    {
+        if (maxLength < 0)
+        {
+            throw new IllegalArgumentException("Max length must not be negative");
+        }
+        this.maxLength = maxLength;
+        return this;
+    }
+
+    /**
+     * Adds an item to the queue.
+     *
+     * @param payload the item
+     * @return the stream entry id of the item
+     */
+    public String enqueue(byte[] payload)
+    {
+        return enqueueAll(Collections.singletonList(payload)).get(0);
+    }
+
+    /**
+     * Adds items to the queue, pipelining the XADDs in batches.
+     *
+     * @param payloads the items, in order
+     * @return the stream entry ids of the items, in the same order
+     */
+    public List<String> enqueueAll(List<byte[]> payloads)
+    {
+        List<String> ids = new ArrayList<>(payloads.size());
+        long started = System.nanoTime();
+        try (Jedis jedis = redis.resource())
+        {
+            long sent = enqueueMetrics.record(OperationMetrics.POOL_WAIT, started);
+            XAddParams params = XAddParams.xAddParams();
+            if (maxLength > 0)
+            {
+                params.maxLen(maxLength).approximateTrimming();
+            }
+
+            for (int from = 0; from < payloads.size(); from += batchSize)
+            {
+                int to = Math.min(from + batchSize, payloads.size());
+                Pipeline pipeline = jedis.pipelined();
+                List<Response<StreamEntryID>> responses = new ArrayList<>(to - from);
+                for (byte[] payload : payloads.subList(from, to))
+                {
+                    Map<String, String> fields = Collections.singletonMap(PAYLOAD, Base64.getEncoder().encodeToString(payload));
+                    responses.add(pipeline.xadd(stream, fields, params));
+                }
+                pipeline.sync();
+
+                for (Response<StreamEntryID> response : responses)
+                {
+                    ids.add(response.get().toString());
+                }
+            }
+            enqueueMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+        }
+        return ids;
+    }
+
+    /**
+     * Takes items no consumer of the group has received yet, waiting for them up to a timeout.
+     * The items stay pending until acknowledged with {@link #ack(Collection)}.
+     * A blocking poll holds a pooled connection for the whole wait.
+     *
+     * @param consumer the consumer name, stable across restarts of the same worker
+     * @param count most items to take
+     * @param timeout longest time to wait when the queue is empty, 0 to return at once
+     * @param unit unit of the timeout
+     * @return the items, empty if none arrived in time
+     */
+    public List<WorkItem> poll(String consumer, int count, long timeout, TimeUnit unit)
+    {
+        XReadGroupParams params = XReadGroupParams.xReadGroupParams().count(count);
+        long blockMillis = unit.toMillis(timeout);
+        if (blockMillis > 0)
+        {
+            params.block((int) Math.min(blockMillis, Integer.MAX_VALUE));
+        }
+
+        List<Map.Entry<String, List<StreamEntry>>> reply;
+        long started = System.nanoTime();
+        try (Jedis jedis = redis.resource())
+        {
+            long sent = pollMetrics.record(OperationMetrics.POOL_WAIT, started);
+            reply = jedis.xreadGroup(group, consumer, params, Collections.singletonMap(stream, StreamEntryID.UNRECEIVED_ENTRY));
+            pollMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+        }
+
+        List<WorkItem> items = new ArrayList<>();
+        if (reply != null)
+        {
+            for (Map.Entry<String, List<StreamEntry>> entries : reply)
+            {
+                for (StreamEntry entry : entries.getValue())
+                {
+                    items.add(item(entry, 1));
+                }
+            }
+        }
+
+        if (items.isEmpty())
+        {
+            pollMetrics.miss();
+        }
+        else
+        {
+            pollMetrics.hit();
+        }
+        return items;
+    }
+
+    /**
+     * Marks items as processed, so they are never delivered again.
+     *
+     * @param items the processed items
+     * @return number of items that were still pending
+     */
+    public long ack(Collection<WorkItem> items)
+    {
+        if (items.isEmpty())
+        {
+            return 0;
+        }
+
+        StreamEntryID[] ids = new StreamEntryID[items.size()];
+        int i = 0;
+        for (WorkItem item : items)
+        {
+            ids[i++] = new StreamEntryID(item.getId());
+        }
+
+        long started = System.nanoTime();
+        try (Jedis jedis = redis.resource())
+        {
+            long sent = ackMetrics.record(OperationMetrics.POOL_WAIT, started);
+            long acknowledged = jedis.xack(stream, group, ids);
+            ackMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+            return acknowledged;
+        }
+    }
+
+    /**
+     * Takes over items another consumer received but has not acknowledged for at least the given idle time,
+     * such as the items of a worker that died. Only the oldest pending items are looked at.
+     * Passing the consumer's own name also recovers what it had taken before a restart.
+     * Items trimmed from the stream while pending are acknowledged and dropped.
+     *
+     * @param consumer the consumer taking the items
+     * @param minIdle shortest time since the item was last delivered
+     * @param unit unit of the idle time
+     * @param count most items to look at
+     * @return the claimed items, with their delivery counts
+     */
+    public List<WorkItem> reclaim(String consumer, long minIdle, TimeUnit unit, int count)
+    {
+        long minIdleMillis = unit.toMillis(minIdle);
+        List<WorkItem> items = new ArrayList<>();
+        long started = System.nanoTime();
+        try (Jedis jedis = redis.resource())
+        {
+            long sent = reclaimMetrics.record(OperationMetrics.POOL_WAIT, started);
+            List<StreamPendingEntry> pending = jedis.xpending(stream, group,
+                XPendingParams.xPendingParams().start(FIRST_ID).end(LAST_ID).count(count));
+
+            Map<StreamEntryID, Long> deliveries = new HashMap<>();
+            for (StreamPendingEntry entry : pending)
+            {
+                if (entry.getIdleTime() >= minIdleMillis)
+                {
+                    deliveries.put(entry.getID(), entry.getDeliveredTimes());
+                }
+            }
+
+            if (!deliveries.isEmpty())
+            {
+                StreamEntryID[] ids = deliveries.keySet().toArray(new StreamEntryID[0]);
+                boolean missing = false;
+                for (StreamEntry entry : jedis.xclaim(stream, group, consumer, minIdleMillis, 0, 0, false, ids))
+                {
+                    if (entry == null || entry.getFields() == null)
+                    {
+                        missing = true;
+                        continue;
+                    }
+                    items.add(item(entry, deliveries.remove(entry.getID()) + 1));
+                }
+
+                if (missing)
+                {
+                    dropTrimmed(jedis, deliveries.keySet());
+                }
+            }
+            reclaimMetrics.record(OperationMetrics.ROUND_TRIP, sent);
+        }
+
+        if (items.isEmpty())
+        {
+            reclaimMetrics.miss();
+        }
+        else
+        {
+            reclaimMetrics.hit();
+        }
+        return items;
+    }
+
+    /**
+     * Gets the backlog of the consumer group: items waiting for delivery, how long the oldest has waited,
+     * and items delivered but not acknowledged.
+     *
+     * @return queue stats
+     */
+    public QueueStats stats()
+    {
+        try (Jedis jedis = redis.resource())
+        {
+            StreamGroupInfo info = null;
+            for (StreamGroupInfo candidate : jedis.xinfoGroup(stream))
+            {
+                if (candidate.getName().equals(group))
+                {
+                    info = candidate;
+                }
+            }
+            if (info == null)
+            {
+                throw new IllegalStateException("Consumer group " + group + " does not exist on " + stream);
+            }
+
+            StreamEntryID last = info.getLastDeliveredId();
+            StreamEntryID next = new StreamEntryID(last.getTime(), last.getSequence() + 1);
+            List<?> reply = (List<?>) COUNT_FROM.eval(jedis, 1,
+                stream.getBytes(StandardCharsets.UTF_8),
+                next.toString().getBytes(StandardCharsets.US_ASCII),
+                Integer.toString(LAG_SCAN_LIMIT).getBytes(StandardCharsets.US_ASCII));
+
+            long length = (Long) reply.get(0);
+            long undelivered = (Long) reply.get(1);
+            Object tracked = info.getGroupInfo().get("lag");
+            if (tracked instanceof Long)
+            {
+                undelivered = (Long) tracked;
+            }
+
+            long lagMillis = 0;
+            if (reply.get(2) instanceof byte[])
+            {
+                StreamEntryID oldest = new StreamEntryID(new String((byte[]) reply.get(2), StandardCharsets.US_ASCII));
+                lagMillis = Math.max(0, System.currentTimeMillis() - oldest.getTime());
+            }
+            return new QueueStats(length, info.getPending(), undelivered, lagMillis, info.getConsumers());
+        }
+    }
+
+    /**
+     * Acknowledges claimed ids whose entries are gone from the stream. Before Redis 7 they stay pending
+     * and come back empty on every claim; ids another consumer claimed first are still in the stream and left alone.
+     */
+    private void dropTrimmed(Jedis jedis, Collection<StreamEntryID> candidates)
+    {
+        Pipeline pipeline = jedis.pipelined();
+        Map<StreamEntryID, Response<List<StreamEntry>>> lookups = new HashMap<>();
+        for (StreamEntryID id : candidates)
+        {
+            lookups.put(id, pipeline.xrange(stream, id, id, 1));
+        }
+        pipeline.sync();
+
+        List<StreamEntryID> trimmed = new ArrayList<>();
+        for (Map.Entry<StreamEntryID, Response<List<StreamEntry>>> lookup : lookups.entrySet())
+        {
+            if (lookup.getValue().get().isEmpty())
+            {
+                trimmed.add(lookup.getKey());
+            }
+        }
+
+        if (!trimmed.isEmpty())
+        {
+            System.err.println("[WorkQueue] :: [reclaim] - Dropping " + trimmed.size() + " pending items trimmed from " + stream);
+            jedis.xack(stream, group, trimmed.toArray(new StreamEntryID[0]));
+        }
+    }
+
+    private static WorkItem item(StreamEntry entry, long deliveries)
+    {
+        String payload = entry.getFields().get(PAYLOAD);
+        byte[] bytes = payload == null ? new byte[0] : Base64.getDecoder().decode(payload);
+        return new WorkItem(entry.getID().toString(), bytes, deliveries);
+    }
+}
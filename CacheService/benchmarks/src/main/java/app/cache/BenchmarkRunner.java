@@ -0,0 +1,47 @@
+package app.cache;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Runs the benchmarks with the GC profiler and writes JSON results,
+ * accepting the usual JMH command line options on top.
+ */
+public class BenchmarkRunner
+{
+
+    private static final String DEFAULT_RESULT = "results/jmh-result.json";
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args JMH command line options
+     * @throws Exception if the options are invalid or a benchmark fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class);
+
+        if (!commandLine.getResult().hasValue())
+        {
+            Files.createDirectories(Paths.get(DEFAULT_RESULT).getParent());
+            options.result(DEFAULT_RESULT);
+        }
+        if (!commandLine.getResultFormat().hasValue())
+        {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,76 @@
+package app.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and GZIP compression of cached values across payload sizes,
+ * the CPU work on every object write and read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark
+{
+
+    @Param({"1024", "65536", "1048576"})
+    public int payloadBytes;
+
+    private RedisService redis;
+
+    private ArrayList<String> payload;
+
+    private byte[] serialized;
+
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        redis = new RedisService();
+        payload = Payloads.create(payloadBytes);
+        serialized = redis.serialize(payload);
+        compressed = redis.compress(serialized);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        redis.close();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException
+    {
+        return redis.serialize(payload);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException
+    {
+        return redis.deserialize(serialized);
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException
+    {
+        return redis.compress(serialized);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException
+    {
+        return redis.decompress(compressed);
+    }
+}
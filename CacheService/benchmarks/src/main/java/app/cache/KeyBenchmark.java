@@ -0,0 +1,73 @@
+package app.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key building with the environment prefix, with and without key compaction.
+ * {@code envPrefix} uses the prefix from the ENV and SITE_ENV variables like production does;
+ * {@code encode} always uses a fixed prefix so results compare across environments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeyBenchmark
+{
+
+    private static final int MAX_KEY_LENGTH = 64;
+
+    @Param({"short", "long"})
+    public String keyShape;
+
+    @Param({"false", "true"})
+    public boolean compaction;
+
+    private RedisService redis;
+
+    private KeyCodec codec;
+
+    private String key;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        redis = new RedisService();
+        codec = new KeyCodec("production-web-");
+        if (compaction)
+        {
+            redis.enableKeyCompaction(MAX_KEY_LENGTH);
+            codec.setMaxKeyLength(MAX_KEY_LENGTH);
+        }
+
+        key = keyShape.equals("short")
+            ? "product:48213"
+            : "catalog:listing:category=electronics&brand=acme&sort=price-asc&page=12&filters=in-stock,free-shipping";
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        redis.close();
+    }
+
+    @Benchmark
+    public String envPrefix()
+    {
+        return redis.envPrefix(key);
+    }
+
+    @Benchmark
+    public byte[] encode()
+    {
+        return codec.encode(key);
+    }
+}
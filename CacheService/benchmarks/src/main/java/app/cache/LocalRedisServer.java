@@ -0,0 +1,403 @@
+package app.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-process RESP2 stand-in for redis-server, implementing the string and key commands
+ * RedisService uses on its get, set and remember paths.
+ * Serves each connection on its own daemon thread, so benchmarks can measure the client side
+ * end to end without a Redis installation.
+ */
+final class LocalRedisServer implements Closeable
+{
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PONG = "+PONG\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] NIL = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerSocket serverSocket;
+
+    private final ConcurrentMap<ByteBuffer, Entry> entries = new ConcurrentHashMap<>();
+
+    private final List<Socket> clients = new ArrayList<>();
+
+    private LocalRedisServer(ServerSocket serverSocket)
+    {
+        this.serverSocket = serverSocket;
+    }
+
+    /**
+     * Starts a stand-in on the address RedisService connects to, unless a server already listens there.
+     *
+     * @param host host to bind
+     * @param port port to bind
+     * @return the started server, or null if the port is taken by a running redis-server
+     * @throws IOException if the address cannot be bound for another reason
+     */
+    static LocalRedisServer startUnlessRunning(String host, int port) throws IOException
+    {
+        ServerSocket socket;
+        try
+        {
+            socket = new ServerSocket(port, 50, InetAddress.getByName(host));
+        }
+        catch (BindException e)
+        {
+            return null;
+        }
+
+        LocalRedisServer server = new LocalRedisServer(socket);
+        Thread acceptor = new Thread(server::accept, "local-redis-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        serverSocket.close();
+        synchronized (clients)
+        {
+            for (Socket client : clients)
+            {
+                client.close();
+            }
+            clients.clear();
+        }
+    }
+
+    private void accept()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                Socket client = serverSocket.accept();
+                client.setTcpNoDelay(true);
+                synchronized (clients)
+                {
+                    clients.add(client);
+                }
+
+                Thread worker = new Thread(() -> serve(client), "local-redis-client");
+                worker.setDaemon(true);
+                worker.start();
+            }
+            catch (IOException e)
+            {
+                if (!serverSocket.isClosed())
+                {
+                    System.err.println("[LocalRedisServer] :: [accept] - " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket client)
+    {
+        try (Socket socket = client)
+        {
+            InputStream input = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+            OutputStream output = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            while (true)
+            {
+                byte[][] command = readCommand(input);
+                if (command == null)
+                {
+                    return;
+                }
+
+                boolean quit = execute(command, output);
+                if (quit || input.available() == 0)
+                {
+                    output.flush();
+                }
+                if (quit)
+                {
+                    return;
+                }
+            }
+        }
+        catch (SocketException | EOFException e)
+        {
+            // Client went away
+        }
+        catch (IOException e)
+        {
+            System.err.println("[LocalRedisServer] :: [serve] - " + e.getMessage());
+        }
+        finally
+        {
+            synchronized (clients)
+            {
+                clients.remove(client);
+            }
+        }
+    }
+
+    private boolean execute(byte[][] command, OutputStream output) throws IOException
+    {
+        String name = new String(command[0], StandardCharsets.US_ASCII).toUpperCase();
+        switch (name)
+        {
+            case "PING":
+                output.write(PONG);
+                return false;
+            case "QUIT":
+                output.write(OK);
+                return true;
+            case "SELECT":
+            case "AUTH":
+            case "CLIENT":
+                output.write(OK);
+                return false;
+            case "GET":
+                bulk(output, value(command[1]));
+                return false;
+            case "SET":
+                set(command);
+                output.write(OK);
+                return false;
+            case "DEL":
+            case "UNLINK":
+                integer(output, removeAll(command));
+                return false;
+            case "EXISTS":
+                integer(output, countExisting(command));
+                return false;
+            case "EXPIRE":
+                integer(output, expire(command[1], Long.parseLong(ascii(command[2])) * 1000));
+                return false;
+            case "PEXPIRE":
+                integer(output, expire(command[1], Long.parseLong(ascii(command[2]))));
+                return false;
+            case "PTTL":
+                integer(output, pttl(command[1]));
+                return false;
+            case "TTL":
+                long pttl = pttl(command[1]);
+                integer(output, pttl < 0 ? pttl : (pttl + 500) / 1000);
+                return false;
+            case "PUBLISH":
+                integer(output, 0);
+                return false;
+            default:
+                error(output, "ERR unknown command '" + name + "'");
+                return false;
+        }
+    }
+
+    private void set(byte[][] command)
+    {
+        long expireAt = 0;
+        for (int i = 3; i + 1 < command.length; i++)
+        {
+            String option = ascii(command[i]).toUpperCase();
+            if (option.equals("EX"))
+            {
+                expireAt = System.currentTimeMillis() + Long.parseLong(ascii(command[++i])) * 1000;
+            }
+            else if (option.equals("PX"))
+            {
+                expireAt = System.currentTimeMillis() + Long.parseLong(ascii(command[++i]));
+            }
+        }
+        entries.put(ByteBuffer.wrap(command[1]), new Entry(command[2], expireAt));
+    }
+
+    private byte[] value(byte[] key)
+    {
+        Entry entry = live(key);
+        return entry == null ? null : entry.value;
+    }
+
+    private long removeAll(byte[][] command)
+    {
+        long removed = 0;
+        for (int i = 1; i < command.length; i++)
+        {
+            if (live(command[i]) != null && entries.remove(ByteBuffer.wrap(command[i])) != null)
+            {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private long countExisting(byte[][] command)
+    {
+        long existing = 0;
+        for (int i = 1; i < command.length; i++)
+        {
+            if (live(command[i]) != null)
+            {
+                existing++;
+            }
+        }
+        return existing;
+    }
+
+    private long expire(byte[] key, long millis)
+    {
+        Entry entry = live(key);
+        if (entry == null)
+        {
+            return 0;
+        }
+        entries.put(ByteBuffer.wrap(key), new Entry(entry.value, System.currentTimeMillis() + millis));
+        return 1;
+    }
+
+    private long pttl(byte[] key)
+    {
+        Entry entry = live(key);
+        if (entry == null)
+        {
+            return -2;
+        }
+        return entry.expireAt == 0 ? -1 : Math.max(0, entry.expireAt - System.currentTimeMillis());
+    }
+
+    private Entry live(byte[] key)
+    {
+        ByteBuffer wrapped = ByteBuffer.wrap(key);
+        Entry entry = entries.get(wrapped);
+        if (entry != null && entry.expireAt != 0 && entry.expireAt <= System.currentTimeMillis())
+        {
+            entries.remove(wrapped, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Reads one command sent as a RESP array of bulk strings.
+     */
+    private static byte[][] readCommand(InputStream input) throws IOException
+    {
+        int marker = input.read();
+        if (marker == -1)
+        {
+            return null;
+        }
+        if (marker != '*')
+        {
+            throw new IOException("Inline commands are not supported");
+        }
+
+        byte[][] arguments = new byte[(int) readNumber(input)][];
+        for (int i = 0; i < arguments.length; i++)
+        {
+            if (input.read() != '$')
+            {
+                throw new IOException("Expected a bulk string");
+            }
+
+            byte[] argument = new byte[(int) readNumber(input)];
+            int read = 0;
+            while (read < argument.length)
+            {
+                int count = input.read(argument, read, argument.length - read);
+                if (count == -1)
+                {
+                    throw new EOFException();
+                }
+                read += count;
+            }
+            input.read();
+            input.read();
+            arguments[i] = argument;
+        }
+        return arguments;
+    }
+
+    private static long readNumber(InputStream input) throws IOException
+    {
+        long value = 0;
+        boolean negative = false;
+        int c;
+        while ((c = input.read()) != '\r')
+        {
+            if (c == -1)
+            {
+                throw new EOFException();
+            }
+            if (c == '-')
+            {
+                negative = true;
+            }
+            else
+            {
+                value = value * 10 + (c - '0');
+            }
+        }
+        input.read();
+        return negative ? -value : value;
+    }
+
+    private static void bulk(OutputStream output, byte[] value) throws IOException
+    {
+        if (value == null)
+        {
+            output.write(NIL);
+            return;
+        }
+        output.write(('$' + Integer.toString(value.length)).getBytes(StandardCharsets.US_ASCII));
+        output.write(CRLF);
+        output.write(value);
+        output.write(CRLF);
+    }
+
+    private static void integer(OutputStream output, long value) throws IOException
+    {
+        output.write((':' + Long.toString(value)).getBytes(StandardCharsets.US_ASCII));
+        output.write(CRLF);
+    }
+
+    private static void error(OutputStream output, String message) throws IOException
+    {
+        output.write(('-' + message).getBytes(StandardCharsets.UTF_8));
+        output.write(CRLF);
+    }
+
+    private static String ascii(byte[] bytes)
+    {
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static final class Entry
+    {
+
+        final byte[] value;
+
+        final long expireAt;
+
+        Entry(byte[] value, long expireAt)
+        {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package app.cache;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Deterministic cache payloads of a given serialized size, shaped like cached product listings.
+ */
+final class Payloads
+{
+
+    private static final String[] WORDS = {
+        "product", "order", "customer", "shipping", "discount", "campaign", "inventory", "warehouse",
+        "premium", "bundle", "seasonal", "express", "voucher", "segment", "newsletter", "checkout"
+    };
+
+    private Payloads()
+    {
+    }
+
+    /**
+     * Creates a list of records whose serialized form is about the given size.
+     *
+     * @param bytes approximate serialized size
+     * @return payload
+     */
+    static ArrayList<String> create(int bytes)
+    {
+        Random random = new Random(42);
+        ArrayList<String> records = new ArrayList<>();
+        int size = 0;
+        while (size < bytes)
+        {
+            StringBuilder record = new StringBuilder();
+            record.append(random.nextInt(1_000_000)).append('|');
+            for (int i = 0; i < 6; i++)
+            {
+                record.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            record.append(random.nextInt(100_000) / 100.0);
+            records.add(record.toString());
+            size += record.length() + 3;
+        }
+        return records;
+    }
+}
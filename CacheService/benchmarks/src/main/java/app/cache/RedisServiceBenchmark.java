@@ -0,0 +1,114 @@
+package app.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end get, set and remember through the storage backend.
+ * The redis backend runs against the redis-server at REDIS_HOST:REDIS_PORT when one is listening,
+ * otherwise against an in-process {@link LocalRedisServer} started on that address.
+ * The local backend skips the network entirely, isolating the client-side overhead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedisServiceBenchmark
+{
+
+    private static final int EXPIRATION = 3600;
+
+    private static final String GET_KEY = "benchmark:get";
+
+    private static final String SET_KEY = "benchmark:set";
+
+    private static final String REMEMBER_KEY = "benchmark:remember";
+
+    private static final String REMEMBER_MISS_KEY = "benchmark:remember-miss";
+
+    @Param({"1024", "65536"})
+    public int payloadBytes;
+
+    @Param({"redis", "local"})
+    public String backend;
+
+    private LocalRedisServer server;
+
+    private RedisService redis;
+
+    private ArrayList<String> payload;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        // Each trial builds and closes its own service rather than the singleton, which a closed trial would leave behind.
+        if (backend.equals("local"))
+        {
+            redis = new RedisService(new LocalBackend());
+        }
+        else
+        {
+            String host = System.getenv("REDIS_HOST");
+            String port = System.getenv("REDIS_PORT");
+            host = host == null || host.isEmpty() ? RedisService.HOST : host;
+            int redisPort = port == null ? RedisService.PORT : Integer.parseInt(port);
+            server = LocalRedisServer.startUnlessRunning(host, redisPort);
+            redis = new RedisService(host, redisPort);
+        }
+
+        payload = Payloads.create(payloadBytes);
+        redis.set(GET_KEY, payload);
+        redis.delete(redis.envPrefix(REMEMBER_KEY));
+        redis.remember(REMEMBER_KEY, EXPIRATION, () -> payload);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        redis.delete(GET_KEY).delete(SET_KEY).delete(redis.envPrefix(REMEMBER_KEY)).delete(redis.envPrefix(REMEMBER_MISS_KEY));
+        redis.close();
+        if (server != null)
+        {
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public Optional<ArrayList> get()
+    {
+        return redis.get(GET_KEY, ArrayList.class);
+    }
+
+    @Benchmark
+    public RedisService set()
+    {
+        return redis.set(SET_KEY, payload);
+    }
+
+    @Benchmark
+    public Object rememberHit()
+    {
+        return redis.remember(REMEMBER_KEY, EXPIRATION, () -> payload);
+    }
+
+    /**
+     * Deletes the key first, so each call pays for the miss, the write and the expiry.
+     * remember prefixes its key once more than delete does, so the key is prefixed here first.
+     */
+    @Benchmark
+    public Object rememberMiss()
+    {
+        redis.delete(redis.envPrefix(REMEMBER_MISS_KEY));
+        return redis.remember(REMEMBER_MISS_KEY, EXPIRATION, () -> payload);
+    }
+}
@@ -0,0 +1,129 @@
+package app.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.Jedis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashFieldExpiryTest
+{
+
+    private RedisService redis;
+
+    private String hash;
+
+    @AfterEach
+    void tearDown()
+    {
+        if (redis == null)
+        {
+            return;
+        }
+        try (Jedis jedis = TestRedis.connect())
+        {
+            jedis.del(redis.envPrefix(hash));
+        }
+        redis.close();
+    }
+
+    @Test
+    void envelopeCarriesItsExpiration()
+    {
+        byte[] body = "value".getBytes(StandardCharsets.UTF_8);
+        byte[] live = envelope(2_000_000_000_000L, body);
+        byte[] expired = envelope(1_000L, body);
+
+        assertFalse(HashFieldExpiry.isExpired(live, 1_999_999_999_999L));
+        assertTrue(HashFieldExpiry.isExpired(live, 2_000_000_000_000L));
+        assertTrue(HashFieldExpiry.isExpired(expired, System.currentTimeMillis()));
+        assertArrayEquals(body, HashFieldExpiry.unwrap(live));
+
+        assertFalse(HashFieldExpiry.isExpired(body, Long.MAX_VALUE));
+        assertArrayEquals(body, HashFieldExpiry.unwrap(body));
+    }
+
+    @Test
+    void fieldsExpireIndependently() throws Exception
+    {
+        startRedis();
+        redis.setHashFromArray(hash, Collections.singletonMap("kept", (Object) "a"));
+        redis.setHashField(hash, "expiring", "b", 1);
+
+        assertTrue(redis.isMemberOfHash(hash, "kept"));
+        assertTrue(redis.isMemberOfHash(hash, "expiring"));
+        assertFalse(redis.isMemberOfHash(hash, "missing"));
+        assertEquals("b", redis.getHashFieldValue(hash, "expiring"));
+
+        Thread.sleep(1500);
+        assertTrue(redis.isMemberOfHash(hash, "kept"));
+        assertFalse(redis.isMemberOfHash(hash, "expiring"));
+        assertEquals("", redis.getHashFieldValue(hash, "expiring"));
+        assertEquals(Collections.singletonMap("kept", (Object) "a"), redis.getHash(hash));
+    }
+
+    @Test
+    void expireHashFieldsRenewsLiveFieldsOnly() throws Exception
+    {
+        startRedis();
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("first", 1L);
+        fields.put("second", 2L);
+        redis.setHashFromArray(hash, fields, 1);
+
+        assertEquals(1, redis.expireHashFields(hash, 60, "first", "missing"));
+        Thread.sleep(1500);
+        assertTrue(redis.isMemberOfHash(hash, "first"));
+        assertFalse(redis.isMemberOfHash(hash, "second"));
+        assertEquals(0, redis.expireHashFields(hash, 60, "second"));
+        assertEquals(1L, redis.getHashFieldValue(hash, "first"));
+    }
+
+    @Test
+    void expiredEnvelopeIsDeletedByTheReadThatFindsIt() throws Exception
+    {
+        startRedis();
+        redis.setHashField(hash, "field", "value", 1);
+
+        byte[] key = redis.envPrefix(hash).getBytes(StandardCharsets.UTF_8);
+        byte[] field = "field".getBytes(StandardCharsets.UTF_8);
+        try (Jedis jedis = TestRedis.connect())
+        {
+            byte[] stored = jedis.hget(key, field);
+            Assumptions.assumeTrue(stored[0] == (byte) 0xFE && stored[1] == 'X', "Server expires hash fields natively");
+
+            Thread.sleep(1500);
+            assertTrue(jedis.hexists(key, field));
+            assertFalse(redis.isMemberOfHash(hash, "field"));
+            assertEquals("", redis.getHashFieldValue(hash, "field"));
+            assertFalse(jedis.hexists(key, field));
+        }
+    }
+
+    private void startRedis() throws Exception
+    {
+        TestRedis.assumeRunning();
+        redis = new RedisService(TestRedis.host(), TestRedis.port());
+        hash = "test:fields:" + System.nanoTime();
+    }
+
+    private static byte[] envelope(long expireAt, byte[] body)
+    {
+        byte[] digits = String.format("%016d", expireAt).getBytes(StandardCharsets.US_ASCII);
+        byte[] stored = new byte[2 + digits.length + body.length];
+        stored[0] = (byte) 0xFE;
+        stored[1] = 'X';
+        System.arraycopy(digits, 0, stored, 2, digits.length);
+        System.arraycopy(body, 0, stored, 2 + digits.length, body.length);
+        return stored;
+    }
+}
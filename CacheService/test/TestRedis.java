@@ -0,0 +1,50 @@
+package app.cache;
+
+import org.junit.jupiter.api.Assumptions;
+import redis.clients.jedis.Jedis;
+
+/**
+ * Redis server for integration tests, at REDIS_HOST:REDIS_PORT or the service defaults.
+ * Tests that need it are skipped when no server answers there.
+ */
+final class TestRedis
+{
+
+    private TestRedis()
+    {
+    }
+
+    static String host()
+    {
+        String host = System.getenv("REDIS_HOST");
+        return host == null || host.isEmpty() ? RedisService.HOST : host;
+    }
+
+    static int port()
+    {
+        String port = System.getenv("REDIS_PORT");
+        return port == null || port.isEmpty() ? RedisService.PORT : Integer.parseInt(port);
+    }
+
+    static Jedis connect()
+    {
+        return new Jedis(host(), port());
+    }
+
+    /**
+     * Skips the calling test unless a Redis server answers a PING.
+     */
+    static void assumeRunning()
+    {
+        boolean running;
+        try (Jedis jedis = connect())
+        {
+            running = "PONG".equals(jedis.ping());
+        }
+        catch (Exception e)
+        {
+            running = false;
+        }
+        Assumptions.assumeTrue(running, "No Redis server at " + host() + ":" + port());
+    }
+}
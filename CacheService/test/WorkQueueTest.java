@@ -0,0 +1,140 @@
+package app.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.StreamEntryID;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkQueueTest
+{
+
+    private static final String GROUP = "workers";
+
+    private RedisService redis;
+
+    private String name;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        TestRedis.assumeRunning();
+        redis = new RedisService(TestRedis.host(), TestRedis.port());
+        name = "test:queue:" + System.nanoTime();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        if (redis == null)
+        {
+            return;
+        }
+        try (Jedis jedis = TestRedis.connect())
+        {
+            jedis.del(redis.envPrefix(name));
+        }
+        redis.close();
+    }
+
+    @Test
+    void enqueuedItemsArePolledInOrderAndAcknowledged()
+    {
+        WorkQueue queue = redis.workQueue(name, GROUP).batchSize(2);
+        List<String> ids = queue.enqueueAll(Arrays.asList(bytes("a"), bytes("b"), bytes("c")));
+        assertEquals(3, ids.size());
+
+        List<WorkItem> items = queue.poll("worker-1", 10, 0, TimeUnit.MILLISECONDS);
+        assertEquals(3, items.size());
+        for (int i = 0; i < items.size(); i++)
+        {
+            assertEquals(ids.get(i), items.get(i).getId());
+            assertEquals(1, items.get(i).getDeliveries());
+        }
+        assertArrayEquals(bytes("b"), items.get(1).getPayload());
+        assertEquals(3, queue.stats().getPending());
+
+        assertEquals(3, queue.ack(items));
+        assertEquals(0, queue.ack(items));
+        assertEquals(0, queue.stats().getPending());
+        assertTrue(queue.poll("worker-1", 10, 0, TimeUnit.MILLISECONDS).isEmpty());
+    }
+
+    @Test
+    void reclaimTakesOnlyIdleItemsAndCountsDeliveries() throws InterruptedException
+    {
+        WorkQueue queue = redis.workQueue(name, GROUP);
+        queue.enqueue(bytes("job"));
+        List<WorkItem> taken = queue.poll("worker-1", 1, 0, TimeUnit.MILLISECONDS);
+        assertEquals(1, taken.size());
+
+        assertTrue(queue.reclaim("worker-2", 1, TimeUnit.MINUTES, 10).isEmpty());
+
+        Thread.sleep(50);
+        List<WorkItem> reclaimed = queue.reclaim("worker-2", 20, TimeUnit.MILLISECONDS, 10);
+        assertEquals(1, reclaimed.size());
+        assertEquals(taken.get(0).getId(), reclaimed.get(0).getId());
+        assertEquals(2, reclaimed.get(0).getDeliveries());
+        assertArrayEquals(bytes("job"), reclaimed.get(0).getPayload());
+
+        Thread.sleep(50);
+        assertEquals(3, queue.reclaim("worker-3", 20, TimeUnit.MILLISECONDS, 10).get(0).getDeliveries());
+        assertEquals(1, queue.stats().getPending());
+    }
+
+    @Test
+    void reclaimDropsPendingItemsTrimmedFromTheStream() throws InterruptedException
+    {
+        WorkQueue queue = redis.workQueue(name, GROUP);
+        queue.enqueueAll(Arrays.asList(bytes("a"), bytes("b")));
+        assertEquals(2, queue.poll("worker-1", 10, 0, TimeUnit.MILLISECONDS).size());
+
+        try (Jedis jedis = TestRedis.connect())
+        {
+            jedis.xtrim(redis.envPrefix(name), 0, false);
+        }
+
+        Thread.sleep(50);
+        assertTrue(queue.reclaim("worker-2", 20, TimeUnit.MILLISECONDS, 10).isEmpty());
+        assertEquals(0, queue.stats().getPending());
+        assertTrue(queue.reclaim("worker-2", 0, TimeUnit.MILLISECONDS, 10).isEmpty());
+    }
+
+    @Test
+    void statsCountsUndeliveredItemsWhenTheGroupDoesNotTrackLag()
+    {
+        WorkQueue queue = redis.workQueue(name, GROUP);
+        List<String> ids = queue.enqueueAll(Arrays.asList(bytes("a"), bytes("b"), bytes("c")));
+
+        // A deleted entry past the last delivered id stops Redis 7 from tracking the lag; older servers never do.
+        try (Jedis jedis = TestRedis.connect())
+        {
+            jedis.xdel(redis.envPrefix(name), new StreamEntryID(ids.get(1)));
+        }
+
+        QueueStats stats = queue.stats();
+        assertEquals(2, stats.getLength());
+        assertEquals(2, stats.getUndelivered());
+        assertEquals(0, stats.getPending());
+        assertTrue(stats.getLagMillis() >= 0);
+
+        List<WorkItem> items = queue.poll("worker-1", 1, 0, TimeUnit.MILLISECONDS);
+        assertEquals(ids.get(0), items.get(0).getId());
+        assertEquals(1, queue.stats().getUndelivered());
+        assertEquals(1, queue.stats().getPending());
+    }
+
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
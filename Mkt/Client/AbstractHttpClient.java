@@ -4,13 +4,26 @@ import com.google.gson.Gson;
 import okhttp3.*;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InterruptedIOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Abstract base class for HTTP clients.
  * Provides common HTTP functionality using OkHttp library.
+ * All clients share one OkHttpClient, so its connection pool and dispatcher threads are reused
+ * across client instances and requests go out on warm connections.
+ * Asynchronous requests run on the dispatcher threads, and a shared limit on requests in flight
+ * keeps a slow vendor from building an unbounded backlog.
+ * Request bodies can be gzip-compressed on the fly, see {@link RequestCompression}, and failed
+ * requests sent again with backoff, see {@link RetryPolicy}.
  */
 public abstract class AbstractHttpClient
 {
@@ -19,85 +32,230 @@ public abstract class AbstractHttpClient
 
     protected static final MediaType FORM_URLENCODED = MediaType.parse("application/x-www-form-urlencoded");
 
+    protected static final Gson GSON = new Gson();
+
+    private static final Object sharedLock = new Object();
+
+    private static final String AUTHORIZATION = "Authorization";
+
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+
+    private static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * Deadline of a call made without a call timeout.
+     */
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    /**
+     * How long a caller waiting for an in-flight slot sleeps between checks.
+     */
+    private static final long IN_FLIGHT_POLL_MILLIS = 10;
+
+    private static final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mkt-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile OkHttpClient sharedClient = null;
+
+    private static volatile Semaphore sharedInFlight = null;
+
+    private static HttpClientSettings settings = new HttpClientSettings();
+
     protected OkHttpClient httpClient;
 
     protected Gson gson;
 
-    protected Map<String, String> defaultHeaders;
+    protected Headers defaultHeaders;
+
+    protected TokenManager tokenManager;
+
+    protected Semaphore inFlight;
+
+    protected long callTimeoutMillis = 0;
+
+    protected RequestCompression requestCompression;
+
+    protected RetryPolicy retryPolicy;
 
     /**
-     * Constructs a new AbstractHttpClient instance.
+     * Constructs a new AbstractHttpClient instance on the shared HTTP client.
      */
     public AbstractHttpClient()
     {
-        this.httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
-        this.gson = new Gson();
-        this.defaultHeaders = new HashMap<>();
+        this.httpClient = sharedClient();
+        this.inFlight = sharedInFlight;
+        this.gson = GSON;
+        this.defaultHeaders = Headers.of();
     }
 
     /**
-     * Sets default headers for all requests.
+     * Sets a deadline for each call, covering connecting, sending and reading the response, retries
+     * and the waits between them included.
      *
-     * @param headers map of header names to values
+     * @param timeout deadline, zero for none
+     * @param unit unit of the deadline
      */
-    protected void setDefaultHeaders(Map<String, String> headers)
+    public void setCallTimeout(long timeout, TimeUnit unit)
     {
-        this.defaultHeaders = headers != null ? new HashMap<>(headers) : new HashMap<>();
+        this.callTimeoutMillis = unit.toMillis(timeout);
     }
 
     /**
-     * Performs a POST request.
+     * Sets the gzip compression of request bodies. Off unless set.
      *
-     * @param url the URL to post to
-     * @param body the request body
-     * @param headers additional headers
-     * @return HttpResponse containing status code and body
-     * @throws IOException if request fails
+     * @param requestCompression compression settings, or null to send bodies as they are
      */
-    protected HttpResponse post(String url, String body, Map<String, String> headers) throws IOException
+    public void setRequestCompression(RequestCompression requestCompression)
     {
-        RequestBody requestBody = RequestBody.create(body != null ? body : "", JSON);
+        this.requestCompression = requestCompression;
+    }
 
-        Request.Builder requestBuilder = new Request.Builder()
-            .url(url)
-            .post(requestBody);
+    /**
+     * Sets when failed requests are sent again. Off unless set.
+     * Share one policy between clients, so they share its retry budget.
+     *
+     * @param retryPolicy retry policy, or null to never retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy)
+    {
+        this.retryPolicy = retryPolicy;
+    }
 
-        for (Map.Entry<String, String> header : defaultHeaders.entrySet())
-        {
-            requestBuilder.addHeader(header.getKey(), header.getValue());
-        }
+    /**
+     * Checks if requests to a URL are safe to send more than once, for the retry policy.
+     * Clients override it for endpoints whose requests can be repeated without side effects.
+     *
+     * @param url the URL
+     * @return true if the endpoint is idempotent
+     */
+    protected boolean isIdempotent(String url)
+    {
+        return false;
+    }
 
-        if (headers != null)
+    /**
+     * Configures the HTTP client shared by all clients.
+     * Clients constructed before keep the previous one until they are discarded.
+     *
+     * @param httpClientSettings connection pool, dispatcher and timeout settings
+     */
+    public static void configure(HttpClientSettings httpClientSettings)
+    {
+        synchronized (sharedLock)
         {
-            for (Map.Entry<String, String> header : headers.entrySet())
+            OkHttpClient previous = sharedClient;
+            settings = httpClientSettings;
+            sharedClient = null;
+            if (previous != null)
             {
-                requestBuilder.addHeader(header.getKey(), header.getValue());
+                previous.connectionPool().evictAll();
             }
         }
+    }
 
-        Request request = requestBuilder.build();
+    /**
+     * Gets the HTTP client shared by all clients, building it on first use.
+     * Thread-safe double-checked locking implementation.
+     *
+     * @return shared OkHttpClient
+     */
+    protected static OkHttpClient sharedClient()
+    {
+        OkHttpClient client = sharedClient;
+        if (client != null)
+        {
+            return client;
+        }
 
-        try (Response response = httpClient.newCall(request).execute())
+        synchronized (sharedLock)
         {
-            String responseBody = response.body() != null ? response.body().string() : "";
-            return new HttpResponse(response.code(), responseBody);
+            if (sharedClient == null)
+            {
+                Dispatcher dispatcher = new Dispatcher();
+                dispatcher.setMaxRequests(settings.getMaxRequests());
+                dispatcher.setMaxRequestsPerHost(settings.getMaxRequestsPerHost());
+                sharedInFlight = new Semaphore(settings.getMaxInFlight());
+
+                sharedClient = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(settings.getMaxIdleConnections(), settings.getKeepAliveMillis(), TimeUnit.MILLISECONDS))
+                    .dispatcher(dispatcher)
+                    .connectTimeout(settings.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .readTimeout(settings.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .writeTimeout(settings.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .build();
+            }
+            return sharedClient;
         }
     }
 
+    /**
+     * Sets default headers for all requests.
+     * They are built once into an immutable header set and reused by every request.
+     *
+     * @param headers map of header names to values
+     */
+    protected void setDefaultHeaders(Map<String, String> headers)
+    {
+        this.defaultHeaders = headers != null ? Headers.of(headers) : Headers.of();
+    }
+
+    /**
+     * Performs a POST request with the default headers.
+     *
+     * @param url the URL to post to
+     * @param body the JSON request body
+     * @return HttpResponse containing status code and body
+     * @throws IOException if request fails
+     */
+    protected HttpResponse post(String url, String body) throws IOException
+    {
+        return post(url, body, null);
+    }
+
+    /**
+     * Performs a POST request.
+     * The content type comes from the body, so it does not need to be passed as a header.
+     *
+     * @param url the URL to post to
+     * @param body the JSON request body
+     * @param headers additional headers, or null
+     * @return HttpResponse containing status code and body
+     * @throws IOException if request fails
+     */
+    protected HttpResponse post(String url, String body, Headers headers) throws IOException
+    {
+        RequestBody requestBody = RequestBody.create(JSON, body != null ? body : "");
+
+        return execute(url, requestBody, headers);
+    }
+
+    /**
+     * Performs a POST request with a prepared body, such as a streamed one, and the default headers.
+     * The body must be writable more than once, for the retry after a 401.
+     *
+     * @param url the URL to post to
+     * @param requestBody the request body
+     * @return HttpResponse containing status code and body
+     * @throws IOException if request fails
+     */
+    protected HttpResponse post(String url, RequestBody requestBody) throws IOException
+    {
+        return execute(url, requestBody, null);
+    }
+
     /**
      * Performs a POST request with form data.
      *
      * @param url the URL to post to
      * @param formData map of form parameters
-     * @param headers additional headers
+     * @param headers additional headers, or null
      * @return HttpResponse containing status code and body
      * @throws IOException if request fails
      */
-    protected HttpResponse postForm(String url, Map<String, String> formData, Map<String, String> headers) throws IOException
+    protected HttpResponse postForm(String url, Map<String, String> formData, Headers headers) throws IOException
     {
         FormBody.Builder formBuilder = new FormBody.Builder();
 
@@ -109,32 +267,440 @@ public abstract class AbstractHttpClient
             }
         }
 
-        RequestBody requestBody = formBuilder.build();
+        return execute(url, formBuilder.build(), headers);
+    }
 
-        Request.Builder requestBuilder = new Request.Builder()
-            .url(url)
-            .post(requestBody);
+    /**
+     * Performs a POST request without blocking the caller.
+     * Fails at once with a RejectedExecutionException if too many requests are in flight.
+     *
+     * @param url the URL to post to
+     * @param body the JSON request body
+     * @return future completed with the HttpResponse, or exceptionally if the request fails
+     */
+    protected CompletableFuture<HttpResponse> postAsync(String url, String body)
+    {
+        return postAsync(url, body, null);
+    }
+
+    /**
+     * Performs a POST request without blocking the caller.
+     * Fails at once with a RejectedExecutionException if too many requests are in flight.
+     *
+     * @param url the URL to post to
+     * @param body the JSON request body
+     * @param headers additional headers, or null
+     * @return future completed with the HttpResponse, or exceptionally if the request fails
+     */
+    protected CompletableFuture<HttpResponse> postAsync(String url, String body, Headers headers)
+    {
+        return postAsync(url, RequestBody.create(JSON, body != null ? body : ""), headers);
+    }
 
-        for (Map.Entry<String, String> header : defaultHeaders.entrySet())
+    /**
+     * Performs a POST request with a prepared body, such as a streamed one, without blocking the caller.
+     * The body must be writable more than once, for the retry after a 401.
+     *
+     * @param url the URL to post to
+     * @param requestBody the request body
+     * @param headers additional headers, or null
+     * @return future completed with the HttpResponse, or exceptionally if the request fails
+     */
+    protected CompletableFuture<HttpResponse> postAsync(String url, RequestBody requestBody, Headers headers)
+    {
+        if (!inFlight.tryAcquire())
         {
-            requestBuilder.addHeader(header.getKey(), header.getValue());
+            CompletableFuture<HttpResponse> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new RejectedExecutionException("Too many requests in flight"));
+            return rejected;
         }
 
-        if (headers != null)
+        return postAsyncWithPermit(url, requestBody, headers);
+    }
+
+    /**
+     * Waits without blocking for a free in-flight slot, for callers that would rather wait than be rejected.
+     * The caller holds the permit once the future completes, and must pass it on through
+     * {@link #postAsyncWithPermit(String, RequestBody, Headers)} or give it back through {@link #releaseInFlight()}.
+     *
+     * @return future completed once a permit is held
+     */
+    CompletableFuture<Void> acquireInFlight()
+    {
+        CompletableFuture<Void> acquired = new CompletableFuture<>();
+        acquireInFlight(inFlight, acquired);
+        return acquired;
+    }
+
+    /**
+     * Gives back a permit taken through {@link #acquireInFlight()} that was not used for a request.
+     */
+    void releaseInFlight()
+    {
+        inFlight.release();
+    }
+
+    /**
+     * Performs a POST request without blocking the caller, on an in-flight permit the caller already holds.
+     * The permit is released when the request completes.
+     *
+     * @param url the URL to post to
+     * @param requestBody the request body
+     * @param headers additional headers, or null
+     * @return future completed with the HttpResponse, or exceptionally if the request fails
+     */
+    CompletableFuture<HttpResponse> postAsyncWithPermit(String url, RequestBody requestBody, Headers headers)
+    {
+        Semaphore permits = inFlight;
+        CompletableFuture<HttpResponse> response;
+        try
+        {
+            Request.Builder requestBuilder = requestBuilder(url, requestBody, headers);
+            long deadline = deadline();
+            RetryPolicy policy = retryPolicy;
+            if (policy == null)
+            {
+                response = sendAsync(requestBuilder, deadline);
+            }
+            else
+            {
+                policy.onRequest();
+                response = sendAsync(requestBuilder, deadline, policy, isIdempotent(url) || policy.isIdempotent(url), 1);
+            }
+        }
+        catch (RuntimeException e)
         {
-            for (Map.Entry<String, String> header : headers.entrySet())
+            permits.release();
+            throw e;
+        }
+
+        response.whenComplete((result, error) -> permits.release());
+        return response;
+    }
+
+    /**
+     * Performs a POST request without blocking the caller and checks its status.
+     *
+     * @param url the URL to post to
+     * @param body the JSON request body
+     * @param expectedStatus the status code of a successful request
+     * @param failureMessage message of the exception the future fails with on any other status
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    protected CompletableFuture<Boolean> postAsync(String url, String body, int expectedStatus, String failureMessage)
+    {
+        return postAsync(url, RequestBody.create(JSON, body != null ? body : ""), expectedStatus, failureMessage);
+    }
+
+    /**
+     * Performs a POST request with a prepared body, such as a streamed one, without blocking the caller,
+     * and checks its status.
+     *
+     * @param url the URL to post to
+     * @param requestBody the request body
+     * @param expectedStatus the status code of a successful request
+     * @param failureMessage message of the exception the future fails with on any other status
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    protected CompletableFuture<Boolean> postAsync(String url, RequestBody requestBody, int expectedStatus, String failureMessage)
+    {
+        return postAsync(url, requestBody, null).thenApply(response -> {
+            if (response.getStatusCode() != expectedStatus)
             {
-                requestBuilder.addHeader(header.getKey(), header.getValue());
+                throw new CompletionException(new Exception(failureMessage));
             }
+            return true;
+        });
+    }
+
+    /**
+     * Sends a request, and sends it again while the retry policy allows it and the call deadline leaves time.
+     */
+    private HttpResponse execute(String url, RequestBody requestBody, Headers headers) throws IOException
+    {
+        Request.Builder requestBuilder = requestBuilder(url, requestBody, headers);
+        long deadline = deadline();
+        RetryPolicy policy = retryPolicy;
+        if (policy == null)
+        {
+            return send(requestBuilder, deadline);
         }
 
-        Request request = requestBuilder.build();
+        policy.onRequest();
+        boolean idempotent = isIdempotent(url) || policy.isIdempotent(url);
+        for (int attempt = 1; ; attempt++)
+        {
+            long delay;
+            try
+            {
+                HttpResponse response = send(requestBuilder, deadline);
+                delay = policy.retryDelay(attempt, response, idempotent, remainingMillis(deadline));
+                if (delay < 0)
+                {
+                    return response;
+                }
+                System.err.println("[AbstractHttpClient] :: [execute] - Status " + response.getStatusCode() + " from " + url + ", retrying in " + delay + " ms");
+            }
+            catch (IOException e)
+            {
+                delay = policy.retryDelay(attempt, e, idempotent, remainingMillis(deadline));
+                if (delay < 0)
+                {
+                    throw e;
+                }
+                System.err.println("[AbstractHttpClient] :: [execute] - " + e + " from " + url + ", retrying in " + delay + " ms");
+            }
 
-        try (Response response = httpClient.newCall(request).execute())
+            try
+            {
+                Thread.sleep(delay);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry");
+            }
+        }
+    }
+
+    /**
+     * Sends a request, authorized with the current token of the token manager if there is one.
+     * A 401 drops the token and the request is sent once more with a new one.
+     */
+    private HttpResponse send(Request.Builder requestBuilder, long deadline) throws IOException
+    {
+        if (tokenManager == null)
+        {
+            return execute(requestBuilder.build(), deadline);
+        }
+
+        AccessToken token = tokenManager.getToken();
+        HttpResponse response = execute(requestBuilder.header(AUTHORIZATION, token.getAuthorization()).build(), deadline);
+        if (response.getStatusCode() != 401)
+        {
+            return response;
+        }
+
+        tokenManager.invalidate(token);
+        return execute(requestBuilder.header(AUTHORIZATION, tokenManager.getToken().getAuthorization()).build(), deadline);
+    }
+
+    private static void acquireInFlight(Semaphore permits, CompletableFuture<Void> acquired)
+    {
+        if (permits.tryAcquire())
+        {
+            acquired.complete(null);
+            return;
+        }
+        retryScheduler.schedule(() -> acquireInFlight(permits, acquired), IN_FLIGHT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a request without blocking, and schedules it again while the retry policy allows it
+     * and the call deadline leaves time.
+     */
+    private CompletableFuture<HttpResponse> sendAsync(Request.Builder requestBuilder, long deadline, RetryPolicy policy,
+                                                      boolean idempotent, int attempt)
+    {
+        return sendAsync(requestBuilder, deadline).handle((response, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            long delay = -1;
+            if (cause == null)
+            {
+                delay = policy.retryDelay(attempt, response, idempotent, remainingMillis(deadline));
+            }
+            else if (cause instanceof IOException)
+            {
+                delay = policy.retryDelay(attempt, (IOException) cause, idempotent, remainingMillis(deadline));
+            }
+
+            CompletableFuture<HttpResponse> next = new CompletableFuture<>();
+            if (delay < 0)
+            {
+                if (cause == null)
+                {
+                    next.complete(response);
+                }
+                else
+                {
+                    next.completeExceptionally(cause);
+                }
+                return next;
+            }
+
+            System.err.println("[AbstractHttpClient] :: [postAsync] - " + (cause == null ? "Status " + response.getStatusCode() : cause.toString())
+                + " from " + requestBuilder.build().url() + ", retrying in " + delay + " ms");
+            retryScheduler.schedule(() -> sendAsync(requestBuilder, deadline, policy, idempotent, attempt + 1).whenComplete((result, failure) -> {
+                if (failure == null)
+                {
+                    next.complete(result);
+                }
+                else
+                {
+                    next.completeExceptionally(failure);
+                }
+            }), delay, TimeUnit.MILLISECONDS);
+            return next;
+        }).thenCompose(next -> next);
+    }
+
+    /**
+     * Sends a request without blocking, authorized like {@link #send(Request.Builder, long)}.
+     */
+    private CompletableFuture<HttpResponse> sendAsync(Request.Builder requestBuilder, long deadline)
+    {
+        if (tokenManager == null)
+        {
+            return enqueue(requestBuilder.build(), deadline);
+        }
+
+        return tokenManager.getTokenAsync().thenCompose(token ->
+            enqueue(requestBuilder.header(AUTHORIZATION, token.getAuthorization()).build(), deadline)
+                .thenCompose(first -> {
+                    if (first.getStatusCode() != 401)
+                    {
+                        return CompletableFuture.completedFuture(first);
+                    }
+                    tokenManager.invalidate(token);
+                    return tokenManager.getTokenAsync().thenCompose(fresh ->
+                        enqueue(requestBuilder.header(AUTHORIZATION, fresh.getAuthorization()).build(), deadline));
+                }));
+    }
+
+    private HttpResponse execute(Request request, long deadline) throws IOException
+    {
+        Call call = httpClient.newCall(request);
+        timeout(call, deadline);
+        try (Response response = call.execute())
         {
             String responseBody = response.body() != null ? response.body().string() : "";
-            return new HttpResponse(response.code(), responseBody);
+            return new HttpResponse(response.code(), responseBody, response.header(RETRY_AFTER));
         }
     }
-}
 
+    /**
+     * Enqueues a request on the dispatcher. OkHttp only starts the call timeout once the dispatcher runs the call,
+     * so the deadline is also enforced by cancelling the call from the retry scheduler, which covers the time
+     * the call waits in the dispatcher queue.
+     */
+    private CompletableFuture<HttpResponse> enqueue(Request request, long deadline)
+    {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        Call call = httpClient.newCall(request);
+        try
+        {
+            timeout(call, deadline);
+        }
+        catch (InterruptedIOException e)
+        {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        ScheduledFuture<?> expiry = null;
+        if (deadline != NO_DEADLINE)
+        {
+            expiry = retryScheduler.schedule(() -> {
+                if (future.completeExceptionally(new InterruptedIOException("timeout")))
+                {
+                    call.cancel();
+                }
+            }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        ScheduledFuture<?> timer = expiry;
+
+        call.enqueue(new Callback()
+        {
+            @Override
+            public void onFailure(Call failed, IOException e)
+            {
+                cancel(timer);
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call completed, Response response)
+            {
+                cancel(timer);
+                try (Response closing = response)
+                {
+                    String responseBody = closing.body() != null ? closing.body().string() : "";
+                    future.complete(new HttpResponse(closing.code(), responseBody, closing.header(RETRY_AFTER)));
+                }
+                catch (IOException e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    private static void cancel(ScheduledFuture<?> timer)
+    {
+        if (timer != null)
+        {
+            timer.cancel(false);
+        }
+    }
+
+    /**
+     * Gets the deadline of a call starting now, from the call timeout.
+     */
+    private long deadline()
+    {
+        long timeout = callTimeoutMillis;
+        return timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : NO_DEADLINE;
+    }
+
+    /**
+     * Gets the time left before a deadline, for the retry policy.
+     */
+    private static long remainingMillis(long deadline)
+    {
+        return deadline == NO_DEADLINE ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    /**
+     * Limits an attempt to the time left before the deadline, so retries do not extend the call.
+     *
+     * @throws InterruptedIOException if the deadline has passed
+     */
+    private static void timeout(Call call, long deadline) throws InterruptedIOException
+    {
+        if (deadline == NO_DEADLINE)
+        {
+            return;
+        }
+
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+        {
+            throw new InterruptedIOException("timeout");
+        }
+        call.timeout().timeout(remaining, TimeUnit.NANOSECONDS);
+    }
+
+    private Request.Builder requestBuilder(String url, RequestBody requestBody, Headers headers)
+    {
+        RequestBody body = requestCompression != null ? requestCompression.compress(url, requestBody) : requestBody;
+        Request.Builder requestBuilder = new Request.Builder()
+            .url(url)
+            .headers(defaultHeaders)
+            .post(body);
+
+        if (body != requestBody)
+        {
+            requestBuilder.header(CONTENT_ENCODING, "gzip");
+        }
+
+        if (headers != null)
+        {
+            for (int i = 0; i < headers.size(); i++)
+            {
+                requestBuilder.header(headers.name(i), headers.value(i));
+            }
+        }
+        return requestBuilder;
+    }
+}
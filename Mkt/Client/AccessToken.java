@@ -0,0 +1,131 @@
+package app.mkt.client;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * OAuth2 access token with its absolute expiration time.
+ * Serializable, so a token store can share it between nodes.
+ */
+public class AccessToken implements Serializable
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private final String value;
+
+    private final String type;
+
+    private final long expiresAtMillis;
+
+    private final String authorization;
+
+    /**
+     * Constructs a new AccessToken.
+     *
+     * @param value the token
+     * @param type the token type, such as Bearer
+     * @param expiresAtMillis expiration time in epoch milliseconds, Long.MAX_VALUE if unknown
+     */
+    public AccessToken(String value, String type, long expiresAtMillis)
+    {
+        this.value = value;
+        this.type = type;
+        this.expiresAtMillis = expiresAtMillis;
+        this.authorization = "Bearer " + value;
+    }
+
+    /**
+     * Builds a token from an OAuth2 token endpoint response.
+     *
+     * @param response the parsed response
+     * @param now current epoch milliseconds
+     * @return the token, or null if the response has none
+     */
+    static AccessToken fromResponse(Map<String, Object> response, long now)
+    {
+        Object accessToken = response != null ? response.get("access_token") : null;
+        if (accessToken == null || String.valueOf(accessToken).isEmpty())
+        {
+            return null;
+        }
+
+        long expiresAt = Long.MAX_VALUE;
+        Object expiresIn = response.get("expires_in");
+        if (expiresIn instanceof Number)
+        {
+            expiresAt = now + ((Number) expiresIn).longValue() * 1000L;
+        }
+        return new AccessToken(String.valueOf(accessToken), String.valueOf(response.getOrDefault("token_type", "")), expiresAt);
+    }
+
+    /**
+     * Gets the token.
+     *
+     * @return token value
+     */
+    public String getValue()
+    {
+        return value;
+    }
+
+    /**
+     * Gets the token type.
+     *
+     * @return token type
+     */
+    public String getType()
+    {
+        return type;
+    }
+
+    /**
+     * Gets the Authorization header value.
+     *
+     * @return bearer credentials
+     */
+    public String getAuthorization()
+    {
+        return authorization;
+    }
+
+    /**
+     * Gets the expiration time.
+     *
+     * @return expiration time in epoch milliseconds
+     */
+    public long getExpiresAtMillis()
+    {
+        return expiresAtMillis;
+    }
+
+    /**
+     * Gets the seconds left before the token expires.
+     *
+     * @param now current epoch milliseconds
+     * @return seconds left, zero if expired, Integer.MAX_VALUE if unknown
+     */
+    public int getExpiresInSeconds(long now)
+    {
+        long seconds = (expiresAtMillis - now) / 1000L;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, seconds));
+    }
+
+    /**
+     * Checks if the token expires within the given time.
+     *
+     * @param now current epoch milliseconds
+     * @param marginMillis time ahead of now
+     * @return true if the token is expired by then
+     */
+    public boolean expiresWithin(long now, long marginMillis)
+    {
+        return expiresAtMillis != Long.MAX_VALUE && expiresAtMillis - marginMillis <= now;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AccessToken{type=" + type + ", expiresAtMillis=" + expiresAtMillis + "}";
+    }
+}
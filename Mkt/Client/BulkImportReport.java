@@ -0,0 +1,121 @@
+package app.mkt.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import: one result per chunk, in collection order.
+ */
+public class BulkImportReport
+{
+
+    private final List<ChunkResult> chunks;
+
+    private final long elapsedMillis;
+
+    /**
+     * Constructs a new BulkImportReport.
+     *
+     * @param chunks chunk results in collection order
+     * @param elapsedMillis duration of the import in milliseconds
+     */
+    public BulkImportReport(List<ChunkResult> chunks, long elapsedMillis)
+    {
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Gets the result of every chunk.
+     *
+     * @return chunk results in collection order
+     */
+    public List<ChunkResult> getChunks()
+    {
+        return chunks;
+    }
+
+    /**
+     * Gets the chunks that were not accepted, to import them again.
+     *
+     * @return failed chunk results
+     */
+    public List<ChunkResult> getFailedChunks()
+    {
+        List<ChunkResult> failed = new ArrayList<>();
+        for (ChunkResult chunk : chunks)
+        {
+            if (!chunk.isImported())
+            {
+                failed.add(chunk);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Gets the number of items in accepted chunks.
+     *
+     * @return imported items
+     */
+    public long getImportedItems()
+    {
+        long imported = 0;
+        for (ChunkResult chunk : chunks)
+        {
+            if (chunk.isImported())
+            {
+                imported += chunk.getItemCount();
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Gets the number of items in failed chunks.
+     *
+     * @return failed items
+     */
+    public long getFailedItems()
+    {
+        long failed = 0;
+        for (ChunkResult chunk : chunks)
+        {
+            if (!chunk.isImported())
+            {
+                failed += chunk.getItemCount();
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Checks if every chunk was accepted.
+     *
+     * @return true if the whole collection was imported
+     */
+    public boolean isComplete()
+    {
+        return getFailedItems() == 0;
+    }
+
+    /**
+     * Gets the duration of the import.
+     *
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BulkImportReport{chunks=" + chunks.size()
+            + ", importedItems=" + getImportedItems()
+            + ", failedItems=" + getFailedItems()
+            + ", elapsedMillis=" + elapsedMillis + "}";
+    }
+}
@@ -0,0 +1,338 @@
+package app.mkt.client;
+
+import okio.Buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Splits a large collection into chunks bounded by item count and serialized size, and uploads them
+ * with bounded parallelism. Items are serialized one chunk at a time, just before the chunk is sent,
+ * straight into the buffer the request body is written from, so at most one chunk per upload slot
+ * is held in memory, and only once. A failed chunk does not stop the others,
+ * and the report tells which items to import again.
+ */
+public class BulkImporter
+{
+
+    public static final int DEFAULT_MAX_ITEMS_PER_CHUNK = 1000;
+
+    public static final long DEFAULT_MAX_BYTES_PER_CHUNK = 1024 * 1024;
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private int maxItemsPerChunk = DEFAULT_MAX_ITEMS_PER_CHUNK;
+
+    private long maxBytesPerChunk = DEFAULT_MAX_BYTES_PER_CHUNK;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * Sets the most items sent in one request.
+     *
+     * @param maxItemsPerChunk items per chunk
+     * @return this instance for method chaining
+     */
+    public BulkImporter maxItemsPerChunk(int maxItemsPerChunk)
+    {
+        if (maxItemsPerChunk <= 0)
+        {
+            throw new IllegalArgumentException("Max items per chunk must be positive");
+        }
+        this.maxItemsPerChunk = maxItemsPerChunk;
+        return this;
+    }
+
+    /**
+     * Sets the largest serialized size of one request. A single item larger than that is sent on its own.
+     *
+     * @param maxBytesPerChunk bytes per chunk
+     * @return this instance for method chaining
+     */
+    public BulkImporter maxBytesPerChunk(long maxBytesPerChunk)
+    {
+        if (maxBytesPerChunk <= 0)
+        {
+            throw new IllegalArgumentException("Max bytes per chunk must be positive");
+        }
+        this.maxBytesPerChunk = maxBytesPerChunk;
+        return this;
+    }
+
+    /**
+     * Sets how many chunks may be uploading at the same time.
+     *
+     * @param parallelism concurrent uploads
+     * @return this instance for method chaining
+     */
+    public BulkImporter parallelism(int parallelism)
+    {
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Imports a collection as JSON arrays posted to one URL.
+     *
+     * @param client the client to post with
+     * @param url the URL to post each chunk to
+     * @param items the collection
+     * @param expectedStatus the status code of an accepted chunk
+     * @param <T> type of the items
+     * @return report with one result per chunk
+     * @throws InterruptedException if interrupted while waiting for the chunks
+     */
+    <T> BulkImportReport run(AbstractHttpClient client, String url, List<T> items, int expectedStatus) throws InterruptedException
+    {
+        try
+        {
+            return runAsync(client, url, items, expectedStatus).get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to import collection", e.getCause());
+        }
+    }
+
+    /**
+     * Imports a collection as JSON arrays posted to one URL, without blocking.
+     * Each upload slot sends its next chunk when the previous one completes and an in-flight permit is free,
+     * so no thread waits for a slot.
+     *
+     * @param client the client to post with
+     * @param url the URL to post each chunk to
+     * @param items the collection
+     * @param expectedStatus the status code of an accepted chunk
+     * @param <T> type of the items
+     * @return future completed with one result per chunk, or exceptionally if an item cannot be serialized
+     */
+    <T> CompletableFuture<BulkImportReport> runAsync(AbstractHttpClient client, String url, List<T> items, int expectedStatus)
+    {
+        long started = System.currentTimeMillis();
+        Chunks<T> chunks = new Chunks<>(client, items);
+        List<ChunkResult> results = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<?>[] slots = new CompletableFuture<?>[parallelism];
+        for (int i = 0; i < slots.length; i++)
+        {
+            CompletableFuture<Void> slot = new CompletableFuture<>();
+            uploadNext(client, url, expectedStatus, chunks, results, slot);
+            slots[i] = slot;
+        }
+
+        return CompletableFuture.allOf(slots).thenApply(done -> {
+            List<ChunkResult> ordered = new ArrayList<>(results);
+            ordered.sort(Comparator.comparingInt(ChunkResult::getIndex));
+            return new BulkImportReport(ordered, System.currentTimeMillis() - started);
+        });
+    }
+
+    /**
+     * Uploads chunks in one slot until none are left. The slot waits for a free in-flight permit before
+     * it serializes its next chunk, so a busy client delays the import instead of failing its chunks.
+     * Uploads that complete at once are followed in a loop rather than from their callback,
+     * so a run of failed requests does not grow the stack.
+     */
+    private static <T> void uploadNext(AbstractHttpClient client, String url, int expectedStatus, Chunks<T> chunks,
+                                       List<ChunkResult> results, CompletableFuture<Void> slot)
+    {
+        while (true)
+        {
+            CompletableFuture<Void> permit = client.acquireInFlight();
+            if (!permit.isDone())
+            {
+                permit.thenRunAsync(() -> {
+                    CompletableFuture<ChunkResult> upload = sendNext(client, url, expectedStatus, chunks, results, slot);
+                    if (upload != null)
+                    {
+                        upload.whenComplete((result, error) -> uploadNext(client, url, expectedStatus, chunks, results, slot));
+                    }
+                });
+                return;
+            }
+
+            CompletableFuture<ChunkResult> upload = sendNext(client, url, expectedStatus, chunks, results, slot);
+            if (upload == null)
+            {
+                return;
+            }
+
+            if (!upload.isDone())
+            {
+                upload.whenComplete((result, error) -> uploadNext(client, url, expectedStatus, chunks, results, slot));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Serializes and sends the next chunk on an in-flight permit the slot already holds.
+     *
+     * @return the upload, or null once the slot is completed, in which case the permit is given back
+     */
+    private static <T> CompletableFuture<ChunkResult> sendNext(AbstractHttpClient client, String url, int expectedStatus,
+                                                             Chunks<T> chunks, List<ChunkResult> results, CompletableFuture<Void> slot)
+    {
+        Chunk chunk;
+        try
+        {
+            chunk = chunks.next();
+        }
+        catch (RuntimeException e)
+        {
+            client.releaseInFlight();
+            slot.completeExceptionally(e);
+            return null;
+        }
+
+        if (chunk == null)
+        {
+            client.releaseInFlight();
+            slot.complete(null);
+            return null;
+        }
+
+        try
+        {
+            return upload(client, url, chunk, expectedStatus).thenApply(result -> {
+                results.add(result);
+                return result;
+            });
+        }
+        catch (RuntimeException e)
+        {
+            slot.completeExceptionally(e);
+            return null;
+        }
+    }
+
+    private static CompletableFuture<ChunkResult> upload(AbstractHttpClient client, String url, Chunk chunk, int expectedStatus)
+    {
+        long bytes = chunk.body.size();
+        long started = System.currentTimeMillis();
+        return client.postAsyncWithPermit(url, JsonStreamBody.buffered(chunk.body), null).handle((response, error) -> {
+            long elapsed = System.currentTimeMillis() - started;
+            if (error != null)
+            {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                return new ChunkResult(chunk.index, chunk.fromItem, chunk.count, bytes, false, cause.toString(), elapsed);
+            }
+            if (response.getStatusCode() != expectedStatus)
+            {
+                return new ChunkResult(chunk.index, chunk.fromItem, chunk.count, bytes, false, "Status " + response.getStatusCode(), elapsed);
+            }
+            return new ChunkResult(chunk.index, chunk.fromItem, chunk.count, bytes, true, null, elapsed);
+        });
+    }
+
+    private static Buffer newChunk()
+    {
+        Buffer chunk = new Buffer();
+        chunk.writeByte('[');
+        return chunk;
+    }
+
+    /**
+     * A serialized chunk, ready to be posted.
+     */
+    private static final class Chunk
+    {
+
+        private final int index;
+
+        private final int fromItem;
+
+        private final int count;
+
+        private final Buffer body;
+
+        private Chunk(int index, int fromItem, int count, Buffer body)
+        {
+            this.index = index;
+            this.fromItem = fromItem;
+            this.count = count;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Serializes the collection into chunks on demand, for whichever upload slot is free next.
+     */
+    private final class Chunks<T>
+    {
+
+        private final AbstractHttpClient client;
+
+        private final List<T> items;
+
+        private int nextItem = 0;
+
+        private int nextIndex = 0;
+
+        /**
+         * Serialized item that did not fit in the previous chunk and opens the next one.
+         */
+        private Buffer carried = null;
+
+        private Chunks(AbstractHttpClient client, List<T> items)
+        {
+            this.client = client;
+            this.items = items;
+        }
+
+        /**
+         * Serializes the next chunk.
+         *
+         * @return the chunk, or null when every item has been handed out
+         */
+        private synchronized Chunk next()
+        {
+            if (carried == null && nextItem == items.size())
+            {
+                return null;
+            }
+
+            int fromItem = carried != null ? nextItem - 1 : nextItem;
+            Buffer chunk = newChunk();
+            int count = 0;
+            while (carried != null || nextItem < items.size())
+            {
+                Buffer json = carried;
+                if (json == null)
+                {
+                    json = JsonStreamBody.serialize(client.gson, items.get(nextItem));
+                    nextItem++;
+                }
+                carried = null;
+
+                if (count > 0 && (count == maxItemsPerChunk || chunk.size() + json.size() + 2 > maxBytesPerChunk))
+                {
+                    carried = json;
+                    break;
+                }
+
+                if (count > 0)
+                {
+                    chunk.writeByte(',');
+                }
+                chunk.write(json, json.size());
+                count++;
+            }
+
+            return new Chunk(nextIndex++, fromItem, count, chunk.writeByte(']'));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package app.mkt.client;
+
+/**
+ * Outcome of uploading one chunk of a bulk import.
+ */
+public class ChunkResult
+{
+
+    private final int index;
+
+    private final int fromItem;
+
+    private final int itemCount;
+
+    private final long bytes;
+
+    private final boolean imported;
+
+    private final String error;
+
+    private final long elapsedMillis;
+
+    /**
+     * Constructs a new ChunkResult.
+     *
+     * @param index position of the chunk in the import
+     * @param fromItem position of the chunk's first item in the collection
+     * @param itemCount number of items in the chunk
+     * @param bytes serialized size of the chunk
+     * @param imported true if the chunk was accepted
+     * @param error why the chunk failed, or null
+     * @param elapsedMillis upload time in milliseconds
+     */
+    public ChunkResult(int index, int fromItem, int itemCount, long bytes, boolean imported, String error, long elapsedMillis)
+    {
+        this.index = index;
+        this.fromItem = fromItem;
+        this.itemCount = itemCount;
+        this.bytes = bytes;
+        this.imported = imported;
+        this.error = error;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Gets the position of the chunk in the import.
+     *
+     * @return chunk index
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Gets the position of the chunk's first item in the collection, to import a failed chunk again.
+     *
+     * @return first item index
+     */
+    public int getFromItem()
+    {
+        return fromItem;
+    }
+
+    /**
+     * Gets the number of items in the chunk.
+     *
+     * @return item count
+     */
+    public int getItemCount()
+    {
+        return itemCount;
+    }
+
+    /**
+     * Gets the serialized size of the chunk.
+     *
+     * @return size in bytes
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Checks if the chunk was accepted.
+     *
+     * @return true if imported
+     */
+    public boolean isImported()
+    {
+        return imported;
+    }
+
+    /**
+     * Gets why the chunk failed.
+     *
+     * @return error message, or null if imported
+     */
+    public String getError()
+    {
+        return error;
+    }
+
+    /**
+     * Gets the upload time.
+     *
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ChunkResult{index=" + index
+            + ", fromItem=" + fromItem
+            + ", itemCount=" + itemCount
+            + ", bytes=" + bytes
+            + ", imported=" + imported
+            + (error != null ? ", error=" + error : "")
+            + "}";
+    }
+}
@@ -0,0 +1,83 @@
+package app.mkt.client;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+
+import java.io.IOException;
+
+/**
+ * Request body compressed with gzip while it is written to the connection.
+ * Compressed bytes go out as they are produced, so no compressed copy of the whole body is held,
+ * and the request is sent with chunked transfer encoding.
+ */
+final class GzipRequestBody extends RequestBody
+{
+
+    private final RequestBody body;
+
+    private final RequestCompression compression;
+
+    /**
+     * Constructs a new GzipRequestBody.
+     *
+     * @param body the body to compress
+     * @param compression receives the sizes before and after compression
+     */
+    GzipRequestBody(RequestBody body, RequestCompression compression)
+    {
+        this.body = body;
+        this.compression = compression;
+    }
+
+    @Override
+    public MediaType contentType()
+    {
+        return body.contentType();
+    }
+
+    @Override
+    public long contentLength()
+    {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException
+    {
+        CountingSink compressed = new CountingSink(sink);
+        CountingSink uncompressed = new CountingSink(new GzipSink(compressed));
+        BufferedSink gzipSink = Okio.buffer(uncompressed);
+        body.writeTo(gzipSink);
+        // Closing writes the gzip trailer. It also closes OkHttp's sink, which OkHttp expects.
+        gzipSink.close();
+
+        compression.record(uncompressed.bytes, compressed.bytes);
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static final class CountingSink extends ForwardingSink
+    {
+
+        private long bytes = 0;
+
+        private CountingSink(Sink delegate)
+        {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException
+        {
+            super.write(source, byteCount);
+            bytes += byteCount;
+        }
+    }
+}
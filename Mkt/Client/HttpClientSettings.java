@@ -0,0 +1,178 @@
+package app.mkt.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pool, dispatcher and timeout settings of the HTTP client shared by all marketing clients.
+ */
+public class HttpClientSettings
+{
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 10;
+
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 300;
+
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 10;
+
+    public static final long DEFAULT_TIMEOUT_SECONDS = 30;
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+
+    private long keepAliveMillis = TimeUnit.SECONDS.toMillis(DEFAULT_KEEP_ALIVE_SECONDS);
+
+    private int maxRequests = DEFAULT_MAX_REQUESTS;
+
+    private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    private long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_SECONDS);
+
+    private long readTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_SECONDS);
+
+    private long writeTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_SECONDS);
+
+    /**
+     * Sets how many idle connections are kept open for reuse.
+     *
+     * @param maxIdleConnections idle connections kept
+     * @return this instance for method chaining
+     */
+    public HttpClientSettings maxIdleConnections(int maxIdleConnections)
+    {
+        if (maxIdleConnections < 0)
+        {
+            throw new IllegalArgumentException("Max idle connections must not be negative");
+        }
+        this.maxIdleConnections = maxIdleConnections;
+        return this;
+    }
+
+    /**
+     * Sets how long an idle connection is kept open before it is closed.
+     * Should stay below the server's own keep-alive timeout.
+     *
+     * @param keepAlive keep-alive duration
+     * @param unit unit of the duration
+     * @return this instance for method chaining
+     */
+    public HttpClientSettings keepAlive(long keepAlive, TimeUnit unit)
+    {
+        if (keepAlive <= 0)
+        {
+            throw new IllegalArgumentException("Keep-alive must be positive");
+        }
+        this.keepAliveMillis = unit.toMillis(keepAlive);
+        return this;
+    }
+
+    /**
+     * Sets how many asynchronous requests may run at the same time across all hosts.
+     *
+     * @param maxRequests concurrent requests
+     * @return this instance for method chaining
+     */
+    public HttpClientSettings maxRequests(int maxRequests)
+    {
+        if (maxRequests <= 0)
+        {
+            throw new IllegalArgumentException("Max requests must be positive");
+        }
+        this.maxRequests = maxRequests;
+        return this;
+    }
+
+    /**
+     * Sets how many asynchronous requests may run at the same time against one host.
+     *
+     * @param maxRequestsPerHost concurrent requests per host
+     * @return this instance for method chaining
+     */
+    public HttpClientSettings maxRequestsPerHost(int maxRequestsPerHost)
+    {
+        if (maxRequestsPerHost <= 0)
+        {
+            throw new IllegalArgumentException("Max requests per host must be positive");
+        }
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        return this;
+    }
+
+    /**
+     * Sets how many asynchronous requests may be started and not yet completed, queued ones included.
+     * Beyond it, new asynchronous requests fail at once instead of piling up in the dispatcher queue.
+     *
+     * @param maxInFlight requests in flight
+     * @return this instance for method chaining
+     */
+    public HttpClientSettings maxInFlight(int maxInFlight)
+    {
+        if (maxInFlight <= 0)
+        {
+            throw new IllegalArgumentException("Max in flight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Sets the connect, read and write timeouts.
+     *
+     * @param connect connect timeout
+     * @param read read timeout
+     * @param write write timeout
+     * @param unit unit of the timeouts
+     * @return this instance for method chaining
+     */
+    public HttpClientSettings timeouts(long connect, long read, long write, TimeUnit unit)
+    {
+        this.connectTimeoutMillis = unit.toMillis(connect);
+        this.readTimeoutMillis = unit.toMillis(read);
+        this.writeTimeoutMillis = unit.toMillis(write);
+        return this;
+    }
+
+    int getMaxIdleConnections()
+    {
+        return maxIdleConnections;
+    }
+
+    long getKeepAliveMillis()
+    {
+        return keepAliveMillis;
+    }
+
+    int getMaxRequests()
+    {
+        return maxRequests;
+    }
+
+    int getMaxRequestsPerHost()
+    {
+        return maxRequestsPerHost;
+    }
+
+    int getMaxInFlight()
+    {
+        return maxInFlight;
+    }
+
+    long getConnectTimeoutMillis()
+    {
+        return connectTimeoutMillis;
+    }
+
+    long getReadTimeoutMillis()
+    {
+        return readTimeoutMillis;
+    }
+
+    long getWriteTimeoutMillis()
+    {
+        return writeTimeoutMillis;
+    }
+}
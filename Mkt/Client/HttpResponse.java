@@ -11,6 +11,8 @@ public class HttpResponse
 
     private final String body;
 
+    private final String retryAfter;
+
     /**
      * Constructs a new HttpResponse.
      *
@@ -18,9 +20,22 @@ public class HttpResponse
      * @param body response body
      */
     public HttpResponse(int statusCode, String body)
+    {
+        this(statusCode, body, null);
+    }
+
+    /**
+     * Constructs a new HttpResponse.
+     *
+     * @param statusCode HTTP status code
+     * @param body response body
+     * @param retryAfter value of the Retry-After header, or null
+     */
+    public HttpResponse(int statusCode, String body, String retryAfter)
     {
         this.statusCode = statusCode;
         this.body = body;
+        this.retryAfter = retryAfter;
     }
 
     /**
@@ -42,5 +57,15 @@ public class HttpResponse
     {
         return body;
     }
+
+    /**
+     * Gets how long the server asked to wait before sending the request again.
+     *
+     * @return value of the Retry-After header, or null
+     */
+    public String getRetryAfter()
+    {
+        return retryAfter;
+    }
 }
 
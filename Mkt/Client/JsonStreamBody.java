@@ -0,0 +1,125 @@
+package app.mkt.client;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * JSON array request body written straight into OkHttp's sink.
+ * A collection is serialized one item at a time while the request is sent, through a JSON writer with
+ * a small fixed buffer, so no string or byte array of the whole payload is ever built.
+ * The body can be written again, for the retry after a 401.
+ */
+final class JsonStreamBody extends RequestBody
+{
+
+    private final List<?> items;
+
+    private final Gson gson;
+
+    private final Buffer serialized;
+
+    private JsonStreamBody(List<?> items, Gson gson, Buffer serialized)
+    {
+        this.items = items;
+        this.gson = gson;
+        this.serialized = serialized;
+    }
+
+    /**
+     * Streams a collection as a JSON array, with the same output as serializing the whole list.
+     * The length is not known up front, so the request is sent with chunked transfer encoding.
+     *
+     * @param items the collection
+     * @param gson the serializer
+     * @return request body
+     */
+    static JsonStreamBody items(List<?> items, Gson gson)
+    {
+        return new JsonStreamBody(items, gson, null);
+    }
+
+    /**
+     * Sends JSON already serialized into a buffer, without copying it into a byte array first.
+     *
+     * @param serialized the JSON
+     * @return request body
+     */
+    static JsonStreamBody buffered(Buffer serialized)
+    {
+        return new JsonStreamBody(null, null, serialized);
+    }
+
+    /**
+     * Serializes one item into a buffer, whose size is then the exact number of bytes it adds to a request.
+     *
+     * @param gson the serializer
+     * @param item the item
+     * @return buffer holding the item's JSON
+     */
+    static Buffer serialize(Gson gson, Object item)
+    {
+        Buffer buffer = new Buffer();
+        try
+        {
+            JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(buffer.outputStream(), StandardCharsets.UTF_8));
+            write(gson, writer, item);
+            writer.flush();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Failed to serialize item", e);
+        }
+        return buffer;
+    }
+
+    @Override
+    public MediaType contentType()
+    {
+        return AbstractHttpClient.JSON;
+    }
+
+    @Override
+    public long contentLength()
+    {
+        return serialized != null ? serialized.size() : -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException
+    {
+        if (serialized != null)
+        {
+            sink.write(serialized.clone(), serialized.size());
+            return;
+        }
+
+        // Not closed: closing would close the sink, which belongs to OkHttp.
+        JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(sink.outputStream(), StandardCharsets.UTF_8));
+        writer.beginArray();
+        for (Object item : items)
+        {
+            write(gson, writer, item);
+        }
+        writer.endArray();
+        writer.flush();
+    }
+
+    private static void write(Gson gson, JsonWriter writer, Object item) throws IOException
+    {
+        if (item == null)
+        {
+            writer.nullValue();
+            return;
+        }
+        gson.toJson(item, item.getClass(), writer);
+    }
+}
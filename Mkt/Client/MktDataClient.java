@@ -1,15 +1,11 @@
-package mkt.client;
+package app.mkt.client;
 
-import dto.CustomerDTO;
-import dto.OrderDTO;
-import dto.ProductDTO;
-import interfaces.AbstractHttpClient;
-import com.google.gson.Gson;
+import app.mkt.dtos.CustomerDTO;
+import app.mkt.dtos.OrderDTO;
+import app.mkt.dtos.ProductDTO;
 
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Client for marketing data service operations.
@@ -30,29 +26,13 @@ public class MktDataClient extends AbstractHttpClient
 
     protected static final String CUSTOMER_URI = "/Customer";
 
-    protected String token = "";
-
-    protected String tokenType = "";
-
-    protected int tokenExpirationInSeconds = 0;
-
     /**
-     * Constructs a new MktDataClient and authenticates.
+     * Constructs a new MktDataClient. The first request fetches the token, so construction does not block.
      */
     public MktDataClient()
     {
         super();
         auth();
-
-        if (!isAuthenticated())
-        {
-            return;
-        }
-
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
-        setDefaultHeaders(headers);
     }
 
     /**
@@ -87,17 +67,7 @@ public class MktDataClient extends AbstractHttpClient
     }
 
     /**
-     * Gets the authentication token.
-     *
-     * @return authentication token
-     */
-    protected String getToken()
-    {
-        return token;
-    }
-
-    /**
-     * Authenticates with the marketing service.
+     * Resolves the token manager shared by every client with these credentials.
      */
     protected void auth()
     {
@@ -110,58 +80,20 @@ public class MktDataClient extends AbstractHttpClient
             return;
         }
 
-        try
-        {
-            Map<String, String> formData = new HashMap<>();
-            formData.put("grant_type", "client_credentials");
-            formData.put("client_id", clientId);
-            formData.put("client_secret", clientSecret);
-
-            Map<String, String> headers = new HashMap<>();
-            headers.put("Content-Type", "application/x-www-form-urlencoded");
-
-            HttpResponse authResponse = postForm(getAuthUrl(), formData, headers);
-
-            if (authResponse.getStatusCode() != 200)
-            {
-                throw new Exception("Auth request did not return 200");
-            }
-
-            Gson gson = new Gson();
-            Map<String, Object> authResponseObj = gson.fromJson(authResponse.getBody(), Map.class);
-            handleTokenResponse(authResponseObj);
-        }
-        catch (Exception e)
-        {
-            System.err.println("[MktDataClient] :: [auth] - " + e.getMessage());
-        }
-    }
-
-    /**
-     * Handles the token response from authentication.
-     *
-     * @param authResponse authentication response map
-     */
-    @SuppressWarnings("unchecked")
-    protected void handleTokenResponse(Map<String, Object> authResponse)
-    {
-        this.token = String.valueOf(authResponse.getOrDefault("access_token", ""));
-        this.tokenType = String.valueOf(authResponse.getOrDefault("token_type", ""));
-        Object expiresIn = authResponse.get("expires_in");
-        if (expiresIn instanceof Number)
-        {
-            this.tokenExpirationInSeconds = ((Number) expiresIn).intValue();
-        }
+        tokenManager = TokenManager.forCredentials(getAuthUrl(), clientId, clientSecret);
     }
 
     /**
-     * Checks if the client is authenticated.
+     * Product, order and customer imports are keyed by SKU, order and customer id, so sending one again
+     * updates the same records instead of creating new ones.
      *
-     * @return true if authenticated
+     * @param url the URL
+     * @return true for the data resources
      */
-    protected boolean isAuthenticated()
+    @Override
+    protected boolean isIdempotent(String url)
     {
-        return !getToken().isEmpty();
+        return url.startsWith(getBaseURL() + DATA_RESOURCE_URI + "/");
     }
 
     /**
@@ -174,11 +106,8 @@ public class MktDataClient extends AbstractHttpClient
     public boolean postProduct(ProductDTO productDTO) throws Exception
     {
         String body = "[" + productDTO.toJSON() + "]";
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
 
-        HttpResponse response = post(getDataResource(PRODUCT_URI), body, headers);
+        HttpResponse response = post(getDataResource(PRODUCT_URI), body);
 
         if (response.getStatusCode() != 201)
         {
@@ -189,7 +118,7 @@ public class MktDataClient extends AbstractHttpClient
     }
 
     /**
-     * Posts a collection of products to the marketing service.
+     * Posts a collection of products to the marketing service in one request, streamed item by item.
      *
      * @param productDTOCollection list of product DTOs
      * @return true if successful
@@ -197,13 +126,7 @@ public class MktDataClient extends AbstractHttpClient
      */
     public boolean postProductCollection(List<ProductDTO> productDTOCollection) throws Exception
     {
-        Gson gson = new Gson();
-        String body = gson.toJson(productDTOCollection);
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
-
-        HttpResponse response = post(getDataResource(PRODUCT_URI), body, headers);
+        HttpResponse response = post(getDataResource(PRODUCT_URI), JsonStreamBody.items(productDTOCollection, gson));
 
         if (response.getStatusCode() != 201)
         {
@@ -223,11 +146,8 @@ public class MktDataClient extends AbstractHttpClient
     public boolean postOrder(OrderDTO orderDTO) throws Exception
     {
         String body = "[" + orderDTO.toJSON() + "]";
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
 
-        HttpResponse response = post(getDataResource(ORDER_URI), body, headers);
+        HttpResponse response = post(getDataResource(ORDER_URI), body);
 
         if (response.getStatusCode() != 201)
         {
@@ -238,7 +158,7 @@ public class MktDataClient extends AbstractHttpClient
     }
 
     /**
-     * Posts a collection of orders to the marketing service.
+     * Posts a collection of orders to the marketing service in one request, streamed item by item.
      *
      * @param orderDTOCollection list of order DTOs
      * @return true if successful
@@ -246,13 +166,7 @@ public class MktDataClient extends AbstractHttpClient
      */
     public boolean postOrderCollection(List<OrderDTO> orderDTOCollection) throws Exception
     {
-        Gson gson = new Gson();
-        String body = gson.toJson(orderDTOCollection);
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
-
-        HttpResponse response = post(getDataResource(ORDER_URI), body, headers);
+        HttpResponse response = post(getDataResource(ORDER_URI), JsonStreamBody.items(orderDTOCollection, gson));
 
         if (response.getStatusCode() != 201)
         {
@@ -272,11 +186,8 @@ public class MktDataClient extends AbstractHttpClient
     public boolean postCustomer(CustomerDTO customerDTO) throws Exception
     {
         String body = "[" + customerDTO.toJSON() + "]";
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
 
-        HttpResponse response = post(getDataResource(CUSTOMER_URI), body, headers);
+        HttpResponse response = post(getDataResource(CUSTOMER_URI), body);
 
         if (response.getStatusCode() != 201)
         {
@@ -287,7 +198,7 @@ public class MktDataClient extends AbstractHttpClient
     }
 
     /**
-     * Posts a collection of customers to the marketing service.
+     * Posts a collection of customers to the marketing service in one request, streamed item by item.
      *
      * @param customerDTOCollection list of customer DTOs
      * @return true if successful
@@ -295,13 +206,7 @@ public class MktDataClient extends AbstractHttpClient
      */
     public boolean postCustomerCollection(List<CustomerDTO> customerDTOCollection) throws Exception
     {
-        Gson gson = new Gson();
-        String body = gson.toJson(customerDTOCollection);
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
-
-        HttpResponse response = post(getDataResource(CUSTOMER_URI), body, headers);
+        HttpResponse response = post(getDataResource(CUSTOMER_URI), JsonStreamBody.items(customerDTOCollection, gson));
 
         if (response.getStatusCode() != 201)
         {
@@ -310,5 +215,145 @@ public class MktDataClient extends AbstractHttpClient
 
         return true;
     }
-}
 
+    /**
+     * Posts a large collection of products in chunks, uploaded in parallel.
+     *
+     * @param productDTOCollection list of product DTOs
+     * @param importer chunk size and parallelism settings
+     * @return report with one result per chunk
+     * @throws InterruptedException if interrupted while waiting for the chunks
+     */
+    public BulkImportReport postProductCollectionInChunks(List<ProductDTO> productDTOCollection, BulkImporter importer) throws InterruptedException
+    {
+        return importer.run(this, getDataResource(PRODUCT_URI), productDTOCollection, 201);
+    }
+
+    /**
+     * Posts a large collection of products in chunks, uploaded in parallel, without blocking.
+     *
+     * @param productDTOCollection list of product DTOs
+     * @param importer chunk size and parallelism settings
+     * @return future completed with one result per chunk
+     */
+    public CompletableFuture<BulkImportReport> postProductCollectionInChunksAsync(List<ProductDTO> productDTOCollection, BulkImporter importer)
+    {
+        return importer.runAsync(this, getDataResource(PRODUCT_URI), productDTOCollection, 201);
+    }
+
+    /**
+     * Posts a large collection of orders in chunks, uploaded in parallel.
+     *
+     * @param orderDTOCollection list of order DTOs
+     * @param importer chunk size and parallelism settings
+     * @return report with one result per chunk
+     * @throws InterruptedException if interrupted while waiting for the chunks
+     */
+    public BulkImportReport postOrderCollectionInChunks(List<OrderDTO> orderDTOCollection, BulkImporter importer) throws InterruptedException
+    {
+        return importer.run(this, getDataResource(ORDER_URI), orderDTOCollection, 201);
+    }
+
+    /**
+     * Posts a large collection of orders in chunks, uploaded in parallel, without blocking.
+     *
+     * @param orderDTOCollection list of order DTOs
+     * @param importer chunk size and parallelism settings
+     * @return future completed with one result per chunk
+     */
+    public CompletableFuture<BulkImportReport> postOrderCollectionInChunksAsync(List<OrderDTO> orderDTOCollection, BulkImporter importer)
+    {
+        return importer.runAsync(this, getDataResource(ORDER_URI), orderDTOCollection, 201);
+    }
+
+    /**
+     * Posts a large collection of customers in chunks, uploaded in parallel.
+     *
+     * @param customerDTOCollection list of customer DTOs
+     * @param importer chunk size and parallelism settings
+     * @return report with one result per chunk
+     * @throws InterruptedException if interrupted while waiting for the chunks
+     */
+    public BulkImportReport postCustomerCollectionInChunks(List<CustomerDTO> customerDTOCollection, BulkImporter importer) throws InterruptedException
+    {
+        return importer.run(this, getDataResource(CUSTOMER_URI), customerDTOCollection, 201);
+    }
+
+    /**
+     * Posts a large collection of customers in chunks, uploaded in parallel, without blocking.
+     *
+     * @param customerDTOCollection list of customer DTOs
+     * @param importer chunk size and parallelism settings
+     * @return future completed with one result per chunk
+     */
+    public CompletableFuture<BulkImportReport> postCustomerCollectionInChunksAsync(List<CustomerDTO> customerDTOCollection, BulkImporter importer)
+    {
+        return importer.runAsync(this, getDataResource(CUSTOMER_URI), customerDTOCollection, 201);
+    }
+
+    /**
+     * Posts a product to the marketing service without blocking.
+     *
+     * @param productDTO product DTO
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> postProductAsync(ProductDTO productDTO)
+    {
+        return postAsync(getDataResource(PRODUCT_URI), "[" + productDTO.toJSON() + "]", 201, "Product importation request did not succeed");
+    }
+
+    /**
+     * Posts a collection of products to the marketing service in one request, streamed item by item, without blocking.
+     *
+     * @param productDTOCollection list of product DTOs
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> postProductCollectionAsync(List<ProductDTO> productDTOCollection)
+    {
+        return postAsync(getDataResource(PRODUCT_URI), JsonStreamBody.items(productDTOCollection, gson), 201, "Product Collection importation request did not succeed");
+    }
+
+    /**
+     * Posts an order to the marketing service without blocking.
+     *
+     * @param orderDTO order DTO
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> postOrderAsync(OrderDTO orderDTO)
+    {
+        return postAsync(getDataResource(ORDER_URI), "[" + orderDTO.toJSON() + "]", 201, "Order importation request did not succeed");
+    }
+
+    /**
+     * Posts a collection of orders to the marketing service in one request, streamed item by item, without blocking.
+     *
+     * @param orderDTOCollection list of order DTOs
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> postOrderCollectionAsync(List<OrderDTO> orderDTOCollection)
+    {
+        return postAsync(getDataResource(ORDER_URI), JsonStreamBody.items(orderDTOCollection, gson), 201, "Order Collection importation request did not succeed");
+    }
+
+    /**
+     * Posts a customer to the marketing service without blocking.
+     *
+     * @param customerDTO customer DTO
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> postCustomerAsync(CustomerDTO customerDTO)
+    {
+        return postAsync(getDataResource(CUSTOMER_URI), "[" + customerDTO.toJSON() + "]", 201, "Customer importation request did not succeed");
+    }
+
+    /**
+     * Posts a collection of customers to the marketing service in one request, streamed item by item, without blocking.
+     *
+     * @param customerDTOCollection list of customer DTOs
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> postCustomerCollectionAsync(List<CustomerDTO> customerDTOCollection)
+    {
+        return postAsync(getDataResource(CUSTOMER_URI), JsonStreamBody.items(customerDTOCollection, gson), 201, "Customer Collection importation request did not succeed");
+    }
+}
@@ -2,10 +2,8 @@ package app.mkt.client;
 
 import app.mkt.dtos.emails.EmailContactDTO;
 import app.mkt.dtos.emails.WaitingListSubscriptionDTO;
-import com.google.gson.Gson;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Client for marketing email service operations.
@@ -26,29 +24,13 @@ public class MktEmailClient extends AbstractHttpClient
 
     protected static final String KEY_MKT_SEGMENTATION_FIELD_GROUP_ID = "MKT_SEGMENTATION_FIELD_GROUP_ID";
 
-    protected String token = "";
-
-    protected String tokenType = "";
-
-    protected int tokenExpirationInSeconds = 0;
-
     /**
-     * Constructs a new MktEmailClient and authenticates.
+     * Constructs a new MktEmailClient. The first request fetches the token, so construction does not block.
      */
     public MktEmailClient()
     {
         super();
         auth();
-
-        if (!isAuthenticated())
-        {
-            return;
-        }
-
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
-        setDefaultHeaders(headers);
     }
 
     protected static String getBaseURL()
@@ -66,11 +48,6 @@ public class MktEmailClient extends AbstractHttpClient
         return AUTH_URL;
     }
 
-    protected String getToken()
-    {
-        return token;
-    }
-
     protected void auth()
     {
         String clientId = System.getenv("MKT_EMAIL_API_CLIENT_ID");
@@ -82,48 +59,7 @@ public class MktEmailClient extends AbstractHttpClient
             return;
         }
 
-        try
-        {
-            Map<String, String> formData = new HashMap<>();
-            formData.put("grant_type", "client_credentials");
-            formData.put("client_id", clientId);
-            formData.put("client_secret", clientSecret);
-
-            Map<String, String> headers = new HashMap<>();
-            headers.put("Content-Type", "application/x-www-form-urlencoded");
-
-            HttpResponse authResponse = postForm(getAuthUrl(), formData, headers);
-
-            if (authResponse.getStatusCode() != 200)
-            {
-                throw new Exception("Auth request did not return 200");
-            }
-
-            Gson gson = new Gson();
-            Map<String, Object> authResponseObj = gson.fromJson(authResponse.getBody(), Map.class);
-            handleTokenResponse(authResponseObj);
-        }
-        catch (Exception e)
-        {
-            System.err.println("[MktEmailClient] :: [auth] - " + e.getMessage());
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    protected void handleTokenResponse(Map<String, Object> authResponse)
-    {
-        this.token = String.valueOf(authResponse.getOrDefault("access_token", ""));
-        this.tokenType = String.valueOf(authResponse.getOrDefault("token_type", ""));
-        Object expiresIn = authResponse.get("expires_in");
-        if (expiresIn instanceof Number)
-        {
-            this.tokenExpirationInSeconds = ((Number) expiresIn).intValue();
-        }
-    }
-
-    protected boolean isAuthenticated()
-    {
-        return !getToken().isEmpty();
+        tokenManager = TokenManager.forCredentials(getAuthUrl(), clientId, clientSecret);
     }
 
     /**
@@ -162,11 +98,8 @@ public class MktEmailClient extends AbstractHttpClient
     public boolean emailCreateContact(EmailContactDTO contactDto) throws Exception
     {
         String body = contactDto.toJSON();
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
 
-        HttpResponse response = post(getEmailURI(), body, headers);
+        HttpResponse response = post(getEmailURI(), body);
 
         if (response.getStatusCode() != 201)
         {
@@ -187,11 +120,8 @@ public class MktEmailClient extends AbstractHttpClient
     public boolean handleUserSubscriptionToList(EmailContactDTO contactDTO, int suppressionListId) throws Exception
     {
         String body = contactDTO.toJSON();
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
 
-        HttpResponse response = post(getSubscriptionListIdURI(String.valueOf(suppressionListId)), body, headers);
+        HttpResponse response = post(getSubscriptionListIdURI(String.valueOf(suppressionListId)), body);
 
         if (response.getStatusCode() != 201)
         {
@@ -212,11 +142,8 @@ public class MktEmailClient extends AbstractHttpClient
     public boolean updateWaitlist(WaitingListSubscriptionDTO waitingListSubscriptionDTO, int waitlistId) throws Exception
     {
         String body = waitingListSubscriptionDTO.toJSON();
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
 
-        HttpResponse response = post(getSubscriptionListIdURI(String.valueOf(waitlistId)), body, headers);
+        HttpResponse response = post(getSubscriptionListIdURI(String.valueOf(waitlistId)), body);
 
         if (response.getStatusCode() != 200)
         {
@@ -225,5 +152,39 @@ public class MktEmailClient extends AbstractHttpClient
 
         return true;
     }
-}
 
+    /**
+     * Creates an email contact without blocking.
+     *
+     * @param contactDto email contact DTO
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> emailCreateContactAsync(EmailContactDTO contactDto)
+    {
+        return postAsync(getEmailURI(), contactDto.toJSON(), 201, "Email create contact did not succeed.");
+    }
+
+    /**
+     * Handles user subscription to a list without blocking.
+     *
+     * @param contactDTO email contact DTO
+     * @param suppressionListId suppression list ID
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> handleUserSubscriptionToListAsync(EmailContactDTO contactDTO, int suppressionListId)
+    {
+        return postAsync(getSubscriptionListIdURI(String.valueOf(suppressionListId)), contactDTO.toJSON(), 201, "Subscription to list did not succeed.");
+    }
+
+    /**
+     * Updates a waitlist subscription without blocking.
+     *
+     * @param waitingListSubscriptionDTO waiting list subscription DTO
+     * @param waitlistId waitlist ID
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> updateWaitlistAsync(WaitingListSubscriptionDTO waitingListSubscriptionDTO, int waitlistId)
+    {
+        return postAsync(getSubscriptionListIdURI(String.valueOf(waitlistId)), waitingListSubscriptionDTO.toJSON(), 200, "Subscription to list did not succeed.");
+    }
+}
@@ -2,10 +2,8 @@ package app.mkt.client;
 
 import app.mkt.dtos.sms.MessageDTO;
 import app.mkt.dtos.sms.SMSContactDTO;
-import com.google.gson.Gson;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Client for marketing SMS service operations.
@@ -24,29 +22,13 @@ public class MktSMSClient extends AbstractHttpClient
 
     protected static final String SEND_SMS = "/ShortCode/{shortCodeId}/PhoneList/{phoneListId}/TransactionalMessage/{transactionalMessageId}/Message";
 
-    protected String token = "";
-
-    protected String tokenType = "";
-
-    protected int tokenExpirationInSeconds = 0;
-
     /**
-     * Constructs a new MktSMSClient and authenticates.
+     * Constructs a new MktSMSClient. The first request fetches the token, so construction does not block.
      */
     public MktSMSClient()
     {
         super();
         auth();
-
-        if (!isAuthenticated())
-        {
-            return;
-        }
-
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
-        setDefaultHeaders(headers);
     }
 
     protected static String getBaseURL()
@@ -64,11 +46,6 @@ public class MktSMSClient extends AbstractHttpClient
         return AUTH_URL;
     }
 
-    protected String getToken()
-    {
-        return token;
-    }
-
     protected void auth()
     {
         String clientId = System.getenv("MKT_SMS_API_CLIENT_ID");
@@ -80,48 +57,7 @@ public class MktSMSClient extends AbstractHttpClient
             return;
         }
 
-        try
-        {
-            Map<String, String> formData = new HashMap<>();
-            formData.put("grant_type", "client_credentials");
-            formData.put("client_id", clientId);
-            formData.put("client_secret", clientSecret);
-
-            Map<String, String> headers = new HashMap<>();
-            headers.put("Content-Type", "application/x-www-form-urlencoded");
-
-            HttpResponse authResponse = postForm(getAuthUrl(), formData, headers);
-
-            if (authResponse.getStatusCode() != 200)
-            {
-                throw new Exception("Auth request did not return 200");
-            }
-
-            Gson gson = new Gson();
-            Map<String, Object> authResponseObj = gson.fromJson(authResponse.getBody(), Map.class);
-            handleTokenResponse(authResponseObj);
-        }
-        catch (Exception e)
-        {
-            System.err.println("[MktSMSClient] :: [auth] - " + e.getMessage());
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    protected void handleTokenResponse(Map<String, Object> authResponse)
-    {
-        this.token = String.valueOf(authResponse.getOrDefault("access_token", ""));
-        this.tokenType = String.valueOf(authResponse.getOrDefault("token_type", ""));
-        Object expiresIn = authResponse.get("expires_in");
-        if (expiresIn instanceof Number)
-        {
-            this.tokenExpirationInSeconds = ((Number) expiresIn).intValue();
-        }
-    }
-
-    protected boolean isAuthenticated()
-    {
-        return !getToken().isEmpty();
+        tokenManager = TokenManager.forCredentials(getAuthUrl(), clientId, clientSecret);
     }
 
     /**
@@ -190,11 +126,8 @@ public class MktSMSClient extends AbstractHttpClient
     public boolean smsCreateContact(SMSContactDTO contactDto) throws Exception
     {
         String body = contactDto.toJSON();
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
 
-        HttpResponse response = post(getSMSURI(), body, headers);
+        HttpResponse response = post(getSMSURI(), body);
 
         if (response.getStatusCode() != 201)
         {
@@ -215,11 +148,8 @@ public class MktSMSClient extends AbstractHttpClient
     public boolean sendSMS(int messageId, MessageDTO message) throws Exception
     {
         String body = message.toJSON();
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + getToken());
-        headers.put("Content-Type", "application/json");
 
-        HttpResponse response = post(getSendSMSURI(String.valueOf(messageId)), body, headers);
+        HttpResponse response = post(getSendSMSURI(String.valueOf(messageId)), body);
 
         if (response.getStatusCode() != 201)
         {
@@ -228,5 +158,46 @@ public class MktSMSClient extends AbstractHttpClient
 
         return true;
     }
-}
 
+    /**
+     * Creates an SMS contact without blocking.
+     *
+     * @param contactDto SMS contact DTO
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> smsCreateContactAsync(SMSContactDTO contactDto)
+    {
+        try
+        {
+            return postAsync(getSMSURI(), contactDto.toJSON(), 201, "Customer sms contact was not created");
+        }
+        catch (Exception e)
+        {
+            CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Sends an SMS message without blocking.
+     *
+     * @param messageId message ID
+     * @param message message DTO
+     * @return future completed with true, or exceptionally if the request fails
+     */
+    public CompletableFuture<Boolean> sendSMSAsync(int messageId, MessageDTO message)
+    {
+        try
+        {
+            return postAsync(getSendSMSURI(String.valueOf(messageId)), message.toJSON(), 201,
+                "Message to " + message.getObscuredPhoneNumber() + " failed to be queued with vendor");
+        }
+        catch (Exception e)
+        {
+            CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+}
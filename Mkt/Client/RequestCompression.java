@@ -0,0 +1,177 @@
+package app.mkt.client;
+
+import okhttp3.HttpUrl;
+import okhttp3.RequestBody;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in gzip compression of request bodies, sent with Content-Encoding: gzip.
+ * Bodies smaller than the threshold are sent as they are, since gzip would barely shrink them.
+ * Bodies of unknown length, such as streamed collections, are always compressed.
+ * Also counts the bytes before and after compression, to show what it saves.
+ */
+public class RequestCompression
+{
+
+    public static final long DEFAULT_MIN_BYTES = 1024;
+
+    private final Set<String> paths = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private volatile long minBytes = DEFAULT_MIN_BYTES;
+
+    private final AtomicLong compressedRequests = new AtomicLong();
+
+    private final AtomicLong uncompressedRequests = new AtomicLong();
+
+    private final AtomicLong bytesBefore = new AtomicLong();
+
+    private final AtomicLong bytesAfter = new AtomicLong();
+
+    /**
+     * Sets the smallest body that is compressed.
+     *
+     * @param minBytes threshold in bytes
+     * @return this instance for method chaining
+     */
+    public RequestCompression minBytes(long minBytes)
+    {
+        if (minBytes < 0)
+        {
+            throw new IllegalArgumentException("Min bytes must not be negative");
+        }
+        this.minBytes = minBytes;
+        return this;
+    }
+
+    /**
+     * Limits compression to requests posted to a URL path, such as "/data/v1/Product".
+     * Can be called once per endpoint. Without any, requests to every endpoint are compressed.
+     *
+     * @param path URL path of the endpoint
+     * @return this instance for method chaining
+     */
+    public RequestCompression path(String path)
+    {
+        this.paths.add(path);
+        return this;
+    }
+
+    /**
+     * Gets the number of requests sent compressed. A request sent again after a 401 counts twice.
+     *
+     * @return compressed requests
+     */
+    public long getCompressedRequests()
+    {
+        return compressedRequests.get();
+    }
+
+    /**
+     * Gets the number of requests to a compressed endpoint sent as they are, for being below the threshold.
+     *
+     * @return uncompressed requests
+     */
+    public long getUncompressedRequests()
+    {
+        return uncompressedRequests.get();
+    }
+
+    /**
+     * Gets the size of the compressed bodies before compression.
+     *
+     * @return bytes before compression
+     */
+    public long getBytesBefore()
+    {
+        return bytesBefore.get();
+    }
+
+    /**
+     * Gets the size of the compressed bodies as sent.
+     *
+     * @return bytes after compression
+     */
+    public long getBytesAfter()
+    {
+        return bytesAfter.get();
+    }
+
+    /**
+     * Gets the number of bytes compression kept off the wire.
+     *
+     * @return bytes saved
+     */
+    public long getBytesSaved()
+    {
+        return bytesBefore.get() - bytesAfter.get();
+    }
+
+    /**
+     * Gets the compressed size as a fraction of the original size.
+     *
+     * @return compression ratio, or 1 if nothing was compressed yet
+     */
+    public double getRatio()
+    {
+        long before = bytesBefore.get();
+        return before > 0 ? (double) bytesAfter.get() / before : 1;
+    }
+
+    /**
+     * Wraps a request body in a compressing one if the request qualifies.
+     *
+     * @param url the URL the body is posted to
+     * @param requestBody the request body
+     * @return compressing body, or the same body if it is sent as it is
+     */
+    RequestBody compress(String url, RequestBody requestBody)
+    {
+        if (!paths.isEmpty())
+        {
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            if (httpUrl == null || !paths.contains(httpUrl.encodedPath()))
+            {
+                return requestBody;
+            }
+        }
+
+        long length;
+        try
+        {
+            length = requestBody.contentLength();
+        }
+        catch (IOException e)
+        {
+            length = -1;
+        }
+
+        if (length >= 0 && length < minBytes)
+        {
+            uncompressedRequests.incrementAndGet();
+            return requestBody;
+        }
+        return new GzipRequestBody(requestBody, this);
+    }
+
+    void record(long before, long after)
+    {
+        compressedRequests.incrementAndGet();
+        bytesBefore.addAndGet(before);
+        bytesAfter.addAndGet(after);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RequestCompression{compressedRequests=" + compressedRequests.get()
+            + ", uncompressedRequests=" + uncompressedRequests.get()
+            + ", bytesBefore=" + bytesBefore.get()
+            + ", bytesAfter=" + bytesAfter.get()
+            + ", bytesSaved=" + getBytesSaved() + "}";
+    }
+}
@@ -0,0 +1,332 @@
+package app.mkt.client;
+
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a failed request is sent again, and after how long.
+ * Delays grow exponentially with full jitter, so clients that failed together do not retry together.
+ * A Retry-After header from the server takes precedence. No retry is sent if its delay would pass the call deadline.
+ *
+ * Which failures are retried depends on whether the endpoint is idempotent:
+ * - 429 and 503 mean the server refused the request, and connection failures mean it was never sent,
+ *   so these are retried on every endpoint.
+ * - 408, 500, 502, 504 and failures after the request was sent may come after the server processed it,
+ *   so these are retried only on idempotent endpoints.
+ *
+ * Retries draw on a budget shared by every client using the policy. Each request adds a fraction of a
+ * retry to it, so during an outage retries stay a small share of the traffic instead of multiplying it.
+ */
+public class RetryPolicy
+{
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 200;
+
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10_000;
+
+    public static final long DEFAULT_MAX_RETRY_AFTER_SECONDS = 30;
+
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+
+    public static final int DEFAULT_MAX_BUDGET = 10;
+
+    private final Set<String> idempotentPaths = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final Object budgetLock = new Object();
+
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private volatile long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    private volatile long maxRetryAfterMillis = TimeUnit.SECONDS.toMillis(DEFAULT_MAX_RETRY_AFTER_SECONDS);
+
+    private volatile double budgetRatio = DEFAULT_BUDGET_RATIO;
+
+    private volatile int maxBudget = DEFAULT_MAX_BUDGET;
+
+    private double budget = DEFAULT_MAX_BUDGET;
+
+    private long retries = 0;
+
+    private long retriesDenied = 0;
+
+    /**
+     * Sets how many times a request may be sent in total, the first time included.
+     *
+     * @param maxAttempts attempts per request, 1 to never retry
+     * @return this instance for method chaining
+     */
+    public RetryPolicy maxAttempts(int maxAttempts)
+    {
+        if (maxAttempts <= 0)
+        {
+            throw new IllegalArgumentException("Max attempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Sets the backoff. The delay before retry n is random between zero and base * 2^(n - 1), at most max.
+     *
+     * @param base delay bound of the first retry
+     * @param max largest delay bound
+     * @param unit unit of the delays
+     * @return this instance for method chaining
+     */
+    public RetryPolicy backoff(long base, long max, TimeUnit unit)
+    {
+        if (base <= 0 || max < base)
+        {
+            throw new IllegalArgumentException("Backoff must be positive and max must not be below base");
+        }
+        this.baseDelayMillis = unit.toMillis(base);
+        this.maxDelayMillis = unit.toMillis(max);
+        return this;
+    }
+
+    /**
+     * Sets the longest Retry-After that is waited for. A response asking for a longer wait is returned as it is.
+     *
+     * @param maxRetryAfter longest wait
+     * @param unit unit of the wait
+     * @return this instance for method chaining
+     */
+    public RetryPolicy maxRetryAfter(long maxRetryAfter, TimeUnit unit)
+    {
+        this.maxRetryAfterMillis = unit.toMillis(maxRetryAfter);
+        return this;
+    }
+
+    /**
+     * Sets the retry budget: each request earns ratio retries, and at most max retries can be saved up.
+     *
+     * @param ratio retries earned per request
+     * @param max retries saved up
+     * @return this instance for method chaining
+     */
+    public RetryPolicy budget(double ratio, int max)
+    {
+        if (ratio < 0 || max < 0)
+        {
+            throw new IllegalArgumentException("Retry budget must not be negative");
+        }
+        synchronized (budgetLock)
+        {
+            this.budgetRatio = ratio;
+            this.maxBudget = max;
+            this.budget = Math.min(budget, max);
+        }
+        return this;
+    }
+
+    /**
+     * Marks requests posted to a URL path, such as "/data/v1/Product", as safe to send more than once.
+     * Can be called once per endpoint, in addition to the endpoints a client declares idempotent itself.
+     *
+     * @param path URL path of the endpoint
+     * @return this instance for method chaining
+     */
+    public RetryPolicy idempotent(String path)
+    {
+        this.idempotentPaths.add(path);
+        return this;
+    }
+
+    /**
+     * Gets the number of retries sent.
+     *
+     * @return retries
+     */
+    public long getRetries()
+    {
+        synchronized (budgetLock)
+        {
+            return retries;
+        }
+    }
+
+    /**
+     * Gets the number of retries not sent because the retry budget was spent.
+     *
+     * @return retries denied
+     */
+    public long getRetriesDenied()
+    {
+        synchronized (budgetLock)
+        {
+            return retriesDenied;
+        }
+    }
+
+    /**
+     * Checks if requests posted to a URL were marked idempotent on this policy.
+     *
+     * @param url the URL
+     * @return true if the URL's path was marked idempotent
+     */
+    boolean isIdempotent(String url)
+    {
+        if (idempotentPaths.isEmpty())
+        {
+            return false;
+        }
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        return httpUrl != null && idempotentPaths.contains(httpUrl.encodedPath());
+    }
+
+    /**
+     * Records a new request, which earns its share of the retry budget.
+     */
+    void onRequest()
+    {
+        synchronized (budgetLock)
+        {
+            budget = Math.min(maxBudget, budget + budgetRatio);
+        }
+    }
+
+    /**
+     * Gets the delay before sending a request again after a response.
+     *
+     * @param attempt number of attempts made so far
+     * @param response the response
+     * @param idempotent true if the endpoint is idempotent
+     * @param remainingMillis time left before the call deadline
+     * @return delay in milliseconds, or -1 to return the response
+     */
+    long retryDelay(int attempt, HttpResponse response, boolean idempotent, long remainingMillis)
+    {
+        int status = response.getStatusCode();
+        boolean refused = status == 429 || status == 503;
+        boolean maybeProcessed = status == 408 || status == 500 || status == 502 || status == 504;
+        if (!refused && !(maybeProcessed && idempotent))
+        {
+            return -1;
+        }
+
+        long retryAfter = parseRetryAfter(response.getRetryAfter());
+        if (retryAfter > maxRetryAfterMillis)
+        {
+            return -1;
+        }
+        return withdraw(attempt, retryAfter >= 0 ? retryAfter : backoff(attempt), remainingMillis);
+    }
+
+    /**
+     * Gets the delay before sending a request again after it failed without a response.
+     *
+     * @param attempt number of attempts made so far
+     * @param error the failure
+     * @param idempotent true if the endpoint is idempotent
+     * @param remainingMillis time left before the call deadline
+     * @return delay in milliseconds, or -1 to give up
+     */
+    long retryDelay(int attempt, IOException error, boolean idempotent, long remainingMillis)
+    {
+        // The call deadline expired or the caller was interrupted: sending again would outlive the caller's wait.
+        if (error instanceof InterruptedIOException && !(error instanceof SocketTimeoutException))
+        {
+            return -1;
+        }
+
+        boolean notSent = error instanceof ConnectException || error instanceof UnknownHostException;
+        if (!notSent && !idempotent)
+        {
+            return -1;
+        }
+        return withdraw(attempt, backoff(attempt), remainingMillis);
+    }
+
+    /**
+     * Takes a retry from the budget, unless the attempts are used up or the delay would outlast the deadline.
+     */
+    private long withdraw(int attempt, long delay, long remainingMillis)
+    {
+        if (attempt >= maxAttempts || delay >= remainingMillis)
+        {
+            return -1;
+        }
+
+        synchronized (budgetLock)
+        {
+            if (budget < 1)
+            {
+                retriesDenied++;
+                return -1;
+            }
+            budget--;
+            retries++;
+        }
+        return delay;
+    }
+
+    private long backoff(int attempt)
+    {
+        long bound = baseDelayMillis << Math.min(attempt - 1, 30);
+        bound = bound <= 0 ? maxDelayMillis : Math.min(bound, maxDelayMillis);
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * Parses a Retry-After value, either delay seconds or an HTTP date.
+     *
+     * @return delay in milliseconds, or -1 if absent or invalid
+     */
+    private static long parseRetryAfter(String retryAfter)
+    {
+        if (retryAfter == null || retryAfter.isEmpty())
+        {
+            return -1;
+        }
+
+        try
+        {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        }
+        catch (NumberFormatException e)
+        {
+            // Not delay seconds, try an HTTP date.
+        }
+
+        try
+        {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        }
+        catch (DateTimeParseException e)
+        {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        synchronized (budgetLock)
+        {
+            return "RetryPolicy{maxAttempts=" + maxAttempts
+                + ", retries=" + retries
+                + ", retriesDenied=" + retriesDenied
+                + ", budget=" + String.format("%.1f", budget) + "}";
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package app.mkt.client;
+
+import app.mkt.interfaces.TokenStore;
+import okhttp3.FormBody;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the OAuth2 access token of one credential set for all clients using it.
+ * The token is reused until shortly before it expires. Inside the refresh window, callers keep getting the
+ * current token while one background request fetches the next. Once it has expired, concurrent callers wait
+ * on a single token request instead of each authenticating. An optional token store shares tokens across nodes.
+ */
+public class TokenManager
+{
+
+    public static final long DEFAULT_REFRESH_AHEAD_SECONDS = 60;
+
+    /**
+     * Tokens this close to expiry are not used, to allow for clock skew and request time.
+     */
+    private static final long EXPIRY_MARGIN_MILLIS = 10_000;
+
+    private static final Map<String, TokenManager> managers = new ConcurrentHashMap<>();
+
+    private static final ExecutorService refresher = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "mkt-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile TokenStore tokenStore = null;
+
+    private final String authUrl;
+
+    private final String clientId;
+
+    private final String clientSecret;
+
+    private final String storeKey;
+
+    private volatile long refreshAheadMillis = TimeUnit.SECONDS.toMillis(DEFAULT_REFRESH_AHEAD_SECONDS);
+
+    private volatile AccessToken current = null;
+
+    private volatile String rejected = null;
+
+    private CompletableFuture<AccessToken> refreshing = null;
+
+    /**
+     * Constructs a new TokenManager.
+     *
+     * @param authUrl the OAuth2 token endpoint
+     * @param clientId the client ID
+     * @param clientSecret the client secret
+     */
+    protected TokenManager(String authUrl, String clientId, String clientSecret)
+    {
+        this.authUrl = authUrl;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.storeKey = "mkt:oauth:" + clientId;
+    }
+
+    /**
+     * Gets the token manager of a credential set, shared by every client using the same credentials.
+     *
+     * @param authUrl the OAuth2 token endpoint
+     * @param clientId the client ID
+     * @param clientSecret the client secret
+     * @return token manager
+     */
+    public static TokenManager forCredentials(String authUrl, String clientId, String clientSecret)
+    {
+        TokenManager manager = managers.computeIfAbsent(authUrl + " " + clientId, key -> new TokenManager(authUrl, clientId, clientSecret));
+        if (!manager.clientSecret.equals(clientSecret))
+        {
+            // The secret was rotated: start over with the new one.
+            manager = new TokenManager(authUrl, clientId, clientSecret);
+            managers.put(authUrl + " " + clientId, manager);
+        }
+        return manager;
+    }
+
+    /**
+     * Sets the store that shares tokens across nodes, or null to keep them in this JVM only.
+     *
+     * @param store token store
+     */
+    public static void setTokenStore(TokenStore store)
+    {
+        tokenStore = store;
+    }
+
+    /**
+     * Sets how long before expiry the token is refreshed in the background.
+     *
+     * @param refreshAhead refresh window
+     * @param unit unit of the window
+     * @return this instance for method chaining
+     */
+    public TokenManager refreshAhead(long refreshAhead, TimeUnit unit)
+    {
+        this.refreshAheadMillis = unit.toMillis(refreshAhead);
+        return this;
+    }
+
+    /**
+     * Gets a live token, requesting one only if there is none.
+     *
+     * @return access token
+     * @throws IOException if a token is needed and cannot be obtained
+     */
+    public AccessToken getToken() throws IOException
+    {
+        AccessToken token = liveToken();
+        if (token != null)
+        {
+            return token;
+        }
+
+        try
+        {
+            return refresh(false).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a token", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Failed to get a token", cause);
+        }
+    }
+
+    /**
+     * Gets a live token without blocking. If there is none, the token request runs on the refresh thread.
+     *
+     * @return future completed with the access token
+     */
+    public CompletableFuture<AccessToken> getTokenAsync()
+    {
+        AccessToken token = liveToken();
+        return token != null ? CompletableFuture.completedFuture(token) : refresh(true);
+    }
+
+    /**
+     * Drops a token the server rejected, so the next caller requests a new one.
+     *
+     * @param token the rejected token
+     */
+    public void invalidate(AccessToken token)
+    {
+        synchronized (this)
+        {
+            if (current == token)
+            {
+                current = null;
+            }
+            rejected = token.getValue();
+        }
+    }
+
+    /**
+     * Gets the current token if it can still be used, starting a background refresh inside the refresh window.
+     */
+    private AccessToken liveToken()
+    {
+        AccessToken token = current;
+        long now = System.currentTimeMillis();
+        if (token == null || token.expiresWithin(now, EXPIRY_MARGIN_MILLIS))
+        {
+            return null;
+        }
+
+        if (token.expiresWithin(now, Math.max(refreshAheadMillis, EXPIRY_MARGIN_MILLIS)))
+        {
+            refresh(true);
+        }
+        return token;
+    }
+
+    /**
+     * Starts a token request unless one is already running, and returns the running one.
+     *
+     * @param background true to run it on the refresh thread, false to run it on the calling thread
+     */
+    private CompletableFuture<AccessToken> refresh(boolean background)
+    {
+        CompletableFuture<AccessToken> future;
+        synchronized (this)
+        {
+            if (refreshing != null)
+            {
+                return refreshing;
+            }
+            future = new CompletableFuture<>();
+            refreshing = future;
+        }
+
+        Runnable request = () -> {
+            try
+            {
+                AccessToken token = fetch();
+                synchronized (this)
+                {
+                    current = token;
+                    refreshing = null;
+                }
+                future.complete(token);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                synchronized (this)
+                {
+                    refreshing = null;
+                }
+                System.err.println("[TokenManager] :: [refresh] - " + e.getMessage());
+                future.completeExceptionally(e);
+            }
+        };
+
+        if (background)
+        {
+            refresher.execute(request);
+        }
+        else
+        {
+            request.run();
+        }
+        return future;
+    }
+
+    /**
+     * Takes a live token from the token store if another node has one, otherwise requests one and stores it.
+     * A token the server rejected is not taken from the store again.
+     */
+    private AccessToken fetch() throws IOException
+    {
+        TokenStore store = tokenStore;
+        AccessToken stored = load(store);
+        long now = System.currentTimeMillis();
+        if (stored != null && !stored.getValue().equals(rejected) && !stored.expiresWithin(now, Math.max(refreshAheadMillis, EXPIRY_MARGIN_MILLIS)))
+        {
+            return stored;
+        }
+
+        FormBody formBody = new FormBody.Builder()
+            .add("grant_type", "client_credentials")
+            .add("client_id", clientId)
+            .add("client_secret", clientSecret)
+            .build();
+        Request request = new Request.Builder()
+            .url(authUrl)
+            .post(formBody)
+            .build();
+
+        AccessToken token;
+        try (Response response = AbstractHttpClient.sharedClient().newCall(request).execute())
+        {
+            if (response.code() != 200)
+            {
+                throw new IOException("Auth request did not return 200");
+            }
+
+            String body = response.body() != null ? response.body().string() : "";
+            @SuppressWarnings("unchecked")
+            Map<String, Object> authResponse = AbstractHttpClient.GSON.fromJson(body, Map.class);
+            token = AccessToken.fromResponse(authResponse, now);
+        }
+
+        if (token == null)
+        {
+            throw new IOException("Auth response has no access token");
+        }
+
+        save(store, token);
+        return token;
+    }
+
+    private AccessToken load(TokenStore store)
+    {
+        if (store == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return store.load(storeKey);
+        }
+        catch (RuntimeException e)
+        {
+            System.err.println("[TokenManager] :: [load] - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void save(TokenStore store, AccessToken token)
+    {
+        if (store == null)
+        {
+            return;
+        }
+
+        try
+        {
+            store.save(storeKey, token);
+        }
+        catch (RuntimeException e)
+        {
+            System.err.println("[TokenManager] :: [save] - " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package app.mkt.interfaces;
+
+import app.mkt.client.AccessToken;
+
+/**
+ * Interface for sharing OAuth2 access tokens between nodes, such as through Redis.
+ * A node that finds a live token in the store uses it instead of requesting its own.
+ */
+public interface TokenStore
+{
+
+    /**
+     * Loads the token stored for a credential set.
+     *
+     * @param key the credential set key
+     * @return the stored token, or null if none
+     */
+    AccessToken load(String key);
+
+    /**
+     * Stores a freshly issued token. The store should drop it once it expires.
+     *
+     * @param key the credential set key
+     * @param token the token
+     */
+    void save(String key, AccessToken token);
+}
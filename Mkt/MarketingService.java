@@ -1,8 +1,12 @@
 package app;
 
+import app.mkt.client.BulkImportReport;
+import app.mkt.client.BulkImporter;
 import app.mkt.client.MktDataClient;
 import app.mkt.client.MktEmailClient;
 import app.mkt.client.MktSMSClient;
+import app.mkt.client.RequestCompression;
+import app.mkt.client.RetryPolicy;
 import app.mkt.dtos.CustomerDTO;
 import app.mkt.dtos.OrderDTO;
 import app.mkt.dtos.ProductDTO;
@@ -12,11 +16,16 @@ import app.mkt.dtos.sms.MessageDTO;
 import app.mkt.dtos.sms.SMSContactDTO;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main service for marketing operations.
  * Provides methods for importing products, orders, customers, and managing email/SMS subscriptions.
  * Implements singleton pattern for instance management.
+ * Every operation has an asynchronous variant that returns as soon as the request is queued, so web threads
+ * are not held while the vendor responds.
  */
 public class MarketingService
 {
@@ -25,6 +34,34 @@ public class MarketingService
 
     protected static final Object lock = new Object();
 
+    public static final long DEFAULT_CALL_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Starts an asynchronous client call, possibly failing before it is sent.
+     */
+    @FunctionalInterface
+    private interface AsyncCall
+    {
+        CompletableFuture<Boolean> start() throws Exception;
+    }
+
+    protected volatile long callTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_CALL_TIMEOUT_SECONDS);
+
+    protected volatile BulkImporter bulkImporter = new BulkImporter();
+
+    protected volatile RequestCompression requestCompression = null;
+
+    protected volatile RetryPolicy retryPolicy = new RetryPolicy();
+
+    /**
+     * Clients built from the current settings, reused by every call until a setting changes.
+     */
+    protected volatile MktDataClient dataClient = null;
+
+    protected volatile MktEmailClient emailClient = null;
+
+    protected volatile MktSMSClient smsClient = null;
+
     /**
      * Gets the singleton instance of MarketingService.
      * Thread-safe double-checked locking implementation.
@@ -49,6 +86,70 @@ public class MarketingService
         return instance;
     }
 
+    /**
+     * Sets the deadline of each call to the marketing service, blocking or asynchronous, retries included.
+     *
+     * @param timeout deadline, zero for none
+     * @param unit unit of the deadline
+     * @return this instance for method chaining
+     */
+    public MarketingService callTimeout(long timeout, TimeUnit unit)
+    {
+        synchronized (this)
+        {
+            this.callTimeoutMillis = unit.toMillis(timeout);
+            resetClients();
+        }
+        return this;
+    }
+
+    /**
+     * Sets the chunk size and parallelism of collection imports.
+     *
+     * @param importer bulk import settings
+     * @return this instance for method chaining
+     */
+    public MarketingService bulkImporter(BulkImporter importer)
+    {
+        this.bulkImporter = importer;
+        return this;
+    }
+
+    /**
+     * Enables gzip compression of product, order and customer uploads. Off unless set.
+     * The same instance keeps counting the bytes saved, so it can be kept to read them.
+     *
+     * @param compression compression settings, or null to send bodies as they are
+     * @return this instance for method chaining
+     */
+    public MarketingService requestCompression(RequestCompression compression)
+    {
+        synchronized (this)
+        {
+            this.requestCompression = compression;
+            resetClients();
+        }
+        return this;
+    }
+
+    /**
+     * Sets when failed requests to the marketing service are sent again.
+     * By default, 429 and 503 responses and connection failures are retried on every endpoint, and other
+     * transient failures on the data endpoints, up to 3 attempts with exponential backoff and jitter.
+     *
+     * @param policy retry policy, or null to never retry
+     * @return this instance for method chaining
+     */
+    public MarketingService retryPolicy(RetryPolicy policy)
+    {
+        synchronized (this)
+        {
+            this.retryPolicy = policy;
+            resetClients();
+        }
+        return this;
+    }
+
     /**
      * Imports a product to the marketing service.
      *
@@ -58,7 +159,7 @@ public class MarketingService
      */
     public boolean importProduct(ProductDTO productDTO) throws Exception
     {
-        MktDataClient client = new MktDataClient();
+        MktDataClient client = dataClient();
 
         boolean imported = client.postProduct(productDTO);
 
@@ -71,24 +172,35 @@ public class MarketingService
     }
 
     /**
-     * Imports a collection of products to the marketing service.
+     * Imports a collection of products to the marketing service, in chunks uploaded in parallel.
      *
      * @param productDTOCollection list of product DTOs
      * @return true if successful
-     * @throws Exception if import fails
+     * @throws Exception if any chunk fails
      */
     public boolean importProductCollection(List<ProductDTO> productDTOCollection) throws Exception
     {
-        MktDataClient client = new MktDataClient();
-
-        boolean imported = client.postProductCollection(productDTOCollection);
+        BulkImportReport report = bulkImportProducts(productDTOCollection);
 
-        if (!imported)
+        if (!report.isComplete())
         {
-            throw new Exception("[MarketingService] :: [importProductCollection] :: Importation failed");
+            throw new Exception("[MarketingService] :: [importProductCollection] :: Importation failed for "
+                + report.getFailedItems() + " of " + productDTOCollection.size() + " products");
         }
 
-        return imported;
+        return true;
+    }
+
+    /**
+     * Imports a collection of products in chunks and reports the outcome of each chunk.
+     *
+     * @param productDTOCollection list of product DTOs
+     * @return bulk import report
+     * @throws InterruptedException if interrupted while waiting for the chunks
+     */
+    public BulkImportReport bulkImportProducts(List<ProductDTO> productDTOCollection) throws InterruptedException
+    {
+        return dataClient().postProductCollectionInChunks(productDTOCollection, bulkImporter);
     }
 
     /**
@@ -100,13 +212,13 @@ public class MarketingService
      */
     public boolean importOrder(OrderDTO orderDTO) throws Exception
     {
-        MktDataClient client = new MktDataClient();
+        MktDataClient client = dataClient();
 
         return client.postOrder(orderDTO);
     }
 
     /**
-     * Imports a collection of orders to the marketing service.
+     * Imports a collection of orders to the marketing service, in chunks uploaded in parallel.
      *
      * @param orderDTOCollection list of order DTOs
      * @return true if successful
@@ -120,8 +232,13 @@ public class MarketingService
 
         try
         {
-            MktDataClient client = new MktDataClient();
-            return client.postOrderCollection(orderDTOCollection);
+            BulkImportReport report = bulkImportOrders(orderDTOCollection);
+            if (!report.isComplete())
+            {
+                System.err.println("[MarketingService] :: [importOrderCollection] - " + report.getFailedItems()
+                    + " of " + orderDTOCollection.size() + " orders failed in " + report.getFailedChunks().size() + " chunks");
+            }
+            return report.isComplete();
         }
         catch (Exception e)
         {
@@ -130,6 +247,18 @@ public class MarketingService
         }
     }
 
+    /**
+     * Imports a collection of orders in chunks and reports the outcome of each chunk.
+     *
+     * @param orderDTOCollection list of order DTOs
+     * @return bulk import report
+     * @throws InterruptedException if interrupted while waiting for the chunks
+     */
+    public BulkImportReport bulkImportOrders(List<OrderDTO> orderDTOCollection) throws InterruptedException
+    {
+        return dataClient().postOrderCollectionInChunks(orderDTOCollection, bulkImporter);
+    }
+
     /**
      * Imports a customer to the marketing service.
      *
@@ -139,13 +268,13 @@ public class MarketingService
      */
     public boolean importCustomer(CustomerDTO customerDTO) throws Exception
     {
-        MktDataClient client = new MktDataClient();
+        MktDataClient client = dataClient();
 
         return client.postCustomer(customerDTO);
     }
 
     /**
-     * Imports a collection of customers to the marketing service.
+     * Imports a collection of customers to the marketing service, in chunks uploaded in parallel.
      *
      * @param customerDTOCollection list of customer DTOs
      * @return true if successful
@@ -159,8 +288,13 @@ public class MarketingService
 
         try
         {
-            MktDataClient client = new MktDataClient();
-            return client.postCustomerCollection(customerDTOCollection);
+            BulkImportReport report = bulkImportCustomers(customerDTOCollection);
+            if (!report.isComplete())
+            {
+                System.err.println("[MarketingService] :: [importCustomerCollection] - " + report.getFailedItems()
+                    + " of " + customerDTOCollection.size() + " customers failed in " + report.getFailedChunks().size() + " chunks");
+            }
+            return report.isComplete();
         }
         catch (Exception e)
         {
@@ -169,6 +303,18 @@ public class MarketingService
         }
     }
 
+    /**
+     * Imports a collection of customers in chunks and reports the outcome of each chunk.
+     *
+     * @param customerDTOCollection list of customer DTOs
+     * @return bulk import report
+     * @throws InterruptedException if interrupted while waiting for the chunks
+     */
+    public BulkImportReport bulkImportCustomers(List<CustomerDTO> customerDTOCollection) throws InterruptedException
+    {
+        return dataClient().postCustomerCollectionInChunks(customerDTOCollection, bulkImporter);
+    }
+
     /**
      * Subscribes an email contact.
      *
@@ -177,7 +323,7 @@ public class MarketingService
      */
     public MarketingService subscribeEmail(EmailContactDTO contactDto)
     {
-        MktEmailClient client = new MktEmailClient();
+        MktEmailClient client = emailClient();
 
         try
         {
@@ -200,7 +346,7 @@ public class MarketingService
      */
     public MarketingService subscribeSMS(SMSContactDTO contactDto)
     {
-        MktSMSClient client = new MktSMSClient();
+        MktSMSClient client = smsClient();
 
         try
         {
@@ -223,7 +369,7 @@ public class MarketingService
      */
     public void sendSMSTransactionalMessage(int messageId, MessageDTO message)
     {
-        MktSMSClient client = new MktSMSClient();
+        MktSMSClient client = smsClient();
 
         try
         {
@@ -249,7 +395,7 @@ public class MarketingService
      */
     public boolean handleSuppressionListSubscription(EmailContactDTO contactDTO)
     {
-        MktEmailClient client = new MktEmailClient();
+        MktEmailClient client = emailClient();
 
         boolean subscribed = false;
 
@@ -290,7 +436,7 @@ public class MarketingService
      */
     public boolean updateWaitList(WaitingListSubscriptionDTO waitingListSubscriptionDTO)
     {
-        MktEmailClient client = new MktEmailClient();
+        MktEmailClient client = emailClient();
 
         boolean waitListUpdated = false;
 
@@ -315,5 +461,336 @@ public class MarketingService
 
         return waitListUpdated;
     }
-}
 
+    /**
+     * Imports a product to the marketing service without blocking.
+     *
+     * @param productDTO product DTO
+     * @return future completed with true, or exceptionally if the import fails
+     */
+    public CompletableFuture<Boolean> importProductAsync(ProductDTO productDTO)
+    {
+        return dataClient().postProductAsync(productDTO);
+    }
+
+    /**
+     * Imports a collection of products to the marketing service without blocking, in chunks uploaded in parallel.
+     *
+     * @param productDTOCollection list of product DTOs
+     * @return future completed with true, or exceptionally if any chunk fails
+     */
+    public CompletableFuture<Boolean> importProductCollectionAsync(List<ProductDTO> productDTOCollection)
+    {
+        return bulkImportProductsAsync(productDTOCollection).thenApply(report -> {
+            if (!report.isComplete())
+            {
+                throw new CompletionException(new Exception("[MarketingService] :: [importProductCollection] :: Importation failed for "
+                    + report.getFailedItems() + " of " + productDTOCollection.size() + " products"));
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Imports a collection of products in chunks without blocking, and reports the outcome of each chunk.
+     *
+     * @param productDTOCollection list of product DTOs
+     * @return future completed with the bulk import report
+     */
+    public CompletableFuture<BulkImportReport> bulkImportProductsAsync(List<ProductDTO> productDTOCollection)
+    {
+        return dataClient().postProductCollectionInChunksAsync(productDTOCollection, bulkImporter);
+    }
+
+    /**
+     * Imports an order to the marketing service without blocking.
+     *
+     * @param orderDTO order DTO
+     * @return future completed with true, or exceptionally if the import fails
+     */
+    public CompletableFuture<Boolean> importOrderAsync(OrderDTO orderDTO)
+    {
+        return dataClient().postOrderAsync(orderDTO);
+    }
+
+    /**
+     * Imports a collection of orders to the marketing service without blocking, in chunks uploaded in parallel.
+     *
+     * @param orderDTOCollection list of order DTOs
+     * @return future completed with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> importOrderCollectionAsync(List<OrderDTO> orderDTOCollection)
+    {
+        if (orderDTOCollection == null || orderDTOCollection.isEmpty())
+        {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return logged("importOrderCollection", () -> bulkImportOrdersAsync(orderDTOCollection).thenApply(report -> {
+            if (!report.isComplete())
+            {
+                System.err.println("[MarketingService] :: [importOrderCollection] - " + report.getFailedItems()
+                    + " of " + orderDTOCollection.size() + " orders failed in " + report.getFailedChunks().size() + " chunks");
+            }
+            return report.isComplete();
+        }));
+    }
+
+    /**
+     * Imports a collection of orders in chunks without blocking, and reports the outcome of each chunk.
+     *
+     * @param orderDTOCollection list of order DTOs
+     * @return future completed with the bulk import report
+     */
+    public CompletableFuture<BulkImportReport> bulkImportOrdersAsync(List<OrderDTO> orderDTOCollection)
+    {
+        return dataClient().postOrderCollectionInChunksAsync(orderDTOCollection, bulkImporter);
+    }
+
+    /**
+     * Imports a customer to the marketing service without blocking.
+     *
+     * @param customerDTO customer DTO
+     * @return future completed with true, or exceptionally if the import fails
+     */
+    public CompletableFuture<Boolean> importCustomerAsync(CustomerDTO customerDTO)
+    {
+        return dataClient().postCustomerAsync(customerDTO);
+    }
+
+    /**
+     * Imports a collection of customers to the marketing service without blocking, in chunks uploaded in parallel.
+     *
+     * @param customerDTOCollection list of customer DTOs
+     * @return future completed with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> importCustomerCollectionAsync(List<CustomerDTO> customerDTOCollection)
+    {
+        if (customerDTOCollection == null || customerDTOCollection.isEmpty())
+        {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return logged("importCustomerCollection", () -> bulkImportCustomersAsync(customerDTOCollection).thenApply(report -> {
+            if (!report.isComplete())
+            {
+                System.err.println("[MarketingService] :: [importCustomerCollection] - " + report.getFailedItems()
+                    + " of " + customerDTOCollection.size() + " customers failed in " + report.getFailedChunks().size() + " chunks");
+            }
+            return report.isComplete();
+        }));
+    }
+
+    /**
+     * Imports a collection of customers in chunks without blocking, and reports the outcome of each chunk.
+     *
+     * @param customerDTOCollection list of customer DTOs
+     * @return future completed with the bulk import report
+     */
+    public CompletableFuture<BulkImportReport> bulkImportCustomersAsync(List<CustomerDTO> customerDTOCollection)
+    {
+        return dataClient().postCustomerCollectionInChunksAsync(customerDTOCollection, bulkImporter);
+    }
+
+    /**
+     * Subscribes an email contact without blocking.
+     *
+     * @param contactDto email contact DTO
+     * @return future completed with true if subscribed, false otherwise
+     */
+    public CompletableFuture<Boolean> subscribeEmailAsync(EmailContactDTO contactDto)
+    {
+        return logged("subscribeEmail", () -> emailClient().emailCreateContactAsync(contactDto))
+            .thenApply(emailSubscribed -> {
+                System.out.println("[MarketingService] :: [subscribeEmail] - status " + emailSubscribed);
+                return emailSubscribed;
+            });
+    }
+
+    /**
+     * Subscribes an SMS contact without blocking.
+     *
+     * @param contactDto SMS contact DTO
+     * @return future completed with true if subscribed, false otherwise
+     */
+    public CompletableFuture<Boolean> subscribeSMSAsync(SMSContactDTO contactDto)
+    {
+        return logged("subscribeSMS", () -> smsClient().smsCreateContactAsync(contactDto))
+            .thenApply(smsSubscribed -> {
+                System.out.println("[MarketingService] :: [subscribeSMS] - status " + smsSubscribed);
+                return smsSubscribed;
+            });
+    }
+
+    /**
+     * Sends a transactional SMS message without blocking.
+     *
+     * @param messageId message ID
+     * @param message message DTO
+     * @return future completed with true if the message was queued with the vendor, false otherwise
+     */
+    public CompletableFuture<Boolean> sendSMSTransactionalMessageAsync(int messageId, MessageDTO message)
+    {
+        return logged("sendSMSTransactionalMessage", () -> smsClient().sendSMSAsync(messageId, message))
+            .thenApply(smsSent -> {
+                System.out.println(
+                    "[MarketingService] :: [sendSMSTransactionalMessage] - status: "
+                    + (smsSent ? "SUCCESS" : "FAILED")
+                    + " for: "
+                    + message.getObscuredPhoneNumber()
+                );
+                return smsSent;
+            });
+    }
+
+    /**
+     * Handles suppression list subscription without blocking.
+     *
+     * @param contactDTO email contact DTO
+     * @return future completed with true if subscribed, false otherwise
+     */
+    public CompletableFuture<Boolean> handleSuppressionListSubscriptionAsync(EmailContactDTO contactDTO)
+    {
+        return logged("handleSuppressionListSubscription", () -> {
+            String suppressionListIdStr = System.getenv("MKT_SUPPRESSION_LIST_ID");
+
+            if (suppressionListIdStr == null || suppressionListIdStr.isEmpty())
+            {
+                throw new Exception("MKT_SUPPRESSION_LIST_ID env missing");
+            }
+
+            int suppressionListId = Integer.parseInt(suppressionListIdStr);
+            return emailClient().handleUserSubscriptionToListAsync(contactDTO, suppressionListId);
+        }).thenApply(subscribed -> {
+            System.out.println(
+                "[MarketingService] :: [handleSuppressionListSubscription] - status: "
+                + (subscribed ? "SUCCESS" : "FAILED")
+                + " for: "
+                + contactDTO.getObscuredEmail()
+            );
+            return subscribed;
+        });
+    }
+
+    /**
+     * Updates a waitlist subscription without blocking.
+     *
+     * @param waitingListSubscriptionDTO waiting list subscription DTO
+     * @return future completed with true if updated, false otherwise
+     */
+    public CompletableFuture<Boolean> updateWaitListAsync(WaitingListSubscriptionDTO waitingListSubscriptionDTO)
+    {
+        return logged("updateWaitList", () -> {
+            String backInStockListIdStr = System.getenv("MKT_ALERTS_BACK_IN_STOCK_LIST_ID");
+
+            if (backInStockListIdStr == null || backInStockListIdStr.isEmpty())
+            {
+                throw new Exception("MKT_ALERTS_BACK_IN_STOCK_LIST_ID env missing");
+            }
+
+            int backInStockListId = Integer.parseInt(backInStockListIdStr);
+            return emailClient().updateWaitlistAsync(waitingListSubscriptionDTO, backInStockListId);
+        }).thenApply(waitListUpdated -> {
+            System.out.println("[MarketingService] :: [updateWaitList] - status " + waitListUpdated);
+            return waitListUpdated;
+        });
+    }
+
+    /**
+     * Starts an asynchronous call whose failures are logged and reported as false, like the blocking variants.
+     */
+    private static CompletableFuture<Boolean> logged(String method, AsyncCall call)
+    {
+        CompletableFuture<Boolean> future;
+        try
+        {
+            future = call.start();
+        }
+        catch (Exception e)
+        {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        return future.exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            System.err.println("[MarketingService] :: [" + method + "] - " + cause.getMessage());
+            return false;
+        });
+    }
+
+    /**
+     * Drops the clients built from the previous settings, so the next call builds them again.
+     * Calls already started keep the client they began with.
+     */
+    private void resetClients()
+    {
+        dataClient = null;
+        emailClient = null;
+        smsClient = null;
+    }
+
+    private MktDataClient dataClient()
+    {
+        MktDataClient client = dataClient;
+        if (client != null)
+        {
+            return client;
+        }
+
+        synchronized (this)
+        {
+            if (dataClient == null)
+            {
+                client = new MktDataClient();
+                client.setCallTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS);
+                client.setRetryPolicy(retryPolicy);
+                client.setRequestCompression(requestCompression);
+                dataClient = client;
+            }
+            return dataClient;
+        }
+    }
+
+    private MktEmailClient emailClient()
+    {
+        MktEmailClient client = emailClient;
+        if (client != null)
+        {
+            return client;
+        }
+
+        synchronized (this)
+        {
+            if (emailClient == null)
+            {
+                client = new MktEmailClient();
+                client.setCallTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS);
+                client.setRetryPolicy(retryPolicy);
+                emailClient = client;
+            }
+            return emailClient;
+        }
+    }
+
+    private MktSMSClient smsClient()
+    {
+        MktSMSClient client = smsClient;
+        if (client != null)
+        {
+            return client;
+        }
+
+        synchronized (this)
+        {
+            if (smsClient == null)
+            {
+                client = new MktSMSClient();
+                client.setCallTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS);
+                client.setRetryPolicy(retryPolicy);
+                smsClient = client;
+            }
+            return smsClient;
+        }
+    }
+}